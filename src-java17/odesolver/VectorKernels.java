@@ -0,0 +1,93 @@
+package odesolver;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels on the preferred vector shape of the platform. Vectors shorter
+ * than two full registers take the scalar loops. The sums in dot and rowNorm
+ * are accumulated lane by lane, so they may differ from the scalar ones in
+ * the last bits; axpy, axpy4 and maxNorm give the same results. scal is left to
+ * the scalar loop, which the JIT already vectorises.
+ */
+final class VectorKernels extends ScalarKernels {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    @Override
+    double dot(int n, double[] x, int xo, double[] y, int yo) {
+        if (n < 2 * LANES)
+            return super.dot(n, x, xo, y, yo);
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int i = 0, bound = SPECIES.loopBound(n);
+        for (; i < bound; i += LANES)
+            acc = acc.add(DoubleVector.fromArray(SPECIES, x, xo + i).mul(DoubleVector.fromArray(SPECIES, y, yo + i)));
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++)
+            sum += x[xo + i] * y[yo + i];
+        return sum;
+    }
+
+    @Override
+    void axpy(int n, double a, double[] x, int xo, double[] y, int yo) {
+        if (n < 2 * LANES) {
+            super.axpy(n, a, x, xo, y, yo);
+            return;
+        }
+        int i = 0, bound = SPECIES.loopBound(n);
+        for (; i < bound; i += LANES)
+            DoubleVector.fromArray(SPECIES, y, yo + i)
+                    .add(DoubleVector.fromArray(SPECIES, x, xo + i).mul(a))
+                    .intoArray(y, yo + i);
+        for (; i < n; i++)
+            y[yo + i] += a * x[xo + i];
+    }
+
+    @Override
+    void axpy4(int n, double a0, double a1, double a2, double a3,
+               double[] x, int o0, int o1, int o2, int o3, double[] y, int yo) {
+        if (n < 2 * LANES) {
+            super.axpy4(n, a0, a1, a2, a3, x, o0, o1, o2, o3, y, yo);
+            return;
+        }
+        int i = 0, bound = SPECIES.loopBound(n);
+        for (; i < bound; i += LANES)
+            DoubleVector.fromArray(SPECIES, y, yo + i)
+                    .add(DoubleVector.fromArray(SPECIES, x, o0 + i).mul(a0))
+                    .add(DoubleVector.fromArray(SPECIES, x, o1 + i).mul(a1))
+                    .add(DoubleVector.fromArray(SPECIES, x, o2 + i).mul(a2))
+                    .add(DoubleVector.fromArray(SPECIES, x, o3 + i).mul(a3))
+                    .intoArray(y, yo + i);
+        for (; i < n; i++)
+            y[yo + i] = y[yo + i] + a0 * x[o0 + i] + a1 * x[o1 + i] + a2 * x[o2 + i] + a3 * x[o3 + i];
+    }
+
+    @Override
+    double maxNorm(int n, double[] v, int vo, double[] w, int wo) {
+        if (n < 2 * LANES)
+            return super.maxNorm(n, v, vo, w, wo);
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int i = 0, bound = SPECIES.loopBound(n);
+        for (; i < bound; i += LANES)
+            acc = acc.max(DoubleVector.fromArray(SPECIES, v, vo + i).abs().mul(DoubleVector.fromArray(SPECIES, w, wo + i)));
+        double vm = acc.reduceLanes(VectorOperators.MAX);
+        for (; i < n; i++)
+            vm = Math.max(vm, Math.abs(v[vo + i]) * w[wo + i]);
+        return vm;
+    }
+
+    @Override
+    double rowNorm(int n, double[] a, int ao, double[] w, int wo) {
+        if (n < 2 * LANES)
+            return super.rowNorm(n, a, ao, w, wo);
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int j = 0, bound = SPECIES.loopBound(n);
+        for (; j < bound; j += LANES)
+            acc = acc.add(DoubleVector.fromArray(SPECIES, a, ao + j).abs().div(DoubleVector.fromArray(SPECIES, w, wo + j)));
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; j < n; j++)
+            sum += Math.abs(a[ao + j]) / w[wo + j];
+        return sum;
+    }
+}
@@ -0,0 +1,234 @@
+package odesolver;
+
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs integrations asynchronously, each as a task of an executor, and
+ * hands back a CompletableFuture of the result. It is meant for services
+ * with many integrations in flight whose odes may block, e.g. on I/O. By
+ * default each integration runs on a virtual thread of its own where the
+ * runtime has them (JDK 21 on), so a blocked callback parks its virtual
+ * thread instead of holding a platform thread; elsewhere the default is a
+ * cached pool of daemon threads. The solver takes no monitors, so it does
+ * not pin the virtual threads it runs on.
+ * <p>
+ * Cancelling the future, or completing it by other means, stops the
+ * integration before its next step. An integration may also be given a
+ * deadline, past which it completes with the state of its last step. The
+ * workspaces are kept in a lock-free queue shared by the tasks rather than
+ * per thread as in LSODAConfig.integrate, since with a thread per task no
+ * thread would ever integrate twice. At most maxIdle of them are kept
+ * between bursts of requests, and they record no trajectory.
+ */
+public final class AsyncIntegrator {
+
+    /**
+     * the state reached by an integration, with its statistics
+     */
+    public static final class Result {
+        private final double t;
+        private final double[] y;
+        private final int nst, nfe, nje, meth;
+        private final LSODA.Interruption interruption;
+
+        private Result(double t, double[] y, LSODA lsoda) {
+            this.t = t;
+            this.y = y;
+            nst = lsoda.getStepsTaken();
+            nfe = lsoda.getEvaluations();
+            nje = lsoda.getJacobianEvaluations();
+            meth = lsoda.getMethodUsed();
+            interruption = lsoda.getInterruption();
+        }
+
+        /**
+         * @return tout, the time an event handler stopped the integration at,
+         * or the time of the last step taken before the deadline
+         */
+        public double getTime() {
+            return t;
+        }
+
+        /**
+         * @return the state at getTime, 0-based
+         */
+        public double[] getState() {
+            return y;
+        }
+
+        public int getStepsTaken() {
+            return nst;
+        }
+
+        public int getEvaluations() {
+            return nfe;
+        }
+
+        public int getJacobianEvaluations() {
+            return nje;
+        }
+
+        /**
+         * @return the method used on the last step, 1 for Adams and 2 for BDF
+         */
+        public int getMethodUsed() {
+            return meth;
+        }
+
+        /**
+         * @return the LSODA.Interruption of the run, as LSODA.getInterruption:
+         * DEADLINE if the deadline stopped the integration short of tout, null
+         * if it reached tout. A cancelled run never makes a Result, its future
+         * being done already, and no evaluation budget is set.
+         */
+        public LSODA.Interruption getInterruption() {
+            return interruption;
+        }
+    }
+
+    private static final class DefaultExecutor {
+        static final Executor INSTANCE = create();
+
+        private static Executor create() {
+            try {
+                // looked up by reflection, as the sources are kept to Java 8
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                return Executors.newCachedThreadPool(r -> {
+                    Thread thread = new Thread(r, "lsoda-async");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+    }
+
+    private final LSODAConfig config;
+    private final Executor executor;
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<LSODA> idle = new ConcurrentLinkedQueue<>();
+    // size of idle, which the queue takes linear time to count
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * run on the default executor
+     * @see #defaultExecutor()
+     */
+    public AsyncIntegrator(LSODAConfig config) {
+        this(config, defaultExecutor());
+    }
+
+    /**
+     * keep as many idle workspaces as there are processors
+     * @param config configuration of every integration
+     * @param executor executor the integrations run on
+     */
+    public AsyncIntegrator(LSODAConfig config, Executor executor) {
+        this(config, executor, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param config configuration of every integration; the trajectories are not kept
+     * @param executor executor the integrations run on
+     * @param maxIdle most workspaces kept for reuse once their integrations are done
+     */
+    public AsyncIntegrator(LSODAConfig config, Executor executor, int maxIdle) {
+        if (maxIdle < 0)
+            throw new IllegalArgumentException("async integrator: maxIdle = " + maxIdle + " negative");
+        this.config = config.withRetention(RetentionPolicy.none());
+        this.executor = executor;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @return an executor starting a virtual thread per task on JDK 21 and
+     * later, and otherwise a cached pool of daemon threads; shared by every
+     * AsyncIntegrator made without an executor
+     */
+    public static Executor defaultExecutor() {
+        return DefaultExecutor.INSTANCE;
+    }
+
+    /**
+     * integrate the ode from t0 to tout, as LSODA.integrate, on the executor
+     * @param ode the ode, which must allow the concurrent calls made by the
+     *            integrations running at once
+     * @param t0 initial time
+     * @param y initial state, 0-based; copied before this returns
+     * @param tout final time
+     * @return the result, completed exceptionally with what the integration
+     * threw if it failed
+     */
+    public CompletableFuture<Result> integrate(FirstOrderDifferentialEquations ode, double t0, double[] y, double tout) {
+        return submit(ode, t0, y, tout, false, 0);
+    }
+
+    /**
+     * integrate the ode from t0 to tout as integrate does, giving up before
+     * the first step that would start after the deadline
+     * @param deadline a value of System.nanoTime()
+     * @return the result, the state of the last step with getInterruption
+     * DEADLINE if the deadline passed first
+     */
+    public CompletableFuture<Result> integrate(FirstOrderDifferentialEquations ode, double t0, double[] y, double tout,
+                                               long deadline) {
+        return submit(ode, t0, y, tout, true, deadline);
+    }
+
+    private CompletableFuture<Result> submit(FirstOrderDifferentialEquations ode, double t0, double[] y, double tout,
+                                             boolean hasDeadline, long deadline) {
+        double[] y0 = y.clone();
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        CancellationToken token = new CancellationToken();
+        future.whenComplete((result, failure) -> token.cancel());
+        try {
+            executor.execute(() -> run(future, token, ode, t0, y0, tout, hasDeadline, deadline));
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void run(CompletableFuture<Result> future, CancellationToken token, FirstOrderDifferentialEquations ode,
+                     double t0, double[] y0, double tout, boolean hasDeadline, long deadline) {
+        if (future.isDone())
+            return;
+        LSODA lsoda = idle.poll();
+        if (lsoda == null)
+            lsoda = config.newWorkspace();
+        else
+            idleCount.decrementAndGet();
+        lsoda.setCancellationToken(token);
+        if (hasDeadline)
+            lsoda.setDeadline(deadline);
+        try {
+            double[] yout = new double[y0.length];
+            double t = lsoda.integrate(ode, t0, y0, tout, yout);
+            future.complete(new Result(t, yout, lsoda));
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        } finally {
+            lsoda.setCancellationToken(null);
+            lsoda.clearDeadline();
+            lsoda.ode = null;
+            if (idleCount.incrementAndGet() <= maxIdle)
+                idle.offer(lsoda);
+            else
+                idleCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return number of idle workspaces kept
+     */
+    int getIdleWorkspaces() {
+        return idleCount.get();
+    }
+}
@@ -0,0 +1,45 @@
+package odesolver;
+
+/**
+ * LU factorization with partial pivoting of a band iteration matrix with
+ * ml sub-diagonals and mu super-diagonals, the default LinearSolver for
+ * jt = 5 (LINPACK dgbfa and dgbsl).
+ */
+public final class BandLU implements LinearSolver {
+    private final int ml, mu, lda;
+    private int n;
+    // pivot (0-based)
+    private int[] ipvt;
+
+    /**
+     * @param ml lower half-bandwidth
+     * @param mu upper half-bandwidth
+     */
+    public BandLU(int ml, int mu) {
+        this.ml = ml;
+        this.mu = mu;
+        lda = 2 * ml + mu + 1;
+    }
+
+    @Override
+    public int setup(int n) {
+        this.n = n;
+        ipvt = new int[n];
+        return lda * n;
+    }
+
+    @Override
+    public double norm(double[] a, double[] w) {
+        return SupportingFunctions.bnorm(n, a, lda, ml, mu, w, 0);
+    }
+
+    @Override
+    public int factor(double[] a) {
+        return Utility.bandLUDecomposition(a, lda, n, ml, mu, ipvt);
+    }
+
+    @Override
+    public void solve(double[] a, double[] b, int boff) {
+        Utility.solveBandSys(a, lda, n, ml, mu, ipvt, b, boff);
+    }
+}
@@ -0,0 +1,20 @@
+package odesolver;
+
+/**
+ * Asks integrations to stop. An LSODA given the token by
+ * setCancellationToken checks it before each step, and once it is
+ * cancelled returns the state of its last step instead of going on.
+ * A token may be shared by any number of integrations and cancelled from
+ * any thread; it cannot be reset.
+ */
+public final class CancellationToken {
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
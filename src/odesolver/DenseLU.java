@@ -0,0 +1,47 @@
+package odesolver;
+
+/**
+ * LU factorization with partial pivoting of a full iteration matrix, the
+ * default LinearSolver for jt = 1 and 2 (LINPACK dgefa and dgesl on P^T).
+ * From n = BLOCKED_MIN_N on the factorization is blocked for the cache,
+ * with panels of PANEL columns; the factors are the same either way.
+ */
+public final class DenseLU implements LinearSolver {
+    // smallest dimension factored by blocks, and the panel width
+    static final int BLOCKED_MIN_N = 256, PANEL = 32;
+
+    private int n;
+    // pivot (0-based)
+    private int[] ipvt;
+    // permuted multipliers of a panel for the blocked factorization, and
+    // the pivot steps of the panel, all of them and those with multipliers
+    private double[] work;
+    private int[] steps, active;
+
+    @Override
+    public int setup(int n) {
+        this.n = n;
+        ipvt = new int[n];
+        work = n >= BLOCKED_MIN_N ? new double[PANEL * n] : null;
+        steps = n >= BLOCKED_MIN_N ? new int[PANEL] : null;
+        active = n >= BLOCKED_MIN_N ? new int[PANEL] : null;
+        return n * n;
+    }
+
+    @Override
+    public double norm(double[] a, double[] w) {
+        return SupportingFunctions.fnorm(n, a, n, w, 0);
+    }
+
+    @Override
+    public int factor(double[] a) {
+        if (work != null)
+            return Utility.blockedLUDecomposition(a, n, n, ipvt, PANEL, work, steps, active);
+        return Utility.LUDecomposition(a, n, n, ipvt);
+    }
+
+    @Override
+    public void solve(double[] a, double[] b, int boff) {
+        Utility.solveLinearSys(a, n, n, ipvt, b, boff);
+    }
+}
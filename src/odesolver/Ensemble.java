@@ -0,0 +1,200 @@
+package odesolver;
+
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Integrates an ensemble of independent initial value problems of one
+ * system, e.g. a parameter sweep or a Monte Carlo sample, on a work-stealing
+ * pool. The members are split into ranges that idle workers steal, so a few
+ * stiff members do not hold up the rest. Each worker integrates on a
+ * workspace of its own, kept from one member to the next, and the states
+ * and statistics go into primitive arrays laid out member by member, so no
+ * objects are made per member beyond what the factory makes.
+ * <p>
+ * Members that fail, e.g. by taking too many steps, get NaN states and a
+ * failure reported by the statistics; the others are not affected.
+ */
+public final class Ensemble {
+
+    /**
+     * makes the ode of a member from its parameters
+     */
+    @FunctionalInterface
+    public interface Factory {
+        /**
+         * @param parameters parameters of all the members, row-major
+         * @param offset index of the first parameter of the member
+         * @return the ode of the member, of the dimension of the ensemble
+         */
+        FirstOrderDifferentialEquations create(double[] parameters, int offset);
+    }
+
+    /**
+     * per member statistics of the last ensemble integrated with them
+     */
+    public static final class Statistics {
+        private final int[] nst, nfe, nje, meth;
+        private final RuntimeException[] failures;
+
+        /**
+         * @param members number of members
+         */
+        public Statistics(int members) {
+            nst = new int[members];
+            nfe = new int[members];
+            nje = new int[members];
+            meth = new int[members];
+            failures = new RuntimeException[members];
+        }
+
+        public int size() {
+            return nst.length;
+        }
+
+        public int getStepsTaken(int member) {
+            return nst[member];
+        }
+
+        public int getEvaluations(int member) {
+            return nfe[member];
+        }
+
+        public int getJacobianEvaluations(int member) {
+            return nje[member];
+        }
+
+        /**
+         * @return the method used on the last step of the member, 1 for Adams and 2 for BDF
+         */
+        public int getMethodUsed(int member) {
+            return meth[member];
+        }
+
+        /**
+         * @return what stopped the integration of the member, or null if it reached tout
+         */
+        public RuntimeException getFailure(int member) {
+            return failures[member];
+        }
+
+        /**
+         * @return number of members that did not reach tout
+         */
+        public int getFailures() {
+            int count = 0;
+            for (RuntimeException failure : failures)
+                if (failure != null)
+                    count++;
+            return count;
+        }
+    }
+
+    private final LSODAConfig config;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param config configuration of every member; the trajectories are not kept
+     * @param pool pool to run on, e.g. ForkJoinPool.commonPool()
+     */
+    public Ensemble(LSODAConfig config, ForkJoinPool pool) {
+        this.config = config.withRetention(RetentionPolicy.none());
+        this.pool = pool;
+    }
+
+    /**
+     * integrate every member from t0 to its tout
+     * @param factory makes the ode of a member from its parameters
+     * @param n dimension of the system
+     * @param t0 initial time, common to the members
+     * @param y0 initial states, row-major: member i starts from y0[i*n .. i*n+n-1]
+     * @param parameters parameters, row-major with np per member; may be null if np = 0
+     * @param np number of parameters per member
+     * @param tout final time of each member
+     * @param result receives the final states, row-major as y0; may be y0
+     * @param statistics receives the statistics of each member, or null
+     */
+    public void integrate(Factory factory, int n, double t0, double[] y0, double[] parameters, int np,
+                          double[] tout, double[] result, Statistics statistics) {
+        int members = tout.length;
+        if (n < 1 || np < 0 || y0.length != members * n || result.length != members * n
+                || (np > 0 && (parameters == null || parameters.length != members * np))
+                || (statistics != null && statistics.size() != members))
+            throw new IllegalArgumentException("ensemble: arrays do not match " + members + " members of dimension " + n
+                    + " with " + np + " parameters");
+        if (members == 0)
+            return;
+        int grain = Math.max(1, members / (8 * pool.getParallelism()));
+        pool.invoke(new Members(factory, n, t0, y0, parameters, np, tout, result, statistics, 0, members, grain));
+    }
+
+    private final class Members extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Factory factory;
+        private final int n, np, from, to, grain;
+        private final double t0;
+        private final double[] y0, parameters, tout, result;
+        private final Statistics statistics;
+
+        Members(Factory factory, int n, double t0, double[] y0, double[] parameters, int np, double[] tout,
+                double[] result, Statistics statistics, int from, int to, int grain) {
+            this.factory = factory;
+            this.n = n;
+            this.t0 = t0;
+            this.y0 = y0;
+            this.parameters = parameters;
+            this.np = np;
+            this.tout = tout;
+            this.result = result;
+            this.statistics = statistics;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > grain) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Members(factory, n, t0, y0, parameters, np, tout, result, statistics, from, mid, grain),
+                        new Members(factory, n, t0, y0, parameters, np, tout, result, statistics, mid, to, grain));
+                return;
+            }
+            double[] y = new double[n], yout = new double[n];
+            for (int i = from; i < to; i++) {
+                if (tout[i] == t0) {
+                    // lsoda returns at once, leaving the state and statistics of the last member
+                    System.arraycopy(y0, i * n, result, i * n, n);
+                    if (statistics != null) {
+                        statistics.nst[i] = statistics.nfe[i] = statistics.nje[i] = statistics.meth[i] = 0;
+                        statistics.failures[i] = null;
+                    }
+                    continue;
+                }
+                System.arraycopy(y0, i * n, y, 0, n);
+                FirstOrderDifferentialEquations ode = factory.create(parameters, i * np);
+                LSODA lsoda = config.acquire();
+                RuntimeException failure = null;
+                try {
+                    lsoda.integrate(ode, t0, y, tout[i], yout);
+                } catch (RuntimeException e) {
+                    failure = e;
+                    Arrays.fill(yout, Double.NaN);
+                } finally {
+                    if (statistics != null) {
+                        statistics.nst[i] = lsoda.getStepsTaken();
+                        statistics.nfe[i] = lsoda.getEvaluations();
+                        statistics.nje[i] = lsoda.getJacobianEvaluations();
+                        statistics.meth[i] = lsoda.getMethodUsed();
+                        statistics.failures[i] = failure;
+                    }
+                    config.release(lsoda);
+                }
+                System.arraycopy(yout, 0, result, i * n, n);
+            }
+        }
+    }
+}
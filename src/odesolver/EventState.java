@@ -0,0 +1,76 @@
+package odesolver;
+
+import org.apache.commons.math3.ode.events.EventHandler;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * An event handler registered with LSODA and the value of its switching
+ * function where events were last checked. Roots are located on the
+ * interpolating polynomial of the step, as in LSODAR, by the Illinois
+ * variant of regula falsi, so locating an event costs no evaluation of f.
+ */
+final class EventState {
+    private static final double ETA = 2.2204460492503131e-16;
+
+    final EventHandler handler;
+    final double maxCheckInterval, convergence;
+    final int maxIterationCount;
+    // g where events were last checked, and at the end of the interval being checked
+    double g0, g1;
+
+    EventState(EventHandler handler, double maxCheckInterval, double convergence, int maxIterationCount) {
+        this.handler = handler;
+        this.maxCheckInterval = Math.abs(maxCheckInterval);
+        this.convergence = Math.abs(convergence);
+        this.maxIterationCount = maxIterationCount;
+    }
+
+    /**
+     * @return whether g changes sign from g0 to g1; a zero g0 has no sign yet
+     */
+    boolean signChange() {
+        return g0 != 0.0 && (g1 == 0.0 || (g0 > 0.0) != (g1 > 0.0));
+    }
+
+    /**
+     * locate a root of g between ta and tb, g being ga at ta and gb at tb,
+     * of opposite signs or gb zero. The bracket is shrunk until it is within
+     * the convergence threshold, or the iteration count runs out.
+     * @return the end of the final bracket on the side of tb, where g has the
+     * sign of gb or is zero, so that the event is not found again
+     */
+    double locate(DoubleUnaryOperator g, double ta, double ga, double tb, double gb) {
+        int side = 0;
+        for (int i = 0; i < maxIterationCount && gb != 0.0; i++) {
+            double tol = Math.max(convergence, 100 * ETA * (Math.abs(ta) + Math.abs(tb)));
+            double width = tb - ta;
+            if (Math.abs(width) <= tol)
+                break;
+            // secant through the bracket ends, kept at least tol/2 inside it
+            double tc = tb - gb * width / (gb - ga);
+            double margin = 0.5 * tol * Math.signum(width);
+            if ((tc - ta - margin) * width < 0.0)
+                tc = ta + margin;
+            else if ((tb - margin - tc) * width < 0.0)
+                tc = tb - margin;
+            double gc = g.applyAsDouble(tc);
+            if (gc == 0.0)
+                return tc;
+            if ((gc > 0.0) == (gb > 0.0)) {
+                tb = tc;
+                gb = gc;
+                if (side == 1)
+                    ga *= 0.5;  // Illinois: tb moved twice, damp the retained end
+                side = 1;
+            } else {
+                ta = tc;
+                ga = gc;
+                if (side == -1)
+                    gb *= 0.5;
+                side = -1;
+            }
+        }
+        return tb;
+    }
+}
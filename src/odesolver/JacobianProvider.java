@@ -0,0 +1,26 @@
+package odesolver;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+
+/**
+ * A system of first order differential equations that also supplies its
+ * Jacobian in closed form. When the ode handed to LSODA implements this
+ * interface, the stiff method calls computeJacobian instead of building
+ * the Jacobian from n extra derivative evaluations (LSODA's miter = 1).
+ * <p>
+ * The Jacobian is written row by row into one array,
+ * dFdY[i*n + j] = df_i/dy_j, which is the layout LSODA factors in place.
+ */
+public interface JacobianProvider extends FirstOrderDifferentialEquations {
+
+    /**
+     * @param t current value of the independent time variable
+     * @param y array containing the current value of the state vector
+     * @param yDot array containing the current value of the time derivative of the state vector
+     * @param dFdY n*n array, cleared before the call, receiving df_i/dy_j at dFdY[i*n + j]
+     */
+    void computeJacobian(double t, double[] y, double[] yDot, double[] dFdY)
+            throws MaxCountExceededException, DimensionMismatchException;
+}
@@ -0,0 +1,59 @@
+package odesolver;
+
+/**
+ * Unit-stride kernels behind Utility.Dot, Utility.calAX, Utility.calAXPlusY,
+ * Utility.blockedLUDecomposition, SupportingFunctions.vmnorm and SupportingFunctions.fnorm.
+ * <p>
+ * ScalarKernels holds the reference loops and runs on any Java version.
+ * On JDK 17+ the multi-release jar also carries VectorKernels, written with
+ * the jdk.incubator.vector API, which is picked whenever that module is
+ * resolved (java --add-modules jdk.incubator.vector ...). Run with
+ * -Dlsoda.kernels=scalar to keep the scalar loops regardless.
+ */
+abstract class Kernels {
+    // the implementation in use, chosen once
+    static final Kernels INSTANCE = load();
+
+    /**
+     * @return sum of x[xo+i]*y[yo+i], i = 0, ..., n-1
+     */
+    abstract double dot(int n, double[] x, int xo, double[] y, int yo);
+
+    /**
+     * x[xo+i] = a*x[xo+i], i = 0, ..., n-1
+     */
+    abstract void scal(int n, double a, double[] x, int xo);
+
+    /**
+     * y[yo+i] += a*x[xo+i], i = 0, ..., n-1
+     */
+    abstract void axpy(int n, double a, double[] x, int xo, double[] y, int yo);
+
+    /**
+     * y[yo+i] = y[yo+i] + a0*x[o0+i] + a1*x[o1+i] + a2*x[o2+i] + a3*x[o3+i],
+     * i = 0, ..., n-1, added from left to right as four calls of axpy would
+     */
+    abstract void axpy4(int n, double a0, double a1, double a2, double a3,
+                        double[] x, int o0, int o1, int o2, int o3, double[] y, int yo);
+
+    /**
+     * @return max of |v[vo+i]|*w[wo+i], i = 0, ..., n-1
+     */
+    abstract double maxNorm(int n, double[] v, int vo, double[] w, int wo);
+
+    /**
+     * @return sum of |a[ao+j]|/w[wo+j], j = 0, ..., n-1
+     */
+    abstract double rowNorm(int n, double[] a, int ao, double[] w, int wo);
+
+    private static Kernels load() {
+        if (!"scalar".equals(System.getProperty("lsoda.kernels"))) {
+            try {
+                return (Kernels) Class.forName("odesolver.VectorKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // before Java 17, or jdk.incubator.vector is not resolved
+            }
+        }
+        return new ScalarKernels();
+    }
+}
@@ -0,0 +1,146 @@
+package odesolver;
+
+import java.util.Arrays;
+
+/**
+ * Restarted GMRES for the Newton step of the stiff method when the
+ * iteration matrix is never formed, in the manner of the SPIGMR routine of
+ * LSODKR. The operator is given as a callback, so memory is O(n*maxl).
+ * The Arnoldi process uses modified Gram-Schmidt, and the least squares
+ * problem is reduced with Givens rotations.
+ */
+final class KrylovSolver {
+    interface Operator {
+        /**
+         * @param v  vector of length n
+         * @param av array receiving the operator applied to v; may be v itself
+         */
+        void apply(double[] v, double[] av);
+    }
+
+    private final int n, maxl, maxrs;
+    // basis vectors, vector k from v[k*n]
+    private final double[] v;
+    // Hessenberg matrix, column k from hes[k*(maxl+1)]
+    private final double[] hes;
+    // Givens rotations and the rotated right hand side
+    private final double[] c, s, g;
+    private final double[] w, x;
+    // number of operator applications, summed over all solves
+    private int iterations;
+
+    /**
+     * @param n dimension
+     * @param maxl maximum dimension of the Krylov subspace
+     * @param maxrs maximum number of restarts
+     */
+    KrylovSolver(int n, int maxl, int maxrs) {
+        this.n = n;
+        this.maxl = Math.min(maxl, n);
+        this.maxrs = maxrs;
+        v = new double[(this.maxl + 1) * n];
+        hes = new double[(this.maxl + 1) * this.maxl];
+        c = new double[this.maxl];
+        s = new double[this.maxl];
+        g = new double[this.maxl + 1];
+        w = new double[n];
+        x = new double[n];
+    }
+
+    /**
+     * solves a x = b starting from x = 0
+     * @param a the operator
+     * @param b the right hand side, overwritten by the solution
+     * @param delta bound on the 2-norm of the residual
+     * @return 0 if the residual bound was met, 1 otherwise; b holds the last iterate either way
+     */
+    int solve(Operator a, double[] b, double delta) {
+        Arrays.fill(x, 0.0);
+        System.arraycopy(b, 0, w, 0, n);  // residual of x = 0
+        double res = Double.MAX_VALUE;
+        for (int restart = 0; restart <= maxrs; restart++) {
+            double beta = norm(w, 0);
+            if (beta <= delta) {
+                res = beta;
+                break;
+            }
+            for (int i = 0; i < n; i++)
+                v[i] = w[i] / beta;
+            Arrays.fill(g, 0.0);
+            g[0] = beta;
+
+            int k = 0;
+            while (k < maxl) {
+                int vk = k * n, vk1 = vk + n, hk = k * (maxl + 1);
+                System.arraycopy(v, vk, w, 0, n);
+                a.apply(w, w);
+                iterations++;
+                for (int j = 0; j <= k; j++) {
+                    double hj = 0;
+                    for (int i = 0; i < n; i++)
+                        hj += w[i] * v[j * n + i];
+                    hes[hk + j] = hj;
+                    for (int i = 0; i < n; i++)
+                        w[i] -= hj * v[j * n + i];
+                }
+                double hk1 = norm(w, 0);
+                hes[hk + k + 1] = hk1;
+                if (hk1 != 0.0)
+                    for (int i = 0; i < n; i++)
+                        v[vk1 + i] = w[i] / hk1;
+
+                // apply the previous rotations to the new column, then zero h[k+1][k]
+                for (int j = 0; j < k; j++) {
+                    double t1 = hes[hk + j], t2 = hes[hk + j + 1];
+                    hes[hk + j] = c[j] * t1 - s[j] * t2;
+                    hes[hk + j + 1] = s[j] * t1 + c[j] * t2;
+                }
+                double t1 = hes[hk + k], t2 = hes[hk + k + 1];
+                double r = Math.hypot(t1, t2);
+                c[k] = r == 0.0 ? 1.0 : t1 / r;
+                s[k] = r == 0.0 ? 0.0 : -t2 / r;
+                hes[hk + k] = r;
+                hes[hk + k + 1] = 0.0;
+                g[k + 1] = s[k] * g[k];
+                g[k] = c[k] * g[k];
+                res = Math.abs(g[k + 1]);
+                k++;
+                if (res <= delta || hk1 == 0.0)
+                    break;
+            }
+
+            // back substitution for the coefficients, then update x
+            for (int j = k - 1; j >= 0; j--) {
+                double t = g[j];
+                for (int i = j + 1; i < k; i++)
+                    t -= hes[i * (maxl + 1) + j] * g[i];
+                g[j] = hes[j * (maxl + 1) + j] == 0.0 ? 0.0 : t / hes[j * (maxl + 1) + j];
+            }
+            for (int j = 0; j < k; j++)
+                for (int i = 0; i < n; i++)
+                    x[i] += g[j] * v[j * n + i];
+            if (res <= delta || restart == maxrs)
+                break;
+
+            // residual of the restarted iterate
+            System.arraycopy(x, 0, w, 0, n);
+            a.apply(w, w);
+            iterations++;
+            for (int i = 0; i < n; i++)
+                w[i] = b[i] - w[i];
+        }
+        System.arraycopy(x, 0, b, 0, n);
+        return res <= delta ? 0 : 1;
+    }
+
+    private double norm(double[] u, int off) {
+        double sum = 0;
+        for (int i = 0; i < n; i++)
+            sum += u[off + i] * u[off + i];
+        return Math.sqrt(sum);
+    }
+
+    int getIterations() {
+        return iterations;
+    }
+}
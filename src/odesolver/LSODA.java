@@ -7,18 +7,30 @@ import org.apache.commons.math3.exception.MaxCountExceededException;
 import org.apache.commons.math3.exception.NoBracketingException;
 import org.apache.commons.math3.exception.NumberIsTooSmallException;
 import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.apache.commons.math3.ode.MainStateJacobianProvider;
 import org.apache.commons.math3.ode.events.EventHandler;
 import org.apache.commons.math3.ode.sampling.StepHandler;
 import tools.Data;
+import tools.Recorder;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static odesolver.SupportingFunctions.*;
 import org.apache.commons.math3.ode.FirstOrderIntegrator;
 public class LSODA implements FirstOrderIntegrator{
+    /**
+     * why a call to lsoda returned before reaching tout: its deadline passed,
+     * its derivative evaluations ran out, or its cancellation token was cancelled
+     */
+    public enum Interruption {DEADLINE, EVALUATIONS, CANCELLED}
+
     public FirstOrderDifferentialEquations ode;
     private final double ETA = 2.2204460492503131e-16;
     private double sqrteta;
@@ -26,8 +38,7 @@ public class LSODA implements FirstOrderIntegrator{
     private final double[] sm1 = {0., 0.5, 0.575, 0.55, 0.45, 0.35, 0.25,
             0.2, 0.15, 0.1, 0.075, 0.05, 0.025};
     // C_q
-    private final double[] cm1 = new double[13];
-    private final double[] cm2 = new double[6];
+    private static final double[] cm1 = MethodCoefficients.ADAMS.cm, cm2 = MethodCoefficients.BDF.cm;
     // max order for methods
     private final int[] mord = {0, 12, 5};
     private int illin = 0, init = 0;
@@ -47,8 +58,10 @@ public class LSODA implements FirstOrderIntegrator{
     private int corflag;
     // number of convergence failure
     private int ncf;
-    // History matrix
-    private double[][] yh;
+    // History matrix; column j (1-based) holds n components from yh[(j-1)*nyh]
+    private double[] yh;
+    // column stride of yh
+    private int nyh;
 
     // current method order
     private int nq;
@@ -85,24 +98,66 @@ public class LSODA implements FirstOrderIntegrator{
     private double el0;
     // corrector iteration technique
     private int miter;
-
-    // EWT
+    // Jacobian type used by the stiff method: 1 for a full matrix supplied by
+    // the ode, and 2 for a full matrix, 5 for a band matrix and 7 for a sparse
+    // matrix, all generated internally by finite differences; 9 for none,
+    // the Newton equations being solved by GMRES. jt is the type in use for
+    // the current integration, and jtConfig the one given to the constructor,
+    // whose 2 becomes 1 for each integration of an ode supplying its Jacobian
+    private int jt = 2, jtConfig = 2;
+    // lower and upper half-bandwidths of the Jacobian when jt == 5
+    private int ml, mu;
+    // pattern of P = I - h*el0*J, diagonal included, when jt == 7
+    private SparsityPattern sparsity;
+    // structurally independent column groups of sparsity, perturbed together
+    private int[][] groups;
+    // Jacobian of a MainStateJacobianProvider when jt == 1
+    private double[][] dfdy;
+    // pool for the difference quotient columns, and the copies of y and f of each chunk
+    private ForkJoinPool jacobianPool;
+    private double[][] jacY, jacF;
+    // preconditioners of the matrix-free Newton iteration when jt == 9, either may be null
+    private Preconditioner leftPrec, rightPrec;
+    // GMRES when jt == 9, with the Newton iterate it linearizes about, two work
+    // vectors and the perturbed y and f of the directional differences
+    private KrylovSolver krylov;
+    private double[] ky, kz, kw, kyp, kfp;
+    // Krylov subspace dimension, restarts, and the GMRES tolerance relative to
+    // that of the Newton iteration
+    private final int maxl = 10, maxrs = 2;
+    private final double delt = 0.05;
+    // GMRES solves that missed their tolerance
+    private int ncfl;
+
+    // EWT (0-based, as are savf and acor)
     private double[] savf, ewt;
     // local error on last step
     private double[] acor;
-    // store the Jacobian
-    private double[][] wm;
+    // store the Jacobian; column-major n x n LINPACK matrix holding P^T,
+    // so row i of P is contiguous from wm[i*n]. For a band Jacobian it holds P
+    // in LINPACK band form with column stride 2*ml+mu+1, and for a sparse one
+    // the values of P in the CSR order of sparsity
+    private double[] wm;
     // norm of Jacobian(P=I-hbJ), the last P norm, P*h
     private double pdnorm, pdlast, pdest;
-    // pivot
-    private int[] ipvt;
-
-    // method coefficients
-    private final double[][] elco = new double[13][14];
-    // current coefficients
-    private double[] el = new double[14];
+    // back end factoring and solving with P: the one given to setLinearSolver,
+    // if any, and the one in use, null when jt == 9
+    private LinearSolver linearSolver, solver;
+    // whether full iteration matrices are factored in single precision, and
+    // whether that was given up for this integration
+    private boolean mixedPrecision, mixedFallback;
+    // nje when P was last factored again in double, so that the corrector
+    // is retried in double at most once per Jacobian
+    private int njeDouble;
+    // convergence rate of the corrector beyond which it is given up
+    private final double crmix = 0.9;
+
+    // method coefficients of the method in use, shared by all instances
+    private double[][] elco;
+    // current coefficients, a row of elco
+    private double[] el;
     // coefficients for tests
-    private final double[][] tesco = new double[13][4];
+    private double[][] tesco;
 
     // current value of independent variables
     public double tn;
@@ -115,17 +170,38 @@ public class LSODA implements FirstOrderIntegrator{
     // number of J evaluations; number of derivative evaluations
     private int nje, nfe;
 
-    // value of f1,...,fn
+    // value of f1,...,fn (1-based, updated whenever lsoda returns)
     public double[] y;
+    // 0-based working value of y, handed to computeDerivatives directly
+    private double[] ycur;
     // whether to record each points to the csv file
     public boolean write = false;
     private Data recorder;
+    // further destination of the recorded points, e.g. a binary file
+    private Recorder output;
 
     private double relativeTol, absoluteTol;
 
     // for output
-    private ArrayList<Double> tvec;
-    private ArrayList<Double[]> yvec;
+    private final Trajectory trajectory = new Trajectory();
+    private final List<StepHandler> stepHandlers = new ArrayList<>();
+    private final List<EventState> eventStates = new ArrayList<>();
+    // view of yh handed to the step handlers and searched for events, the
+    // time up to which steps have been reported, and the state at an event
+    private LSODAStepInterpolator interpolator;
+    private double tlast;
+    private double[] yevent;
+    // time at which an event handler stopped the integration, or NaN
+    private double tstop = Double.NaN;
+    // budgets checked before each step: a System.nanoTime deadline if
+    // hasDeadline, the derivative evaluations of one call to lsoda, counted
+    // from nfslast, and a cancellation token. When one runs out the call
+    // returns the state of the last step, recording why in interruption
+    private long deadline;
+    private boolean hasDeadline;
+    private int maxEvaluations = Integer.MAX_VALUE, nfslast;
+    private CancellationToken token;
+    private Interruption interruption;
 
     public LSODA(double hmin, double hmax, double absoluteTol, double relativeTol, int maxOrderN, int maxOrderS){
         if (hmin > 0)
@@ -138,6 +214,48 @@ public class LSODA implements FirstOrderIntegrator{
         this.mxords = maxOrderS;
     }
 
+    /**
+     * create a solver whose stiff method uses a band Jacobian with
+     * ml sub-diagonals and mu super-diagonals
+     * @param ml lower half-bandwidth of the Jacobian
+     * @param mu upper half-bandwidth of the Jacobian
+     */
+    public LSODA(double hmin, double hmax, double absoluteTol, double relativeTol, int maxOrderN, int maxOrderS,
+                 int ml, int mu){
+        this(hmin, hmax, absoluteTol, relativeTol, maxOrderN, maxOrderS);
+        this.jtConfig = 5;
+        this.ml = ml;
+        this.mu = mu;
+    }
+
+    /**
+     * create a solver whose stiff method uses a sparse Jacobian with the
+     * given nonzero pattern, factored by a sparse LU with a fill-reducing ordering
+     * @param pattern nonzero pattern of the Jacobian
+     */
+    public LSODA(double hmin, double hmax, double absoluteTol, double relativeTol, int maxOrderN, int maxOrderS,
+                 SparsityPattern pattern){
+        this(hmin, hmax, absoluteTol, relativeTol, maxOrderN, maxOrderS);
+        this.jtConfig = 7;
+        this.sparsity = pattern.withDiagonal();
+    }
+
+    /**
+     * create a solver whose stiff method never forms the Jacobian: the Newton
+     * equations are solved by restarted GMRES with Jacobian-vector products
+     * from directional differences of the ode, so the memory used is O(n)
+     * rather than O(n^2)
+     * @param left preconditioner applied on the left, or null
+     * @param right preconditioner applied on the right, or null
+     */
+    public LSODA(double hmin, double hmax, double absoluteTol, double relativeTol, int maxOrderN, int maxOrderS,
+                 Preconditioner left, Preconditioner right){
+        this(hmin, hmax, absoluteTol, relativeTol, maxOrderN, maxOrderS);
+        this.jtConfig = 9;
+        this.leftPrec = left;
+        this.rightPrec = right;
+    }
+
     /**
      * compute P = I - h*beta_0*J and e_n^{[m+1]} - e_n^{[m]}
      * @param y   current value of y
@@ -149,164 +267,408 @@ public class LSODA implements FirstOrderIntegrator{
         jcur = 1;
         double hl0 = h * el0;
         /*
-            only when miter == 2, this function will be called
+            only when miter == 1, 2, 5, 7 or 9, this function will be called
          */
-        if (miter != 2) {
-            System.err.println("prja: miter!=2");
-            throw new RuntimeException();
+        if (miter == 5) {
+            calBandJacobian(y, hl0);
+            return;
+        }
+        if (miter == 7) {
+            calSparseJacobian(y, hl0);
+            return;
+        }
+        if (miter == 9) {
+            setupKrylov(y, hl0);
+            return;
+        }
+        if (miter == 1) {
+            calAnalyticJacobian(y, hl0);
+        } else if (miter == 2) {
+            calDifferenceJacobian(y, hl0);
+        } else {
+            throw new IllegalStateException("prja: miter = " + miter + " not 1, 2, 5, 7 or 9");
+        }
+
+        // Compute the norm of Jacobian
+        pdnorm = solver.norm(wm, ewt) / Math.abs(hl0);
+
+        // Add identity matrix
+        for (int i = 0; i < n; i++)
+            wm[i * n + i] += 1.0;
+
+        // Do LU decomposition on P to calculate e^{[m+1]}-e^{[m]}
+        if (solver.factor(wm) != 0 && !(solver instanceof MixedPrecisionLU && factorInDouble()))
+            ierpj = 1; // singular matrix
+    }
+
+    /**
+     * give up the single precision factors for the rest of the integration
+     * and factor P, which wm still holds, in double. The double factors are
+     * always DenseLU's, since the solver given to setLinearSolver may be the
+     * MixedPrecisionLU being given up.
+     * @return whether P is nonsingular
+     */
+    private boolean factorInDouble() {
+        mixedFallback = true;
+        njeDouble = nje;
+        solver = new DenseLU();
+        solver.setup(n);
+        return solver.factor(wm) == 0;
+    }
+
+    /**
+     * fill wm with -h*el0*J, J given by the user (miter = 1). No
+     * derivative evaluations are needed.
+     * @param y   current value of y
+     * @param hl0 h*el0
+     */
+    private void calAnalyticJacobian(double[] y, double hl0) {
+        Arrays.fill(wm, 0, n * n, 0.0);
+        if (ode instanceof JacobianProvider) {
+            ((JacobianProvider) ode).computeJacobian(tn, y, savf, wm);
+        } else {
+            for (double[] row : dfdy)
+                Arrays.fill(row, 0.0);
+            ((MainStateJacobianProvider) ode).computeMainStateJacobian(tn, y, savf, dfdy);
+            for (int i = 0; i < n; i++)
+                System.arraycopy(dfdy[i], 0, wm, i * n, n);
         }
+        double con = -hl0;
+        for (int i = 0; i < n * n; i++)
+            wm[i] *= con;
+    }
 
-        double fac = vmnorm(n, savf, ewt);
+    /**
+     * fill wm with -h*el0*J, J approximated by difference quotients one
+     * column at a time (miter = 2)
+     * @param y   current value of y
+     * @param hl0 h*el0
+     */
+    private void calDifferenceJacobian(double[] y, double hl0) {
+        double fac = vmnorm(n, savf, 0, ewt, 0);
         double r0 = 1000.0 * Math.abs(h) * ETA * n * fac;
         if (r0 == 0.0)
             r0 = 1.0;
-        double yj, r;
-        for (int j = 1; j <= n; j++) {
+        if (jacobianPool == null || n == 1) {
+            differenceColumns(0, n, y, acor, r0, hl0);
+        } else {
+            // each chunk of columns works on its own copy of y and f
+            int chunks = Math.min(n, jacobianPool.getParallelism());
+            if (jacY == null || jacY.length != chunks || jacY[0].length != n) {
+                jacY = new double[chunks][n];
+                jacF = new double[chunks][n];
+            }
+            ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[chunks];
+            for (int c = 0; c < chunks; c++) {
+                int from = (int) ((long) n * c / chunks), to = (int) ((long) n * (c + 1) / chunks);
+                double[] yc = jacY[c], fc = jacF[c];
+                final double r0c = r0;
+                tasks[c] = ForkJoinTask.adapt(() -> {
+                    System.arraycopy(y, 0, yc, 0, n);
+                    differenceColumns(from, to, yc, fc, r0c, hl0);
+                });
+            }
+            jacobianPool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        }
+        nfe += n;
+    }
+
+    /**
+     * difference quotients for columns from, ..., to-1 of the Jacobian
+     * @param y    current value of y, restored on return
+     * @param ftem workspace receiving f(y + delta y)
+     * @param r0   lower bound of the increments, scaled by the weights
+     * @param hl0  h*el0
+     */
+    private void differenceColumns(int from, int to, double[] y, double[] ftem, double r0, double hl0) {
+        double yj, r, fac;
+        for (int j = from; j < to; j++) {
             yj = y[j];
             // formula 3.35 in Description and Use of LSODE
             r = Math.max(sqrteta * Math.abs(yj), r0 / ewt[j]);
             y[j] += r;
             fac = -hl0 / r; // -h*b_0/delta Y
-            acor = FirstOrderSystem(y, tn);  // f(y + delta y)
-            for (int i = 1; i <= n; i++)
-                wm[i][j] = (acor[i] - savf[i]) * fac; // J_{i,j}
+            FirstOrderSystem(y, tn, ftem);  // f(y + delta y)
+            for (int i = 0; i < n; i++)
+                wm[i * n + j] = (ftem[i] - savf[i]) * fac; // J_{i,j}
             y[j] = yj;  // restore y
         }
-        nfe += n;
+    }
+
+    /**
+     * compute the columns of the full difference quotient Jacobian in parallel
+     * on the given pool, e.g. ForkJoinPool.commonPool(). Each worker perturbs
+     * its own copy of y, so the ode must allow concurrent calls to
+     * computeDerivatives. The Jacobian is bit-identical to the sequential one.
+     * @param pool pool to run on, or null for the sequential column loop
+     */
+    public void setJacobianPool(ForkJoinPool pool) {
+        this.jacobianPool = pool;
+    }
+
+    /**
+     * band version of calJacobian. Columns j, j+mband, j+2*mband, ...
+     * do not share a row of the band, so they are perturbed together and
+     * the whole Jacobian costs mband = ml+mu+1 derivative evaluations.
+     * @param y   current value of y
+     * @param hl0 h*el0
+     */
+    private void calBandJacobian(double[] y, double hl0) {
+        int mband = ml + mu + 1;
+        int mba = Math.min(mband, n);
+        int lda = mband + ml;
+        int m = ml + mu;  // row of the diagonal
+
+        double fac = vmnorm(n, savf, 0, ewt, 0);
+        double r0 = 1000.0 * Math.abs(h) * ETA * n * fac;
+        if (r0 == 0.0)
+            r0 = 1.0;
+        Arrays.fill(wm, 0, lda * n, 0.0);
+        double yj, r;
+        for (int j = 0; j < mba; j++) {
+            for (int i = j; i < n; i += mband)
+                y[i] += Math.max(sqrteta * Math.abs(y[i]), r0 / ewt[i]);
+            FirstOrderSystem(y, tn, acor);  // f(y + delta y) for the whole group
+            for (int jj = j; jj < n; jj += mband) {
+                y[jj] = yh[jj];  // restore y
+                yj = y[jj];
+                r = Math.max(sqrteta * Math.abs(yj), r0 / ewt[jj]);
+                fac = -hl0 / r;
+                int i1 = Math.max(jj - mu, 0), i2 = Math.min(jj + ml, n - 1);
+                int jo = jj * lda + m - jj;
+                for (int i = i1; i <= i2; i++)
+                    wm[jo + i] = (acor[i] - savf[i]) * fac; // J_{i,jj}
+            }
+        }
+        nfe += mba;
 
         // Compute the norm of Jacobian
-        pdnorm = fnorm(n, wm, ewt) / Math.abs(hl0);
+        pdnorm = solver.norm(wm, ewt) / Math.abs(hl0);
 
         // Add identity matrix
-        for (int i = 1; i <= n; i++)
-            wm[i][i] += 1.0;
+        for (int i = 0; i < n; i++)
+            wm[i * lda + m] += 1.0;
 
         // Do LU decomposition on P to calculate e^{[m+1]}-e^{[m]}
-        ReturningValues res = Utility.LUDecomposition(wm, n);
-        ipvt = res.ipvt;
-        wm = res.a;
-        if (res.info != 0)
+        if (solver.factor(wm) != 0)
             ierpj = 1; // singular matrix
     }
 
-
     /**
-     * Compute the method and test coefficient.
-     * The coefficients are given by a generating polynomial, i.e.,
-     * <p>
-     * l(x) = el[1] + el[2]*x + ... + el[nq+1]*x^nq.
-     * <p>
-     * For the implicit Adams method, l(x) is given by
-     * <p>
-     * dl/dx = (x+1)*(x+2)*...*(x+nq-1)/factorial(nq-1),   l(-1) = 0.
-     * <p>
-     * For the bdf methods, l(x) is given by
-     * <p>
-     * l(x) = (x+1)*(x+2)*...*(x+nq)/k,
-     * <p>
-     * where   k = factorial(nq)*(1+1/2+...+1/nq).
-     * The tesco array contains test constants used for the
-     * local error test and the selection of step size and/or order.
-     * At order nq, tesco[nq][k] is used for the selection of step
-     * size at order nq-1 if k = 1, at order nq if k = 2, and at order
-     * nq+1 if k = 3.
-     * (This method is from the paper: LINEAR MULTISTEP METHODS FOR
-     * ORDINARY DIFFERENTIAL EQUATIONS: METHOD FORMULATIONS, STABILITY,
-     * AND THE METHODS OF NORDSIECK AND GEAR.)
-     *
-     * @param meth 1 for nonstiff method and 2 for stiff method
+     * sparse version of calJacobian. Only the entries in the pattern are
+     * stored, so memory grows with the number of nonzeros rather than n^2.
+     * The columns of each group share no row, so they are perturbed
+     * together and the Jacobian costs one derivative evaluation per group.
+     * @param y   current value of y
+     * @param hl0 h*el0
      */
-    private void cfode(int meth) {
-        double[] pc = new double[13];  // coefficients for the polynomials
-        double rqfac, rq1fac, pint, xpin, ragq;
-        int qm1, qp1;
-        // non-stiff method: AM
-        if (meth == 1) {
-            // coefficients for first order method
-            elco[1][1] = 1.0;
-            elco[1][2] = 1.0;
-            tesco[1][1] = 0.0;
-            tesco[1][2] = 2.0;
-            tesco[2][1] = 1.0;
-            tesco[12][3] = 0.0;
-            pc[1] = 1.0;
-            rqfac = 1.0;
-
-            for (int q = 2; q <= 12; q++) {
-/*
-    The pc array will contain the coefficients of the polynomial
-        p(x) = (x+1)*(x+2)*...*(x+nq-1).
-    Initially, p(x) = 1.
- */
-                rq1fac = rqfac; // 1/(q-1)!
-                rqfac = rqfac / q; // 1/q!
-                qm1 = q - 1;
-                qp1 = q + 1;
-
-                // form coefficients of p(x)*(x+q-1)
-                pc[q] = 0;
-                for (int i = q; i >= 2; i--)
-                    pc[i] = pc[i - 1] + qm1 * pc[i];
-                pc[1] = qm1 * pc[1];
-
-                // compute the integral, -1 to 0, of p(x) and x*p(x)
-                // since p(x)=dl/dx
-
-                pint = pc[1];  // p(x)
-                xpin = pc[1] / 2; // x*p(x)
-                double tsign = 1.0;
-                for (int i = 2; i <= q; i++) {
-                    tsign = -tsign;
-                    pint += tsign * pc[i] / (double) i;
-                    xpin += tsign * pc[i] / (double) (i + 1);
+    private void calSparseJacobian(double[] y, double hl0) {
+        double fac = vmnorm(n, savf, 0, ewt, 0);
+        double r0 = 1000.0 * Math.abs(h) * ETA * n * fac;
+        if (r0 == 0.0)
+            r0 = 1.0;
+        double yj, r;
+        for (int[] group : groups) {
+            for (int j : group)
+                y[j] += Math.max(sqrteta * Math.abs(y[j]), r0 / ewt[j]);
+            FirstOrderSystem(y, tn, acor);  // f(y + delta y) for the whole group
+            for (int j : group) {
+                y[j] = yh[j];  // restore y
+                yj = y[j];
+                r = Math.max(sqrteta * Math.abs(yj), r0 / ewt[j]);
+                fac = -hl0 / r;
+                for (int q = sparsity.colStart[j]; q < sparsity.colStart[j + 1]; q++) {
+                    int i = sparsity.colRows[q];
+                    wm[sparsity.colEntries[q]] = (acor[i] - savf[i]) * fac; // J_{i,j}
                 }
-
-                // store coefficients for order q in elco and tesco
-                elco[q][1] = pint * rq1fac;
-                elco[q][2] = 1.0;
-                for (int i = 2; i <= q; i++)
-                    elco[q][i + 1] = rq1fac * pc[i] / i;
-                ragq = 1 / (rqfac * xpin);
-                tesco[q][2] = ragq;
-                if (q < 12)
-                    tesco[qp1][1] = ragq * rqfac / qp1;
-                tesco[qm1][3] = ragq;
             }
+        }
+        nfe += groups.length;
+
+        // Compute the norm of Jacobian
+        pdnorm = solver.norm(wm, ewt) / Math.abs(hl0);
+
+        // Add identity matrix
+        for (int i = 0; i < n; i++)
+            wm[sparsity.position(i, i)] += 1.0;
+
+        // Do LU decomposition on P to calculate e^{[m+1]}-e^{[m]}
+        if (solver.factor(wm) != 0)
+            ierpj = 1; // singular matrix
+    }
+
+    /**
+     * matrix-free stiff method (miter = 9): nothing is stored, but the
+     * preconditioners are set up and the norm of J, which the method switch
+     * needs, is estimated by a few power iterations on products J*v
+     */
+    private void setupKrylov(double[] y, double hl0) {
+        if ((leftPrec != null && leftPrec.setup(tn, y, savf, hl0) != 0)
+                || (rightPrec != null && rightPrec.setup(tn, y, savf, hl0) != 0)) {
+            ierpj = 1;
             return;
         }
+        for (int i = 0; i < n; i++)
+            kz[i] = 1.0 / ewt[i];
+        double norm = 0;
+        for (int k = 0; k < 3; k++) {
+            jacobianTimes(y, savf, kz, kw);
+            double jvnorm = vmnorm(n, kw, 0, ewt, 0);
+            norm = jvnorm / vmnorm(n, kz, 0, ewt, 0);
+            if (jvnorm == 0.0)
+                break;
+            for (int i = 0; i < n; i++)
+                kz[i] = kw[i] / jvnorm;
+        }
+        pdnorm = norm;
+    }
 
-/*
-    meth = 2. Coefficients for stiff method
- */
-        pc[1] = 1;
-        rq1fac = 1;
-/*
-   The pc array will contain the coefficients of the polynomial
+    /**
+     * approximate J*v at (tn, y) by a directional difference, the step
+     * sized so the perturbation of y has unit weighted rms norm
+     * @param y point of the Jacobian
+     * @param fy f(tn, y)
+     * @param v direction
+     * @param jv array receiving J*v; may be v itself
+     */
+    private void jacobianTimes(double[] y, double[] fy, double[] v, double[] jv) {
+        double sum = 0;
+        for (int i = 0; i < n; i++)
+            sum += (v[i] * ewt[i]) * (v[i] * ewt[i]);
+        if (sum == 0.0) {
+            Arrays.fill(jv, 0, n, 0.0);
+            return;
+        }
+        double sig = 1.0 / Math.sqrt(sum / n);
+        for (int i = 0; i < n; i++)
+            kyp[i] = y[i] + sig * v[i];
+        FirstOrderSystem(kyp, tn, kfp);
+        nfe++;
+        for (int i = 0; i < n; i++)
+            jv[i] = (kfp[i] - fy[i]) / sig;
+    }
+
+    /**
+     * solve P x = g by GMRES (miter = 9). The system is preconditioned and
+     * scaled by D = diag(ewt), so GMRES works on
+     * D*Pl^{-1}*P*Pr^{-1}*D^{-1} and its residual is in the weighted norm
+     * of the corrector test; its tolerance is a fraction delt of that test's
+     * @param g right hand side, replaced by the solution
+     */
+    private void solveKrylov(double[] g) {
+        double hl0 = h * el0;
+        if (leftPrec != null)
+            leftPrec.solve(tn, ky, savf, hl0, g);
+        for (int i = 0; i < n; i++)
+            g[i] *= ewt[i];
+        double delta = delt * tesco[nq][2] * conit * Math.sqrt(n);
+        if (krylov.solve(this::applyKrylov, g, delta) != 0)
+            ncfl++;
+        for (int i = 0; i < n; i++)
+            g[i] /= ewt[i];
+        if (rightPrec != null)
+            rightPrec.solve(tn, ky, savf, hl0, g);
+    }
+
+    /**
+     * the scaled and preconditioned operator seen by GMRES, with
+     * P*z = z - h*el0*J*z formed from one directional difference
+     */
+    private void applyKrylov(double[] u, double[] pu) {
+        double hl0 = h * el0;
+        for (int i = 0; i < n; i++)
+            kz[i] = u[i] / ewt[i];
+        if (rightPrec != null)
+            rightPrec.solve(tn, ky, savf, hl0, kz);
+        jacobianTimes(ky, savf, kz, pu);
+        for (int i = 0; i < n; i++)
+            pu[i] = kz[i] - hl0 * pu[i];
+        if (leftPrec != null)
+            leftPrec.solve(tn, ky, savf, hl0, pu);
+        for (int i = 0; i < n; i++)
+            pu[i] *= ewt[i];
+    }
 
-      p(x) = (x+1)*(x+2)*...*(x+nq).
+    /**
+     * allocate GMRES and its work vectors for jt == 9
+     */
+    private void allocateKrylov() {
+        krylov = new KrylovSolver(n, maxl, maxrs);
+        ky = new double[n];
+        kz = new double[n];
+        kw = new double[n];
+        kyp = new double[n];
+        kfp = new double[n];
+    }
 
-   Initially, p(x) = 1.
-*/
-        for (int q = 1; q <= 5; q++) {
-            qp1 = q + 1;
-
-            // form coefficients of p(x)*(x+nq)
-            pc[qp1] = 0;
-            for (int i = q + 1; i >= 2; i--)
-                pc[i] = pc[i - 1] + q * pc[i];
-            pc[1] *= q;
-
-            // Store coefficients in elco and tesco
-            for (int i = 1; i <= qp1; i++)
-                elco[q][i] = pc[i] / pc[2];
-            elco[q][2] = 1;
-            tesco[q][1] = rq1fac;
-            tesco[q][2] = qp1 / elco[q][1];
-            tesco[q][3] = (q + 2) / elco[q][1];
-            rq1fac /= q;
+    /**
+     * @return whether the ode supplies its own Jacobian
+     */
+    private boolean hasJacobian() {
+        return ode instanceof JacobianProvider || ode instanceof MainStateJacobianProvider;
+    }
+
+    /**
+     * @return the solver given to setLinearSolver, or else the default one
+     * for the current Jacobian type; null for the matrix-free type
+     */
+    private LinearSolver linearSolver() {
+        if (jt == 9)
+            return null;
+        if (linearSolver != null)
+            return linearSolver;
+        if (mixedPrecision && !mixedFallback && (jt == 1 || jt == 2))
+            return new MixedPrecisionLU(1);
+        switch (jt) {
+            case 5:
+                return new BandLU(ml, mu);
+            case 7:
+                return new SparseLU(sparsity);
+            default:
+                return new DenseLU();
         }
     }
 
+    /**
+     * replace the default back end that factors and solves with the
+     * iteration matrix of the stiff method. The solver must accept the
+     * storage of the Jacobian type in use, described in LinearSolver.
+     * @param solver the solver, or null for the default of the Jacobian type
+     */
+    public void setLinearSolver(LinearSolver solver) {
+        this.linearSolver = solver;
+    }
+
+    /**
+     * factor full iteration matrices (jt = 1 or 2) in single precision,
+     * refining each solve once in double (MixedPrecisionLU). Should a matrix
+     * not factor in single precision, or the corrector converge slowly or
+     * fail under it, it is factored again in double and the rest of the
+     * integration stays in double.
+     * @param mixedPrecision whether to use single precision factors
+     */
+    public void setMixedPrecision(boolean mixedPrecision) {
+        this.mixedPrecision = mixedPrecision;
+    }
+
+    /**
+     * @return the linear solver factoring the iteration matrix, null if there is none
+     */
+    LinearSolver getSolverInUse() {
+        return solver;
+    }
+
+
+    /**
+     * switch elco and tesco to the coefficients of a method
+     * @param meth 1 for nonstiff method and 2 for stiff method
+     */
+    private void cfode(int meth) {
+        MethodCoefficients coefficients = meth == 1 ? MethodCoefficients.ADAMS : MethodCoefficients.BDF;
+        elco = coefficients.elco;
+        tesco = coefficients.tesco;
+    }
+
 
     /**
      * this method is used update the history matrix when h changes
@@ -341,8 +703,9 @@ public class LSODA implements FirstOrderIntegrator{
         double r = 1;  // used to store r^j
         for (int j = 2; j <= l; j++) {
             r *= rh;
-            for (int i = 1; i <= n; i++)
-                yh[j][i] *= r;
+            int jo = (j - 1) * nyh;
+            for (int i = 0; i < n; i++)
+                yh[jo + i] *= r;
         }
         h *= rh;
         rc *= rh;
@@ -375,13 +738,39 @@ public class LSODA implements FirstOrderIntegrator{
                       double[] atol, int itask, int istate, int iopt, int msg, int maxstep, int maxhnil,
                       int maxordn, int maxords, double tmax, double hinit,
                       double hmax, double hmin) {
+        // use a Jacobian supplied by the ode unless another type was chosen
+        int jt = jtConfig == 2 && hasJacobian() ? 1 : jtConfig;
+        lsoda(neq, yp, t, tout, itol, rtol, atol, itask, istate, iopt, jt, this.ml, this.mu,
+                msg, maxstep, maxhnil, maxordn, maxords, tmax, hinit, hmax, hmin);
+    }
+
+    /**
+     * lsoda with an explicit choice of Jacobian type for the stiff method.
+     * With jt == 5 the Jacobian is treated as a band matrix with ml
+     * sub-diagonals and mu super-diagonals; it is then generated with
+     * ml+mu+1 derivative evaluations and factored in band storage.
+     * With jt == 7 it is treated as a sparse matrix with the pattern given
+     * to the constructor. With jt == 1 the full Jacobian is supplied by an
+     * ode implementing JacobianProvider or MainStateJacobianProvider; the
+     * shorter overload picks this type by itself for such an ode. With
+     * jt == 9 no Jacobian is formed and the Newton equations are solved
+     * by GMRES, with the preconditioners given to the constructor.
+     * @param jt Jacobian type of the stiff method, 1 for full supplied by the ode,
+     *           2 for full, 5 for band, 7 for sparse and 9 for matrix-free
+     * @param ml lower half-bandwidth of the Jacobian when jt == 5
+     * @param mu upper half-bandwidth of the Jacobian when jt == 5
+     * @see #lsoda(int, double[], double, double, int, double[], double[], int, int, int, int, int, int, int, int, double, double, double, double)
+     */
+    public void lsoda(int neq, double[] yp, double t, double tout, int itol, double[] rtol,
+                      double[] atol, int itask, int istate, int iopt, int jt, int ml, int mu,
+                      int msg, int maxstep, int maxhnil,
+                      int maxordn, int maxords, double tmax, double hinit,
+                      double hmax, double hmin) {
 
         int mxstp0 = 1000000, mxhnl0 = 10, lenyh;
         boolean ihit = false;
-        double atoli, ayi, big, h0 = 0, hmx, rh, rtoli,
-                tcrit = 0, tdist, tnext, tol, tolsf, tp, size, sum, w0;
-        tvec = new ArrayList<>();
-        yvec = new ArrayList<>();
+        double atoli, big, h0 = 0, hmx, rh, rtoli,
+                tcrit = 0, tdist, tnext, tolsf, tp, size, w0;
 
         if (write) {
             try {
@@ -444,6 +833,9 @@ public class LSODA implements FirstOrderIntegrator{
                 throw new NeqException(neq, istate);
             }
             n = neq;
+            // the trajectory runs on over continuation calls
+            if (istate == 1 || trajectory.getDimension() != n)
+                trajectory.clear(n);
 
             if (itol < 1 || itol > 4) {
                 terminate();
@@ -455,6 +847,25 @@ public class LSODA implements FirstOrderIntegrator{
                 throw new IllegalInputException("ipot", iopt);
             }
 
+            if ((jt != 1 && jt != 2 && jt != 5 && jt != 7 && jt != 9) || (jt == 1 && !hasJacobian())
+                    || (jt == 7 && (sparsity == null || sparsity.n != neq))) {
+                terminate();
+                throw new IllegalInputException("jt", jt);
+            }
+            if (jt == 5) {
+                if (ml < 0 || ml >= n) {
+                    terminate();
+                    throw new IllegalInputException("ml", ml);
+                }
+                if (mu < 0 || mu >= n) {
+                    terminate();
+                    throw new IllegalInputException("mu", mu);
+                }
+                this.ml = ml;
+                this.mu = mu;
+            }
+            this.jt = jt;
+
             /* Default options*/
             if (iopt == 0) {
                 ixpr = 0;
@@ -527,17 +938,27 @@ public class LSODA implements FirstOrderIntegrator{
         if (istate == 1) {
             sqrteta = Math.sqrt(ETA);
             meth = 1;
-            int nyh = n;
+            nyh = n;
             lenyh = 1 + Math.max(mxordn, mxords);
 
-            yh = new double[1 + lenyh][1 + nyh];
-            wm = new double[1 + nyh][1 + nyh];
-            ewt = new double[1 + nyh];
-            savf = new double[1 + nyh];
-            acor = new double[1 + nyh];
-            ipvt = new int[1 + nyh];
+            yh = new double[lenyh * nyh];
+            mixedFallback = false;
+            njeDouble = -1;
+            solver = linearSolver();
+            wm = new double[solver == null ? 0 : solver.setup(n)];
+            if (jt == 1 && !(ode instanceof JacobianProvider))
+                dfdy = new double[n][n];
+            if (jt == 7)
+                groups = sparsity.groupColumns();
+            if (jt == 9)
+                allocateKrylov();
+            ewt = new double[nyh];
+            savf = new double[nyh];
+            acor = new double[nyh];
             y = new double[1+neq];
             System.arraycopy(yp,0,y,1,neq);
+            ycur = new double[neq];
+            System.arraycopy(yp,0,ycur,0,neq);
         }
 
 /*
@@ -567,6 +988,21 @@ public class LSODA implements FirstOrderIntegrator{
  */
         if (istate == 3) {
             jstart = -1;
+            // the Jacobian type or bandwidths may have changed; the sparse
+            // ordering, costly to compute, is kept since the pattern is fixed
+            if (linearSolver != null || !(jt == 7 && solver instanceof SparseLU))
+                solver = linearSolver();
+            int lenwm = solver == null ? 0 : solver.setup(n);
+            if (wm.length < lenwm)
+                wm = new double[lenwm];
+            if (jt == 1 && !(ode instanceof JacobianProvider) && dfdy == null)
+                dfdy = new double[n][n];
+            if (jt == 7 && groups == null)
+                groups = sparsity.groupColumns();
+            if (jt == 9 && krylov == null)
+                allocateKrylov();
+            if (meth == 2)
+                miter = jt;
         }
 
 /*
@@ -592,7 +1028,9 @@ public class LSODA implements FirstOrderIntegrator{
             nhnil = 0;
             nst = 0;
             nje = 0;
+            ncfl = 0;
             nslast = 0;
+            nfslast = 0;
             hu = 0.0;
             nqu = 0;
             mused = 0;
@@ -601,24 +1039,25 @@ public class LSODA implements FirstOrderIntegrator{
             maxcor = 3;
             msbp = 20;
             mxncf = 10;
-            yh[2] = FirstOrderSystem(y, tn);
+            FirstOrderSystem(ycur, tn, savf);
+            System.arraycopy(savf, 0, yh, nyh, n);
             nfe = 1;
 
 /*
     Load the initial value vector in yh.
 */
             if (n >= 0)
-                System.arraycopy(y, 1, yh[1], 1, n);
+                System.arraycopy(ycur, 0, yh, 0, n);
 /*
     Load and invert the ewt array. (h is temporarily set to 1.)
  */
             nq = 1;
             h = 1.0;
-            ewt = ewset(y, itol, rtol, atol, n);
-            for (int i = 1; i <= n; i++) {
+            ewset(ycur, 0, itol, rtol, atol, n, ewt, 0);
+            for (int i = 0; i < n; i++) {
                 if (ewt[i] <= 0.) {
                     terminate();
-                    throw new EwtException(i,ewt[i]);
+                    throw new EwtException(i + 1,ewt[i]);
                 }
                 ewt[i] = 1. / ewt[i];  // inverse
             }
@@ -649,29 +1088,7 @@ public class LSODA implements FirstOrderIntegrator{
                     terminate();
                     throw new IllegalTException("tout_close_to_t",t, tout,tcrit);
                 }
-                tol = rtol[1];
-                if (itol > 2) {  // when rtol is an array
-                    for (int i = 2; i <= n; i++)
-                        tol = Math.max(tol, rtol[i]);
-                }
-                if (tol <= 0.0) {
-                    atoli = atol[1];
-                    for (int i = 1; i <= n; i++) {
-                        if (itol == 2 || itol == 4) // atol is array
-                            atoli = atol[i];
-                        ayi = Math.abs(y[i]);
-                        if (ayi != 0.0)
-                            tol = Math.max(tol, atoli / ayi);
-                    }
-                }
-                // 100*ETA <= tol <= 0.001
-                tol = Math.max(tol, 100 * ETA);
-                tol = Math.min(tol, 0.001);
-                // norm of f
-                sum = vmnorm(n, yh[2], ewt);
-                sum = 1 / (tol * w0 * w0) + tol * sum * sum;  // 1/(h^2)
-                h0 = 1 / Math.sqrt(sum);
-                h0 = Math.min(h0, tdist);
+                h0 = initialStep(tdist, w0, itol, rtol, atol);
                 h0 = h0 * ((tout - t >= 0.0) ? 1 : -1);
             } // end if (h0 == 0.)
 
@@ -685,24 +1102,40 @@ public class LSODA implements FirstOrderIntegrator{
    Load h with h0 and scale yh[2] by h0.
 */
             h = h0;
-            for (int i = 1; i <= n; i++)
-                yh[2][i] *= h0;
+            for (int i = 0; i < n; i++)
+                yh[nyh + i] *= h0;
         } /* if ( *istate == 1 )   */
 
 /*
    Block d.
    The next code block is for continuation calls only ( *istate = 2 or 3 )
    and is to check stop conditions before taking a step.
+   The part of the last step past the previous output time is reported
+   first to the event and step handlers, up to tout if lsoda returns there.
  */
         int iflag;
+        tstop = Double.NaN;
+        interruption = null;
+        if ((istate == 2 || istate == 3) && (tn - tlast) * h > 0.0) {
+            boolean back = (itask == 1 || itask == 4) && (tn - tout) * h >= 0.0;
+            double end = back ? tout : tn;
+            EventHandler.Action action = EventHandler.Action.CONTINUE;
+            if ((end - tlast) * h > 0.0)
+                action = advance(end, back || (itask == 3 && (tn - tout) * h >= 0.0));
+            if (action == EventHandler.Action.STOP) {
+                stopReturn();
+                return;
+            }
+            if (action != EventHandler.Action.CONTINUE)
+                restart(itask, tout, tcrit, itol, rtol, atol);
+        }
         if (istate == 2 || istate == 3) {
             nslast = nst;
+            nfslast = nfe;
             switch (itask) {
                 case 1:
                     if ((tn - tout) * h >= 0.) {
-                        y = intdy(tout, 0, y, nq, tn, hu, ETA, h, yh, n);
-                        iflag = (int) y[0];
-                        y[0] = 0;
+                        iflag = intdy(tout, 0, y, 1, nq, tn, hu, ETA, h, yh, nyh, n);
                         if (iflag != 0) {
                             terminate();
                             throw new InterpolationException(itask, tout);
@@ -738,9 +1171,7 @@ public class LSODA implements FirstOrderIntegrator{
 //                        return;
                     }
                     if ((tn - tout) * h >= 0.0) {
-                        y = intdy(tout, 0, y, nq, tn, hu, ETA, h, yh, n);
-                        iflag = (int) y[0];
-                        y[0] = 0;
+                        iflag = intdy(tout, 0, y, 1, nq, tn, hu, ETA, h, yh, nyh, n);
                         if (iflag != 0) {
                             terminate();
                             throw new InterpolationException(itask,tout);
@@ -787,25 +1218,44 @@ public class LSODA implements FirstOrderIntegrator{
    check for h below the roundoff level in *t.
 */
         // record the initial value
-        recording(t, y);
+        if (istate == 1) {
+            recording(t, y, 1);
+            tlast = t;
+            if (!stepHandlers.isEmpty() || !eventStates.isEmpty()) {
+                interpolator = new LSODAStepInterpolator(n);
+                yevent = new double[n];
+                double[] y0 = Arrays.copyOfRange(y, 1, n + 1);
+                for (StepHandler handler : stepHandlers)
+                    handler.init(t, y0, tout);
+                for (EventState e : eventStates) {
+                    e.handler.init(t, y0, tout);
+                    e.g0 = e.handler.g(t, y0);
+                }
+            }
+        }
         while (true) {
+            Interruption reason = interrupted();
+            if (reason != null) {
+                interruptReturn(reason);
+                return;
+            }
             if (istate != 1 || nst != 0) {
                 if ((nst - nslast) >= mxstep) {
                     istate = -1;
                     terminate2();
                     throw new ExceedMaxStepsException(mxstep);
                 }
-                ewt = ewset(yh[1], itol, rtol, atol, n);
-                for (int i = 1; i <= n; i++) {
+                ewset(yh, 0, itol, rtol, atol, n, ewt, 0);
+                for (int i = 0; i < n; i++) {
                     if (ewt[i] <= 0.0) {
                         istate = -6;
                         terminate2();
-                        throw new EwtException(i,ewt[i]);
+                        throw new EwtException(i + 1,ewt[i]);
                     }
                     ewt[i] = 1 / ewt[i];
                 }
             }
-            tolsf = ETA * vmnorm(n, yh[1], ewt); // tolerance scale factor
+            tolsf = ETA * vmnorm(n, yh, 0, ewt, 0); // tolerance scale factor
             if (tolsf > 0.01) {
                 tolsf = tolsf * 200;
                 if (nst == 0) {
@@ -859,22 +1309,28 @@ public class LSODA implements FirstOrderIntegrator{
                     }
                 }  // end if (meth != mused)
 
+                EventHandler.Action action = handleStep(itask, tout, tcrit);
+                if (action == EventHandler.Action.STOP) {
+                    stopReturn();
+                    return;
+                }
+                if (action != EventHandler.Action.CONTINUE)
+                    restart(itask, tout, tcrit, itol, rtol, atol);
+
                 if (itask == 1) {
                     if ((tn - tout) * h < 0.0) {
-                        recording(tn, y);
+                        recording(tn, ycur, 0);
                         continue;
                     }
-                    y = intdy(tout, 0, y, nq, tn, hu, ETA, h, yh, n);
-                    iflag = (int) y[0];
+                    iflag = intdy(tout, 0, y, 1, nq, tn, hu, ETA, h, yh, nyh, n);
                     if (iflag != 0) {
                         terminate();
                         throw new InterpolationException(itask, tout);
                     }
-                    y[0] = 0;
                     istate = 2;
                     illin = 0;
 
-                    recording(tout, y);
+                    recording(tout, y, 1);
 
                     return;
                 }
@@ -895,17 +1351,15 @@ public class LSODA implements FirstOrderIntegrator{
                 // See if tout or tcrit was reached. Adjust h if necessary
                 if (itask == 4) {
                     if ((tn - tcrit) * h >= 0.0) {
-                        y = intdy(tout, 0, y, nq, tn, hu, ETA, h, yh, n);
-                        iflag = (int) y[0];
+                        iflag = intdy(tout, 0, y, 1, nq, tn, hu, ETA, h, yh, nyh, n);
                         if (iflag != 0) {
                             terminate();
                             throw new InterpolationException(itask, tout);
                         }
-                        y[0] = 0;
                         istate = 2;
                         illin = 0;
 
-                        recording(tout, y);
+                        recording(tout, y, 1);
 
                         return;
                     } else {
@@ -916,7 +1370,7 @@ public class LSODA implements FirstOrderIntegrator{
                             return;
                         }
 
-                        recording(tn, y);
+                        recording(tn, ycur, 0);
 
                         tnext = tn + h * (1 + 4 * ETA);
                         if ((tnext - tcrit) * h <= 0.0)
@@ -941,11 +1395,11 @@ public class LSODA implements FirstOrderIntegrator{
                 // find the largest component
                 big = 0.0;
                 imxer = 1;
-                for (int i = 1; i <= n; i++) {
+                for (int i = 0; i < n; i++) {
                     size = Math.abs(acor[i]) * ewt[i];
                     if (big < size) {
                         big = size;
-                        imxer = i;
+                        imxer = i + 1;
                     }
                 }
                 terminate2();
@@ -973,13 +1427,13 @@ public class LSODA implements FirstOrderIntegrator{
 
     private void terminate2() {
         if (n >= 0)
-            System.arraycopy(yh[1], 1, y, 1, n);
+            System.arraycopy(yh, 0, y, 1, n);
         illin = 0;
     }
 
     private void successReturn(boolean ihit, double tcrit, int itask) {
         if (n >= 0)
-            System.arraycopy(yh[1], 1, y, 1, n);
+            System.arraycopy(yh, 0, y, 1, n);
 
         double t = tn;
         if (itask == 4 || itask == 5)
@@ -987,7 +1441,225 @@ public class LSODA implements FirstOrderIntegrator{
                 t = tcrit;
         istate = 2;
         illin = 0;
-        recording(t, y);
+        recording(t, y, 1);
+    }
+
+    /**
+     * report the step just accepted to the event and step handlers. The
+     * step is the last one when the stop conditions of block f will return
+     * from lsoda; if lsoda then interpolates y at tout, the step is reported
+     * up to tout.
+     * @return the action of the event handler that ended the step early, or CONTINUE
+     */
+    private EventHandler.Action handleStep(int itask, double tout, double tcrit) {
+        boolean isLast;
+        double end = tn;
+        if (itask == 1 || itask == 3) {
+            isLast = (tn - tout) * h >= 0.0;
+            if (isLast && itask == 1)
+                end = tout;
+        } else if (itask == 4) {
+            isLast = (tn - tcrit) * h >= 0.0;
+            if (isLast)
+                end = tout;
+            else
+                isLast = Math.abs(tn - tcrit) <= (100 * ETA * (Math.abs(tn) + Math.abs(h)));
+        } else
+            isLast = true;
+        if (stepHandlers.isEmpty() && eventStates.isEmpty()) {
+            tlast = end;
+            return EventHandler.Action.CONTINUE;
+        }
+        return advance(end, isLast);
+    }
+
+    /**
+     * report the integration from tlast to end, which lies in the last step.
+     * The switching functions are checked on the interpolating polynomial
+     * at end and every maxCheckInterval before it, and the earliest root is
+     * located; the step handlers then see the step up to that event, and
+     * the search goes on past it while the handlers return CONTINUE.
+     * On STOP and the resets, the state at the event is left in yevent.
+     * @param isLast whether lsoda returns at end
+     * @return the action of the event handler that ended the step early, or CONTINUE
+     */
+    private EventHandler.Action advance(double end, boolean isLast) {
+        if (interpolator == null) {
+            interpolator = new LSODAStepInterpolator(n);
+            yevent = new double[n];
+        }
+        while (true) {
+            double from = tlast, troot = end;
+            EventState first = null;
+            interpolator.reinitialize(yh, nyh, nq, tn, hu, h, from, end);
+            if (!eventStates.isEmpty()) {
+                int nsub = 1;
+                for (EventState e : eventStates)
+                    if (e.maxCheckInterval > 0)
+                        nsub = Math.max(nsub, (int) Math.ceil(Math.abs(end - from) / e.maxCheckInterval));
+                double ta = from;
+                for (int k = 1; k <= nsub && first == null; k++) {
+                    double tb = (k == nsub) ? end : from + k * (end - from) / nsub;
+                    for (EventState e : eventStates)
+                        e.g1 = switchingFunction(e, tb);
+                    for (EventState e : eventStates) {
+                        if (!e.signChange())
+                            continue;
+                        double tr = e.locate(tc -> switchingFunction(e, tc), ta, e.g0, tb, e.g1);
+                        if (first == null || (tr - troot) * h < 0.0) {
+                            first = e;
+                            troot = tr;
+                        }
+                    }
+                    if (first == null) {
+                        for (EventState e : eventStates)
+                            e.g0 = e.g1;
+                        ta = tb;
+                    }
+                }
+            }
+            if (first == null) {
+                // indexed, as the iterator would be allocated on every call
+                for (int i = 0; i < stepHandlers.size(); i++)
+                    stepHandlers.get(i).handleStep(interpolator, isLast);
+                tlast = end;
+                return EventHandler.Action.CONTINUE;
+            }
+
+            interpolator.setInterpolatedTime(troot);
+            System.arraycopy(interpolator.getInterpolatedState(), 0, yevent, 0, n);
+            boolean increasing = (first.g0 < 0.0) == (h > 0.0);
+            EventHandler.Action action = first.handler.eventOccurred(troot, yevent, increasing);
+            interpolator.reinitialize(yh, nyh, nq, tn, hu, h, from, troot);
+            for (StepHandler handler : stepHandlers)
+                handler.handleStep(interpolator, action == EventHandler.Action.STOP);
+            tlast = troot;
+            if (action == EventHandler.Action.RESET_STATE)
+                first.handler.resetState(troot, yevent);
+            for (EventState e : eventStates)
+                e.g0 = e.handler.g(troot, yevent);
+            if (action != EventHandler.Action.CONTINUE)
+                return action;
+        }
+    }
+
+    private double switchingFunction(EventState e, double t) {
+        interpolator.setInterpolatedTime(t);
+        return e.handler.g(t, interpolator.getInterpolatedState());
+    }
+
+    /**
+     * @return the budget that has run out, or null to go on with the next step
+     */
+    private Interruption interrupted() {
+        if (token != null && token.isCancelled())
+            return Interruption.CANCELLED;
+        if (nfe - nfslast >= maxEvaluations)
+            return Interruption.EVALUATIONS;
+        if (hasDeadline && System.nanoTime() - deadline >= 0)
+            return Interruption.DEADLINE;
+        return null;
+    }
+
+    /**
+     * return the state of the last step at tn when a budget has run out.
+     * The state is not recorded again, as the step was recorded when it was
+     * taken, and the integration may go on from tn with istate = 2; before
+     * the first step, when there is nothing to go on from, istate is left
+     * at 1 so that the next call starts afresh.
+     */
+    private void interruptReturn(Interruption reason) {
+        System.arraycopy(yh, 0, y, 1, n);
+        tstop = tn;
+        istate = init == 0 ? 1 : 2;
+        illin = 0;
+        interruption = reason;
+    }
+
+    /**
+     * return from lsoda at the event that stopped the integration. A later
+     * call with istate = 2 goes on from the event.
+     */
+    private void stopReturn() {
+        System.arraycopy(yevent, 0, y, 1, n);
+        tstop = tlast;
+        istate = 2;
+        illin = 0;
+        recording(tlast, y, 1);
+    }
+
+    /**
+     * start the integration afresh from the event at tlast, with the state
+     * in yevent, after an event handler has reset the state or changed the
+     * derivatives. As for istate = 1, the next step is of order 1 with the
+     * nonstiff method, and its size is chosen as in block c.
+     */
+    private void restart(int itask, double tout, double tcrit, int itol, double[] rtol, double[] atol) {
+        double direction = (hu >= 0.0) ? 1 : -1;
+        tn = tlast;
+        System.arraycopy(yevent, 0, ycur, 0, n);
+        System.arraycopy(yevent, 0, yh, 0, n);
+        FirstOrderSystem(ycur, tn, savf);
+        nfe++;
+        System.arraycopy(savf, 0, yh, nyh, n);
+        ewset(ycur, 0, itol, rtol, atol, n, ewt, 0);
+        for (int i = 0; i < n; i++) {
+            if (ewt[i] <= 0.0) {
+                istate = -6;
+                terminate2();
+                throw new EwtException(i + 1, ewt[i]);
+            }
+            ewt[i] = 1 / ewt[i];
+        }
+        double tdist = (tout - tn) * direction;
+        if (tdist <= 2 * ETA * Math.max(Math.abs(tn), Math.abs(tout)))
+            tdist = Math.abs(hu);
+        double h0 = direction * initialStep(tdist, Math.max(Math.abs(tn), Math.abs(tout)), itol, rtol, atol);
+        double rh = Math.abs(h0) * hmxi;
+        if (rh > 1.)
+            h0 /= rh;
+        if ((itask == 4 || itask == 5) && (tn + h0 - tcrit) * h0 > 0.0)
+            h0 = (tcrit - tn) * (1 - 4 * ETA);
+        h = h0;
+        for (int i = 0; i < n; i++)
+            yh[nyh + i] *= h0;
+        meth = 1;
+        mused = 1;
+        miter = 0;
+        maxord = mxordn;
+        jstart = 0;
+    }
+
+    /**
+     * the size of the first step from ycur, f being in yh[nyh] and the
+     * inverted weights in ewt
+     * @param tdist distance to tout
+     * @param w0 max(|t|, |tout|)
+     * @return the magnitude of h0, at most tdist
+     */
+    private double initialStep(double tdist, double w0, int itol, double[] rtol, double[] atol) {
+        double tol = rtol[1], atoli, ayi, sum;
+        if (itol > 2) {  // when rtol is an array
+            for (int i = 2; i <= n; i++)
+                tol = Math.max(tol, rtol[i]);
+        }
+        if (tol <= 0.0) {
+            atoli = atol[1];
+            for (int i = 1; i <= n; i++) {
+                if (itol == 2 || itol == 4) // atol is array
+                    atoli = atol[i];
+                ayi = Math.abs(ycur[i - 1]);
+                if (ayi != 0.0)
+                    tol = Math.max(tol, atoli / ayi);
+            }
+        }
+        // 100*ETA <= tol <= 0.001
+        tol = Math.max(tol, 100 * ETA);
+        tol = Math.min(tol, 0.001);
+        // norm of f
+        sum = vmnorm(n, yh, nyh, ewt, 0);
+        sum = 1 / (tol * w0 * w0) + tol * sum * sum;  // 1/(h^2)
+        return Math.min(1 / Math.sqrt(sum), tdist);
     }
 
     private void resetCoeff() {
@@ -1038,12 +1710,7 @@ public class LSODA implements FirstOrderIntegrator{
             pdest = 0;
             pdlast = 0;
             ratio = 5;
-            cfode(2);
-            for (int i = 1; i <= 5; i++)
-                cm2[i] = tesco[i][2] * elco[i][i + 1];
             cfode(1);
-            for (int i = 1; i <= 12; i++)
-                cm1[i] = tesco[i][2] * elco[i][i + 1];
             resetCoeff();
         } // end if (jstart == 0)
 
@@ -1089,11 +1756,12 @@ public class LSODA implements FirstOrderIntegrator{
                 // compute z_n^[0] = z_{n-1}xA
                 for (int j = nq; j >= 1; j--)
                     for (int i = j; i <= nq; i++) {
-                        for (int ii = 1; ii <= n; ii++)
-                            yh[i][ii] += yh[i + 1][ii];
+                        int io = (i - 1) * nyh, i1 = io + nyh;
+                        for (int ii = 0; ii < n; ii++)
+                            yh[io + ii] += yh[i1 + ii];
                     }
 
-                pnorm = vmnorm(n, yh[1], ewt);
+                pnorm = vmnorm(n, yh, 0, ewt, 0);
 
                 // correction
                 correction(pnorm);
@@ -1118,7 +1786,7 @@ public class LSODA implements FirstOrderIntegrator{
             if (m == 0)
                 dsm = del / tesco[nq][2];
             if (m > 0)
-                dsm = vmnorm(n, acor, ewt) / tesco[nq][2];
+                dsm = vmnorm(n, acor, 0, ewt, 0) / tesco[nq][2];
             if (dsm <= 1) { // pass the error test
                 kflag = 0;
                 nst++;
@@ -1127,8 +1795,9 @@ public class LSODA implements FirstOrderIntegrator{
                 mused = meth;
                 for (int j = 1; j <= l; j++) {
                     r = el[j];
-                    for (int i = 1; i <= n; i++)
-                        yh[j][i] += r * acor[i];
+                    int jo = (j - 1) * nyh;
+                    for (int i = 0; i < n; i++)
+                        yh[jo + i] += r * acor[i];
                 }
 
                 icount--;
@@ -1147,9 +1816,10 @@ public class LSODA implements FirstOrderIntegrator{
                 if (ialth == 0) {
                     rhup = 0;
                     if (l != lmax) {
-                        for (int i = 1; i <= n; i++)
-                            savf[i] = acor[i] - yh[lmax][i];
-                        dup = vmnorm(n, savf, ewt) / tesco[nq][3];  //D_{q+1}
+                        int lo = (lmax - 1) * nyh;
+                        for (int i = 0; i < n; i++)
+                            savf[i] = acor[i] - yh[lo + i];
+                        dup = vmnorm(n, savf, 0, ewt, 0) / tesco[nq][3];  //D_{q+1}
                         exup = 1.0 / (l + 1);
                         rhup = 1.0 / (1.4 * Math.pow(dup, exup) + 0.0000014);  // r_up
                     }
@@ -1185,7 +1855,7 @@ public class LSODA implements FirstOrderIntegrator{
                     break;
                 }
                 if (n >= 0)
-                    System.arraycopy(acor, 1, yh[lmax], 1, n);
+                    System.arraycopy(acor, 0, yh, (lmax - 1) * nyh, n);
                 endStoda();
                 break;
             }   // end if (dsm <= 1)
@@ -1198,8 +1868,9 @@ public class LSODA implements FirstOrderIntegrator{
                 // restore y_{n-1}
                 for (int j = nq; j >= 1; j--)
                     for (int i = j; i <= nq; i++) {
-                        for (int ii = 1; ii <= n; ii++)
-                            yh[i][ii] -= yh[i + 1][ii];
+                        int io = (i - 1) * nyh, i1 = io + nyh;
+                        for (int ii = 0; ii < n; ii++)
+                            yh[io + ii] -= yh[i1 + ii];
                     }
                 rmax = 2;
                 if (Math.abs(h) <= hmin * 1.00001) {
@@ -1235,11 +1906,11 @@ public class LSODA implements FirstOrderIntegrator{
                         rh = 0.1;
                         rh = Math.max(hmin / Math.abs(h), rh);
                         h *= rh;
-                        if (n >= 0) System.arraycopy(yh[1], 1, y, 1, n);
-                        savf = FirstOrderSystem(y, tn);
+                        if (n >= 0) System.arraycopy(yh, 0, ycur, 0, n);
+                        FirstOrderSystem(ycur, tn, savf);
                         nfe++;
-                        for (int i = 1; i <= n; i++)
-                            yh[2][i] = h * savf[i];
+                        for (int i = 0; i < n; i++)
+                            yh[nyh + i] = h * savf[i];
                         ipup = miter;
                         ialth = 5;
                         if (nq == 1)
@@ -1264,14 +1935,14 @@ public class LSODA implements FirstOrderIntegrator{
         corflag = 0;
         rate = 0;
         del = 0;
-        if (n >= 0) System.arraycopy(yh[1], 1, y, 1, n);
-        savf = FirstOrderSystem(y, tn);
+        if (n >= 0) System.arraycopy(yh, 0, ycur, 0, n);
+        FirstOrderSystem(ycur, tn, savf);
         nfe++;
 
         while (true) {
             if (m == 0) {   // first correction iteration
                 if (ipup > 0) {   // update P
-                    calJacobian(y);
+                    calJacobian(ycur);
                     ipup = 0;
                     rc = 1;
                     nslp = nst;
@@ -1281,29 +1952,34 @@ public class LSODA implements FirstOrderIntegrator{
                         return;
                     }
                 }
-                for (int i = 1; i <= n; i++)
+                for (int i = 0; i < n; i++)
                     acor[i] = 0;
             }  // end if (m == 0)
 
             if (miter == 0) {    // functional iteration
-                for (int i = 1; i <= n; i++) {
-                    savf[i] = h * savf[i] - yh[2][i];
-                    y[i] = savf[i] - acor[i];  // calculate g
+                for (int i = 0; i < n; i++) {
+                    savf[i] = h * savf[i] - yh[nyh + i];
+                    ycur[i] = savf[i] - acor[i];  // calculate g
                 }
-                del = vmnorm(n, y, ewt);  // w_m
-                for (int i = 1; i <= n; i++) {
-                    y[i] = yh[1][i] + el[1] * savf[i];  // y^[m+1]_n
+                del = vmnorm(n, ycur, 0, ewt, 0);  // w_m
+                for (int i = 0; i < n; i++) {
+                    ycur[i] = yh[i] + el[1] * savf[i];  // y^[m+1]_n
                     acor[i] = savf[i];  // e^[m+1]
                 }
             }
             else {  // Newton Iteration
-                for (int i = 1; i <= n; i++)
-                    y[i] = h * savf[i] - (yh[2][i] + acor[i]); // h(f-y')-e =g
-                y = solsy(y, wm, n, ipvt, miter);  // g = P(e^[m+1]-e^[m])
-                del = vmnorm(n, y, ewt);
-                for (int i = 1; i <= n; i++) {
-                    acor[i] += y[i];    // e^[m+1]
-                    y[i] = yh[1][i] + el[1] * acor[i];  // y^[m+1]
+                if (miter == 9)
+                    System.arraycopy(ycur, 0, ky, 0, n);  // the iterate, f(ky) being in savf
+                for (int i = 0; i < n; i++)
+                    ycur[i] = h * savf[i] - (yh[nyh + i] + acor[i]); // h(f-y')-e =g
+                if (miter == 9)
+                    solveKrylov(ycur);
+                else
+                    solver.solve(wm, ycur, 0);  // g = P(e^[m+1]-e^[m])
+                del = vmnorm(n, ycur, 0, ewt, 0);
+                for (int i = 0; i < n; i++) {
+                    acor[i] += ycur[i];    // e^[m+1]
+                    ycur[i] = yh[i] + el[1] * acor[i];  // y^[m+1]
                 }
             }
 
@@ -1332,7 +2008,21 @@ public class LSODA implements FirstOrderIntegrator{
             The corrector iteration failed to converge.
          */
             m++;
-            if (m == maxcor || (m >= 2 && del > 2 * delp)) {
+            boolean failed = m == maxcor || (m >= 2 && del > 2 * delp);
+            if (solver instanceof MixedPrecisionLU && jcur == 1 && njeDouble != nje && (failed || crate > crmix)) {
+                // not for want of a fresh Jacobian: factor P again in double
+                // and restart the corrector
+                if (!factorInDouble()) {
+                    corFailure();
+                    return;
+                }
+                crate = 0.7;
+                m = 0;
+                rate = 0;
+                del = 0;
+                System.arraycopy(yh, 0, ycur, 0, n);
+            }
+            else if (failed) {
                 if (miter == 0 || jcur == 1) {
                     corFailure();
                     return;
@@ -1344,13 +2034,13 @@ public class LSODA implements FirstOrderIntegrator{
                 rate = 0;
                 del = 0;
                 if (n >= 0)
-                    System.arraycopy(yh[1], 1, y, 1, n);
+                    System.arraycopy(yh, 0, ycur, 0, n);
             }
             // iterate corrector
             else {
                 delp = del;
             }
-            savf = FirstOrderSystem(y, tn);
+            FirstOrderSystem(ycur, tn, savf);
             nfe++;
         }
     }
@@ -1387,7 +2077,7 @@ public class LSODA implements FirstOrderIntegrator{
                     lm2 = mxords + 1;
                     exm2 = 1.0 / lm2;
                     lm2p1 = lm2 + 1;
-                    dm2 = vmnorm(n, yh[lm2p1], ewt) / cm2[mxords];  // D
+                    dm2 = vmnorm(n, yh, (lm2p1 - 1) * nyh, ewt, 0) / cm2[mxords];  // D
                     rh2 = 1.0 / (1.2 * Math.pow(dm2, exm2) + 0.0000012);
                 } else {
                     dm2 = dsm * (cm1[nq] / cm2[nq]);  // D
@@ -1404,7 +2094,7 @@ public class LSODA implements FirstOrderIntegrator{
             rh = rh2;
             icount = 20;
             meth = 2;
-            miter = 2;
+            miter = jt;
             pdlast = 0;
             nq = nqm2;
             l = nq + 1;
@@ -1418,7 +2108,7 @@ public class LSODA implements FirstOrderIntegrator{
             lm1 = mxordn + 1;
             exm1 = 1.0 / lm1;
             lm1p1 = lm1 + 1;
-            dm1 = vmnorm(n, yh[lm1p1], ewt) / cm1[mxordn];
+            dm1 = vmnorm(n, yh, (lm1p1 - 1) * nyh, ewt, 0) / cm1[mxordn];
             rh1 = 1.0 / (1.2 * Math.pow(dm1, exm1) + 0.0000012);   //r_same
         } else {
             dm1 = dsm * (cm2[nq] / cm1[nq]);
@@ -1454,7 +2144,7 @@ public class LSODA implements FirstOrderIntegrator{
 
     private void endStoda() {
         double r = 1.0 / tesco[nqu][2];
-        for (int i = 1; i <= n; i++)
+        for (int i = 0; i < n; i++)
             acor[i] *= r;
         hold = h;
         jstart = 1;
@@ -1474,7 +2164,7 @@ public class LSODA implements FirstOrderIntegrator{
 
         rhdn = 0;
         if (nq != 1) {
-            ddn = vmnorm(n, yh[l], ewt) / tesco[nq][1];   // D_down
+            ddn = vmnorm(n, yh, (l - 1) * nyh, ewt, 0) / tesco[nq][1];   // D_down
             exdn = 1.0 / nq;
             rhdn = 1.0 / (1.3 * Math.pow(ddn, exdn) + 0.0000013);  // r_down
         }
@@ -1512,8 +2202,9 @@ public class LSODA implements FirstOrderIntegrator{
                     r = el[l] / l;
                     nq = l;
                     l = nq + 1;
-                    for (int i = 1; i <= n; i++)
-                        yh[l][i] = acor[i] * r;
+                    int lo = (l - 1) * nyh;
+                    for (int i = 0; i < n; i++)
+                        yh[lo + i] = acor[i] * r;
                     orderflag = 2;
                 } else {
                     ialth = 3;
@@ -1554,8 +2245,9 @@ public class LSODA implements FirstOrderIntegrator{
         tn = told;
         for (int j = nq; j >= 1; j--)      // recovery
             for (int i = j; i <= nq; i++) {
-                for (int ii = 1; ii <= n; ii++)
-                    yh[i][ii] -= yh[i + 1][ii];
+                int io = (i - 1) * nyh, i1 = io + nyh;
+                for (int ii = 0; ii < n; ii++)
+                    yh[io + ii] -= yh[i1 + ii];
             }
 
         if (Math.abs(h) <= hmin * 1.00001 || ncf == mxncf) {
@@ -1571,12 +2263,14 @@ public class LSODA implements FirstOrderIntegrator{
      * record the values of each step
      * @param t the value of t
      * @param values the value of y
+     * @param off index of the first component in values
      */
-    private void recording(double t, double[] values) {
-        tvec.add(t);
-        yvec.add(Utility.transformYVec(values));
+    private void recording(double t, double[] values, int off) {
+        trajectory.add(t, values, off);
         if (write)
-            recorder.write(t, values);
+            recorder.write(t, values, off);
+        if (output != null)
+            output.write(t, values, off);
     }
 
     public double[] FirstOrderSystem(double[] y, double t) {
@@ -1587,6 +2281,20 @@ public class LSODA implements FirstOrderIntegrator{
         return ydot1;
     }
 
+    /**
+     * evaluate f(t, y) without allocating or copying: the 0-based state is
+     * handed to computeDerivatives directly and ydot is filled in place.
+     * ydot is cleared first, as a fresh array would be, since some systems
+     * accumulate into it.
+     * @param y 0-based values of y
+     * @param t the value of t
+     * @param ydot 0-based array receiving f(t, y)
+     */
+    void FirstOrderSystem(double[] y, double t, double[] ydot) {
+        Arrays.fill(ydot, 0, n, 0.0);
+        ode.computeDerivatives(t, y, ydot);
+    }
+
     /**
      * the ODE integrating method
      * @param ode the definition of the ordinary differential equations
@@ -1594,6 +2302,8 @@ public class LSODA implements FirstOrderIntegrator{
      * @param y the initial values
      * @param tout the output station
      * @param result the array used to store the integrating result
+     * @return tout, the time of the event at which an event handler stopped the integration,
+     * or the time of the last step taken before a budget ran out, see getInterruption
      * @throws DimensionMismatchException
      * @throws NumberIsTooSmallException
      * @throws MaxCountExceededException
@@ -1607,7 +2317,7 @@ public class LSODA implements FirstOrderIntegrator{
         this.lsoda(ode.getDimension(), y,t0,tout,1,rtol,atol,
                 1,1,1,0,0,0,0,0, 0.0,0.0,hmaxi,hmin);
         System.arraycopy(this.y,1,result,0,ode.getDimension());
-        return 0;
+        return Double.isNaN(tstop) ? tout : tstop;
     }
 
     @Override
@@ -1617,37 +2327,44 @@ public class LSODA implements FirstOrderIntegrator{
 
     @Override
     public void addStepHandler(StepHandler stepHandler) {
-
+        stepHandlers.add(stepHandler);
     }
 
     @Override
     public Collection<StepHandler> getStepHandlers() {
-        return null;
+        return Collections.unmodifiableCollection(stepHandlers);
     }
 
     @Override
     public void clearStepHandlers() {
-
+        stepHandlers.clear();
     }
 
     @Override
-    public void addEventHandler(EventHandler eventHandler, double v, double v1, int i) {
-
+    public void addEventHandler(EventHandler eventHandler, double maxCheckInterval, double convergence, int maxIterationCount) {
+        eventStates.add(new EventState(eventHandler, maxCheckInterval, convergence, maxIterationCount));
     }
 
+    /**
+     * LSODA locates roots on the interpolating polynomial by its own Illinois
+     * iteration, as LSODAR does; the solver is not used.
+     */
     @Override
-    public void addEventHandler(EventHandler eventHandler, double v, double v1, int i, UnivariateSolver univariateSolver) {
-
+    public void addEventHandler(EventHandler eventHandler, double maxCheckInterval, double convergence, int maxIterationCount, UnivariateSolver univariateSolver) {
+        addEventHandler(eventHandler, maxCheckInterval, convergence, maxIterationCount);
     }
 
     @Override
     public Collection<EventHandler> getEventHandlers() {
-        return null;
+        List<EventHandler> handlers = new ArrayList<>();
+        for (EventState e : eventStates)
+            handlers.add(e.handler);
+        return Collections.unmodifiableCollection(handlers);
     }
 
     @Override
     public void clearEventHandlers() {
-
+        eventStates.clear();
     }
 
     @Override
@@ -1660,14 +2377,53 @@ public class LSODA implements FirstOrderIntegrator{
         return h;
     }
 
+    /**
+     * limit the derivative evaluations of each call to lsoda. The budget is
+     * checked between steps, so a call may go over it by the evaluations of
+     * one step; once it is spent the call returns early, see getInterruption.
+     * @param maxEvaluations evaluations allowed, negative for no limit
+     */
     @Override
-    public void setMaxEvaluations(int i) {
-
+    public void setMaxEvaluations(int maxEvaluations) {
+        this.maxEvaluations = maxEvaluations < 0 ? Integer.MAX_VALUE : maxEvaluations;
     }
 
     @Override
     public int getMaxEvaluations() {
-        return 0;
+        return maxEvaluations;
+    }
+
+    /**
+     * give up the integration before the first step that would start after
+     * the deadline; the call then returns early, see getInterruption
+     * @param deadline a value of System.nanoTime()
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+        hasDeadline = true;
+    }
+
+    public void clearDeadline() {
+        hasDeadline = false;
+    }
+
+    /**
+     * give up the integration before the first step that would start after
+     * token is cancelled; the call then returns early, see getInterruption
+     * @param token the token, or null for none
+     */
+    public void setCancellationToken(CancellationToken token) {
+        this.token = token;
+    }
+
+    /**
+     * @return why the last call to lsoda returned with the state of its last
+     * step before reaching tout, or null if it did not. The time of that
+     * state is tn, and the integration may go on from it with the istate
+     * returned: 2, or 1 if the call stopped before the first step.
+     */
+    public Interruption getInterruption() {
+        return interruption;
     }
 
     @Override
@@ -1679,19 +2435,73 @@ public class LSODA implements FirstOrderIntegrator{
         return nje;
     }
 
+    /**
+     * @return the number of GMRES iterations of the matrix-free stiff method,
+     * each costing one derivative evaluation (counted in getEvaluations)
+     */
+    public int getLinearIterations(){
+        return krylov == null ? 0 : krylov.getIterations();
+    }
+
+    /**
+     * @return the number of GMRES solves that stopped short of their tolerance
+     */
+    public int getLinearConvergenceFailures(){
+        return ncfl;
+    }
+
     public int getStepsTaken(){
         return nst;
     }
 
+    /**
+     * @return the method used on the last step, 1 for Adams and 2 for BDF
+     */
+    public int getMethodUsed(){
+        return mused;
+    }
+
     public int getMaxComponent(){
         return imxer;
     }
 
+    /**
+     * send every recorded point to recorder as well, e.g. a tools.BinaryWriter;
+     * the recorder is not closed by LSODA
+     * @param recorder the destination, or null for none
+     */
+    public void setRecorder(Recorder recorder){
+        output = recorder;
+    }
+
+    /**
+     * choose which points the trajectory keeps from the next call to lsoda
+     * with istate = 1 on; with lastN or none it takes constant memory
+     * however long the run
+     */
+    public void setRetention(RetentionPolicy retention){
+        trajectory.setRetention(retention);
+    }
+
+    /**
+     * @return the points recorded since the last call to lsoda with istate = 1,
+     * in primitive arrays
+     */
+    public Trajectory getTrajectory(){
+        return trajectory;
+    }
+
+    /**
+     * @return a boxed copy of the recorded times, built on each call
+     */
     public ArrayList<Double> getTvec(){
-        return tvec;
+        return trajectory.toTimeList();
     }
 
+    /**
+     * @return a boxed copy of the recorded states, built on each call
+     */
     public ArrayList<Double[]> getYvec(){
-        return yvec;
+        return trajectory.toStateList();
     }
 }
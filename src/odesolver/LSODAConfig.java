@@ -0,0 +1,241 @@
+package odesolver;
+
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Immutable configuration of the solver: the step size bounds, tolerances,
+ * maximum orders and the Jacobian type of the stiff method. It holds no
+ * state of any integration, so one instance may be shared by any number of
+ * threads, each running its own integrations against it without locking.
+ * <p>
+ * The state of an integration lives in an LSODA, its workspace. integrate
+ * takes a workspace kept by the calling thread, so a thread that integrates
+ * again and again reuses the same arrays; newWorkspace gives one for the
+ * caller to keep, e.g. to add step or event handlers or to continue an
+ * integration with istate = 2. The method coefficients are shared by all
+ * workspaces. The objects that keep state of their own, preconditioners
+ * and linear solvers, are given as suppliers called once per workspace.
+ */
+public final class LSODAConfig {
+    private final double hmin, hmax, absoluteTol, relativeTol;
+    private final int maxOrderN, maxOrderS;
+    // Jacobian type, as in LSODA, with the bandwidths of jt = 5 and the pattern of jt = 7
+    private final int jt, ml, mu;
+    private final SparsityPattern sparsity;
+    private final Supplier<? extends Preconditioner> left, right;
+    private final Supplier<? extends LinearSolver> linearSolver;
+    private final boolean mixedPrecision;
+    private final ForkJoinPool jacobianPool;
+    private final RetentionPolicy retention;
+
+    // idle workspaces of the calling thread; a stack, so that an ode which
+    // integrates with the same configuration gets a workspace of its own
+    private final ThreadLocal<ArrayDeque<LSODA>> workspaces = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private LSODAConfig(double hmin, double hmax, double absoluteTol, double relativeTol, int maxOrderN, int maxOrderS,
+                        int jt, int ml, int mu, SparsityPattern sparsity,
+                        Supplier<? extends Preconditioner> left, Supplier<? extends Preconditioner> right,
+                        Supplier<? extends LinearSolver> linearSolver, boolean mixedPrecision,
+                        ForkJoinPool jacobianPool, RetentionPolicy retention) {
+        this.hmin = hmin;
+        this.hmax = hmax;
+        this.absoluteTol = absoluteTol;
+        this.relativeTol = relativeTol;
+        this.maxOrderN = maxOrderN;
+        this.maxOrderS = maxOrderS;
+        this.jt = jt;
+        this.ml = ml;
+        this.mu = mu;
+        this.sparsity = sparsity;
+        this.left = left;
+        this.right = right;
+        this.linearSolver = linearSolver;
+        this.mixedPrecision = mixedPrecision;
+        this.jacobianPool = jacobianPool;
+        this.retention = retention;
+    }
+
+    /**
+     * configure a solver whose stiff method uses a full Jacobian, as
+     * new LSODA(hmin, hmax, absoluteTol, relativeTol, maxOrderN, maxOrderS)
+     */
+    public LSODAConfig(double hmin, double hmax, double absoluteTol, double relativeTol, int maxOrderN, int maxOrderS) {
+        this(hmin, hmax, absoluteTol, relativeTol, maxOrderN, maxOrderS, 2, 0, 0, null,
+                null, null, null, false, null, RetentionPolicy.all());
+    }
+
+    /**
+     * configure a solver whose stiff method uses a band Jacobian with
+     * ml sub-diagonals and mu super-diagonals
+     * @param ml lower half-bandwidth of the Jacobian
+     * @param mu upper half-bandwidth of the Jacobian
+     */
+    public LSODAConfig(double hmin, double hmax, double absoluteTol, double relativeTol, int maxOrderN, int maxOrderS,
+                       int ml, int mu) {
+        this(hmin, hmax, absoluteTol, relativeTol, maxOrderN, maxOrderS, 5, ml, mu, null,
+                null, null, null, false, null, RetentionPolicy.all());
+    }
+
+    /**
+     * configure a solver whose stiff method uses a sparse Jacobian with the
+     * given nonzero pattern
+     * @param pattern nonzero pattern of the Jacobian
+     */
+    public LSODAConfig(double hmin, double hmax, double absoluteTol, double relativeTol, int maxOrderN, int maxOrderS,
+                       SparsityPattern pattern) {
+        this(hmin, hmax, absoluteTol, relativeTol, maxOrderN, maxOrderS, 7, 0, 0, pattern,
+                null, null, null, false, null, RetentionPolicy.all());
+    }
+
+    /**
+     * configure a solver whose stiff method solves the Newton equations by
+     * GMRES without forming the Jacobian
+     * @param left supplier of the preconditioner applied on the left, or null
+     * @param right supplier of the preconditioner applied on the right, or null
+     */
+    public LSODAConfig(double hmin, double hmax, double absoluteTol, double relativeTol, int maxOrderN, int maxOrderS,
+                       Supplier<? extends Preconditioner> left, Supplier<? extends Preconditioner> right) {
+        this(hmin, hmax, absoluteTol, relativeTol, maxOrderN, maxOrderS, 9, 0, 0, null,
+                left, right, null, false, null, RetentionPolicy.all());
+    }
+
+    /**
+     * @param linearSolver supplier of the back end factoring the iteration
+     * matrix, see LSODA.setLinearSolver, or null for the default
+     * @return this configuration with the given linear solver
+     */
+    public LSODAConfig withLinearSolver(Supplier<? extends LinearSolver> linearSolver) {
+        return new LSODAConfig(hmin, hmax, absoluteTol, relativeTol, maxOrderN, maxOrderS, jt, ml, mu, sparsity,
+                left, right, linearSolver, mixedPrecision, jacobianPool, retention);
+    }
+
+    /**
+     * @return this configuration with full iteration matrices factored in
+     * single precision or not, see LSODA.setMixedPrecision
+     */
+    public LSODAConfig withMixedPrecision(boolean mixedPrecision) {
+        return new LSODAConfig(hmin, hmax, absoluteTol, relativeTol, maxOrderN, maxOrderS, jt, ml, mu, sparsity,
+                left, right, linearSolver, mixedPrecision, jacobianPool, retention);
+    }
+
+    /**
+     * @return this configuration with the difference quotient Jacobian
+     * computed on the given pool, see LSODA.setJacobianPool
+     */
+    public LSODAConfig withJacobianPool(ForkJoinPool pool) {
+        return new LSODAConfig(hmin, hmax, absoluteTol, relativeTol, maxOrderN, maxOrderS, jt, ml, mu, sparsity,
+                left, right, linearSolver, mixedPrecision, pool, retention);
+    }
+
+    /**
+     * @return this configuration with the trajectory of each integration
+     * kept as the policy says, see LSODA.setRetention
+     */
+    public LSODAConfig withRetention(RetentionPolicy retention) {
+        return new LSODAConfig(hmin, hmax, absoluteTol, relativeTol, maxOrderN, maxOrderS, jt, ml, mu, sparsity,
+                left, right, linearSolver, mixedPrecision, jacobianPool, retention);
+    }
+
+    /**
+     * @return a new workspace set up with this configuration, to be used by
+     * one thread at a time
+     */
+    public LSODA newWorkspace() {
+        LSODA lsoda;
+        switch (jt) {
+            case 5:
+                lsoda = new LSODA(hmin, hmax, absoluteTol, relativeTol, maxOrderN, maxOrderS, ml, mu);
+                break;
+            case 7:
+                lsoda = new LSODA(hmin, hmax, absoluteTol, relativeTol, maxOrderN, maxOrderS, sparsity);
+                break;
+            case 9:
+                lsoda = new LSODA(hmin, hmax, absoluteTol, relativeTol, maxOrderN, maxOrderS,
+                        left == null ? null : left.get(), right == null ? null : right.get());
+                break;
+            default:
+                lsoda = new LSODA(hmin, hmax, absoluteTol, relativeTol, maxOrderN, maxOrderS);
+        }
+        if (linearSolver != null)
+            lsoda.setLinearSolver(linearSolver.get());
+        lsoda.setMixedPrecision(mixedPrecision);
+        lsoda.setJacobianPool(jacobianPool);
+        lsoda.setRetention(retention);
+        return lsoda;
+    }
+
+    /**
+     * integrate the ode from t0 to tout, as LSODA.integrate, on a workspace
+     * of the calling thread. Safe to call from any number of threads at once.
+     * The workspace records no trajectory, whatever the retention policy.
+     * @param ode the ode, which must allow the concurrent calls made by the
+     *            threads integrating it
+     * @param t0 initial time
+     * @param y initial state, 0-based
+     * @param tout final time
+     * @param result receives the state at the returned time, 0-based; may be y
+     * @return tout, or the time an event handler stopped the integration at
+     */
+    public double integrate(FirstOrderDifferentialEquations ode, double t0, double[] y, double tout, double[] result) {
+        LSODA lsoda = acquire();
+        try {
+            return lsoda.integrate(ode, t0, y, tout, result);
+        } finally {
+            release(lsoda);
+        }
+    }
+
+    /**
+     * @return an idle workspace of the calling thread, to be given back by
+     * release. It records no trajectory, which its callers could not reach
+     * and which would stay in memory as long as the thread.
+     */
+    LSODA acquire() {
+        ArrayDeque<LSODA> idle = workspaces.get();
+        if (!idle.isEmpty())
+            return idle.pop();
+        LSODA lsoda = newWorkspace();
+        lsoda.setRetention(RetentionPolicy.none());
+        return lsoda;
+    }
+
+    void release(LSODA lsoda) {
+        lsoda.ode = null;
+        workspaces.get().push(lsoda);
+    }
+
+    /**
+     * @return the Jacobian type of the stiff method, as in LSODA
+     */
+    int getJacobianType() {
+        return jt;
+    }
+
+    public double getMinStep() {
+        return hmin;
+    }
+
+    public double getMaxStep() {
+        return hmax;
+    }
+
+    public double getAbsoluteTolerance() {
+        return absoluteTol;
+    }
+
+    public double getRelativeTolerance() {
+        return relativeTol;
+    }
+
+    public int getMaxOrderNonStiff() {
+        return maxOrderN;
+    }
+
+    public int getMaxOrderStiff() {
+        return maxOrderS;
+    }
+}
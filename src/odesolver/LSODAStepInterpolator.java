@@ -0,0 +1,177 @@
+package odesolver;
+
+import org.apache.commons.math3.exception.OutOfRangeException;
+import org.apache.commons.math3.ode.sampling.StepInterpolator;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Dense output over the last step of LSODA, read off the Nordsieck array
+ * yh by SupportingFunctions.intdy. The interpolator handed to step handlers
+ * is a view of the solver's own yh: nothing is copied, the state and
+ * derivative are only computed when asked for, and it is valid until the
+ * handler returns. copy() takes a snapshot that stays valid.
+ */
+public final class LSODAStepInterpolator implements StepInterpolator {
+    // Externalizable through StepInterpolator
+    private static final long serialVersionUID = 1L;
+    private static final double ETA = 2.2204460492503131e-16;
+
+    private int n, nyh, nq;
+    // Nordsieck array, column j from yh[j*nyh], scaled by h
+    private double[] yh;
+    // time reached, last step size and the step size yh is scaled by
+    private double tn, hu, h;
+    // the step as reported: from the time the step was taken from, to tn or
+    // to tout on the last step of itask 1
+    private double start, end;
+    private double interpolatedTime;
+    private double[] state, derivative;
+    private boolean stateDirty, derivativeDirty;
+
+    /**
+     * for deserialization only
+     */
+    public LSODAStepInterpolator() {
+    }
+
+    LSODAStepInterpolator(int n) {
+        this.n = n;
+        state = new double[n];
+        derivative = new double[n];
+    }
+
+    /**
+     * point the interpolator at the step just taken, reported from start
+     * (tn - hu up to rounding) to end, tn or an output time inside the step
+     */
+    void reinitialize(double[] yh, int nyh, int nq, double tn, double hu, double h, double start, double end) {
+        this.yh = yh;
+        this.nyh = nyh;
+        this.nq = nq;
+        this.tn = tn;
+        this.hu = hu;
+        this.h = h;
+        this.start = start;
+        this.end = end;
+        interpolatedTime = end;
+        stateDirty = true;
+        derivativeDirty = true;
+    }
+
+    @Override
+    public double getPreviousTime() {
+        return start;
+    }
+
+    @Override
+    public double getCurrentTime() {
+        return end;
+    }
+
+    @Override
+    public double getInterpolatedTime() {
+        return interpolatedTime;
+    }
+
+    @Override
+    public void setInterpolatedTime(double time) {
+        if (time != interpolatedTime) {
+            interpolatedTime = time;
+            stateDirty = true;
+            derivativeDirty = true;
+        }
+    }
+
+    /**
+     * @return the state at the interpolated time, in an array reused by later calls
+     */
+    @Override
+    public double[] getInterpolatedState() {
+        if (stateDirty) {
+            interpolate(0, state);
+            stateDirty = false;
+        }
+        return state;
+    }
+
+    /**
+     * @return the derivative at the interpolated time, in an array reused by later calls
+     */
+    @Override
+    public double[] getInterpolatedDerivatives() {
+        if (derivativeDirty) {
+            interpolate(1, derivative);
+            derivativeDirty = false;
+        }
+        return derivative;
+    }
+
+    private void interpolate(int k, double[] dky) {
+        if (SupportingFunctions.intdy(interpolatedTime, k, dky, 0, nq, tn, hu, ETA, h, yh, nyh, n) != 0)
+            throw new OutOfRangeException(interpolatedTime, start, end);
+    }
+
+    /**
+     * LSODA integrates no secondary equations
+     */
+    @Override
+    public double[] getInterpolatedSecondaryState(int index) {
+        throw new OutOfRangeException(index, 0, -1);
+    }
+
+    @Override
+    public double[] getInterpolatedSecondaryDerivatives(int index) {
+        throw new OutOfRangeException(index, 0, -1);
+    }
+
+    @Override
+    public boolean isForward() {
+        return hu >= 0;
+    }
+
+    /**
+     * @return an interpolator over a copy of the columns of yh in use
+     */
+    @Override
+    public StepInterpolator copy() {
+        LSODAStepInterpolator copy = new LSODAStepInterpolator(n);
+        double[] columns = new double[(nq + 1) * n];
+        for (int j = 0; j <= nq; j++)
+            System.arraycopy(yh, j * nyh, columns, j * n, n);
+        copy.reinitialize(columns, n, nq, tn, hu, h, start, end);
+        copy.setInterpolatedTime(interpolatedTime);
+        return copy;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeInt(n);
+        out.writeInt(nq);
+        out.writeDouble(tn);
+        out.writeDouble(hu);
+        out.writeDouble(h);
+        out.writeDouble(start);
+        out.writeDouble(end);
+        out.writeDouble(interpolatedTime);
+        for (int j = 0; j <= nq; j++)
+            for (int i = 0; i < n; i++)
+                out.writeDouble(yh[j * nyh + i]);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        n = in.readInt();
+        nq = in.readInt();
+        double t = in.readDouble(), u = in.readDouble(), s = in.readDouble(), b = in.readDouble(), e = in.readDouble(), ti = in.readDouble();
+        double[] columns = new double[(nq + 1) * n];
+        for (int i = 0; i < columns.length; i++)
+            columns[i] = in.readDouble();
+        state = new double[n];
+        derivative = new double[n];
+        reinitialize(columns, n, nq, t, u, s, b, e);
+        setInterpolatedTime(ti);
+    }
+}
@@ -0,0 +1,53 @@
+package odesolver;
+
+/**
+ * Linear algebra back end of the Newton iteration of the stiff method.
+ * Whenever the Jacobian is re-evaluated, lsoda forms -h*el0*J in an array,
+ * asks the solver for its norm, adds the identity and has the resulting
+ * iteration matrix P = I - h*el0*J factored; every corrector iteration
+ * then solves with those factors.
+ * <p>
+ * The array is laid out as the Jacobian type (jt) in use dictates:
+ * <ul>
+ *     <li>jt = 1 or 2: dense, column-major holding P^T, so row i of P is
+ *     contiguous from a[i*n];</li>
+ *     <li>jt = 5: LINPACK band form of P, column j from a[j*lda] with
+ *     lda = 2*ml+mu+1 and element (i, j) at a[j*lda + ml+mu + i-j];</li>
+ *     <li>jt = 7: values of P in the CSR order of the sparsity pattern,
+ *     diagonal included.</li>
+ * </ul>
+ * DenseLU, BandLU and SparseLU are the default solvers for these types.
+ * The matrix-free type jt = 9 does not use a LinearSolver.
+ */
+public interface LinearSolver {
+
+    /**
+     * prepare for iteration matrices of dimension n; called when an
+     * integration starts and when its parameters are changed (istate = 3)
+     * @param n dimension
+     * @return the length of the array holding the matrix
+     */
+    int setup(int n);
+
+    /**
+     * @param a -h*el0*J
+     * @param w inverted error weights
+     * @return the weighted max-row-sum norm, max_i w_i * sum_j |a_ij| / w_j
+     */
+    double norm(double[] a, double[] w);
+
+    /**
+     * factor P in place
+     * @param a P, overwritten by its factors or left for the solver to keep its own
+     * @return 0, or k if the k-th pivot (1-based) is zero; lsoda then retries with a smaller step
+     */
+    int factor(double[] a);
+
+    /**
+     * solves P x = b with the factors of the last call to factor
+     * @param a the array given to factor
+     * @param b the right hand side vector, overwritten by x
+     * @param boff index of the first element of b
+     */
+    void solve(double[] a, double[] b, int boff);
+}
@@ -0,0 +1,1078 @@
+package odesolver;
+
+import odesolver.exception.IllegalInputException;
+
+import java.util.Arrays;
+
+/**
+ * Integrates an ensemble of small systems of the same ode in lockstep: the
+ * members, or lanes, are advanced together one step attempt at a time, their
+ * states held structure of arrays as in LockstepSystem. For systems of a few
+ * components the cost of one LSODA integration is mostly overhead around
+ * loops of length n; here the predictor, the norms, the corrector, the
+ * difference quotient Jacobian and the LU factors and solves all loop over
+ * the lanes innermost, so they run through contiguous memory, vectorise, and
+ * the derivatives of all the lanes come from one call.
+ * <p>
+ * Each lane keeps its own step size, order and method, switching between
+ * Adams and BDF as LSODA does, and the step and order selection, the error
+ * test and the method switch are those of LSODA, taken lane by lane. A lane
+ * whose corrector has converged is masked out of the further iterations of
+ * the others. The difference is in the Jacobian: whenever a stiff lane needs
+ * a new one, the difference quotients are formed for all the lanes at once,
+ * every stiff lane starting its iteration takes the new Jacobian, and every
+ * stiff lane gets its iteration matrix refactored at its current step size.
+ * Results therefore agree with LSODA's to within the tolerances, not bit for
+ * bit. Only the full difference quotient Jacobian is supported.
+ * <p>
+ * A lane that LSODA would have stopped with an exception is stopped with
+ * the istate of that exception instead, and gets NaN states; the other
+ * lanes are not affected. One instance keeps the work arrays of one
+ * integration at a time, to be used by one thread at a time.
+ */
+public final class LockstepEnsemble {
+    private static final double ETA = 2.2204460492503131e-16;
+    // stability region for non-stiff method
+    private static final double[] sm1 = {0., 0.5, 0.575, 0.55, 0.45, 0.35, 0.25,
+            0.2, 0.15, 0.1, 0.075, 0.05, 0.025};
+    // C_q
+    private static final double[] cm1 = MethodCoefficients.ADAMS.cm, cm2 = MethodCoefficients.BDF.cm;
+    private static final double ccmax = 0.3, ratio = 5;
+    private static final int maxcor = 3, msbp = 20, mxncf = 10, mxstep = 1000000;
+    // number of columns of the history matrix
+    private static final int lenyh = 13;
+
+    private final int lanes;
+    private final double hmin, hmxi, rtol, atol;
+    private final int mxordn, mxords;
+    private final double sqrteta = Math.sqrt(ETA);
+
+    // number of components of one lane
+    private int n;
+    // component i of lane k at [i*lanes + k]; column j of the history matrix from yh[j*n*lanes]
+    private double[] yh, ycur, savf, acor, saved, ewt, ftem, g;
+    // Jacobian and LU factors of P = I - h*el0*J, element (i, j) of lane k at [(i*n + j)*lanes + k]
+    private double[] jac, wm;
+    private int[] ipvt;
+    // el of each lane for columns 0 to 12 of the history, column j at elv[j*lanes + k], zero past l
+    private final double[] elv;
+
+    // state of each lane, as the fields of LSODA of the same names
+    private final double[] tn, tout, h, hold, told, rc, el0, el1, crate, conit, rmax, rh, rhup;
+    private final double[] pdest, pdlast, pdnorm, pnorm, del, delp, rate, r0;
+    private final int[] nq, l, meth, mused, miter, maxord, lmax, ialth, icount, irflag, kflag, ncf;
+    private final int[] nslp, ipup, jcur, m, jstart, nst, nfe, nje, status;
+    private final MethodCoefficients[] coefficients;
+    // whether the lane begins a new step, is in the corrector iteration,
+    // failed its corrector and needs its derivative again after repeated failures
+    private final boolean[] fresh, iterating, corfail, refill;
+    // 1 for the lanes taking part in a loop, 0 for the others
+    private final double[] mask, jmask;
+    // per lane scratch
+    private final double[] norm, hl0, pivot;
+
+    /**
+     * @param config step size bounds, tolerances and maximum orders of every lane;
+     *               its Jacobian type must be the full difference quotient one
+     * @param lanes number of members integrated together
+     */
+    public LockstepEnsemble(LSODAConfig config, int lanes) {
+        if (lanes < 1)
+            throw new IllegalArgumentException("lockstep ensemble: lanes = " + lanes);
+        if (config.getJacobianType() != 2)
+            throw new IllegalArgumentException("lockstep ensemble: only the full difference quotient Jacobian is supported");
+        if (config.getRelativeTolerance() < 0)
+            throw new IllegalInputException("rtol", config.getRelativeTolerance());
+        if (config.getAbsoluteTolerance() < 0)
+            throw new IllegalInputException("atol", config.getAbsoluteTolerance());
+        this.lanes = lanes;
+        hmin = Math.max(config.getMinStep(), 0);
+        hmxi = config.getMaxStep() > 0 ? 1 / config.getMaxStep() : 0;
+        rtol = config.getRelativeTolerance();
+        atol = config.getAbsoluteTolerance();
+        mxordn = maxOrder("mxordn", config.getMaxOrderNonStiff(), 12);
+        mxords = maxOrder("mxords", config.getMaxOrderStiff(), 5);
+
+        elv = new double[lenyh * lanes];
+        tn = new double[lanes];
+        tout = new double[lanes];
+        h = new double[lanes];
+        hold = new double[lanes];
+        told = new double[lanes];
+        rc = new double[lanes];
+        el0 = new double[lanes];
+        el1 = new double[lanes];
+        crate = new double[lanes];
+        conit = new double[lanes];
+        rmax = new double[lanes];
+        rh = new double[lanes];
+        rhup = new double[lanes];
+        pdest = new double[lanes];
+        pdlast = new double[lanes];
+        pdnorm = new double[lanes];
+        pnorm = new double[lanes];
+        del = new double[lanes];
+        delp = new double[lanes];
+        rate = new double[lanes];
+        r0 = new double[lanes];
+        nq = new int[lanes];
+        l = new int[lanes];
+        meth = new int[lanes];
+        mused = new int[lanes];
+        miter = new int[lanes];
+        maxord = new int[lanes];
+        lmax = new int[lanes];
+        ialth = new int[lanes];
+        icount = new int[lanes];
+        irflag = new int[lanes];
+        kflag = new int[lanes];
+        ncf = new int[lanes];
+        nslp = new int[lanes];
+        ipup = new int[lanes];
+        jcur = new int[lanes];
+        m = new int[lanes];
+        jstart = new int[lanes];
+        nst = new int[lanes];
+        nfe = new int[lanes];
+        nje = new int[lanes];
+        status = new int[lanes];
+        coefficients = new MethodCoefficients[lanes];
+        fresh = new boolean[lanes];
+        iterating = new boolean[lanes];
+        corfail = new boolean[lanes];
+        refill = new boolean[lanes];
+        mask = new double[lanes];
+        jmask = new double[lanes];
+        norm = new double[lanes];
+        hl0 = new double[lanes];
+        pivot = new double[lanes];
+    }
+
+    private static int maxOrder(String name, int order, int max) {
+        if (order < 0)
+            throw new IllegalInputException(name, order);
+        return order == 0 ? max : Math.min(order, max);
+    }
+
+    /**
+     * integrate every lane from t0 to its tout
+     * @param system the ode of all the lanes
+     * @param t0 initial time, common to the lanes
+     * @param y0 initial states, component i of lane k at y0[i*lanes + k]
+     * @param tout final time of each lane
+     * @param result receives the states at tout, laid out as y0; may be y0
+     */
+    public void integrate(LockstepSystem system, double t0, double[] y0, double[] tout, double[] result) {
+        int n = system.getDimension();
+        if (n < 1 || y0.length != n * lanes || result.length != n * lanes || tout.length != lanes)
+            throw new IllegalArgumentException("lockstep ensemble: arrays do not match " + lanes
+                    + " lanes of dimension " + n);
+        allocate(n);
+        start(system, t0, y0, tout, result);
+        while (step(system, result))
+            ;
+        for (int k = 0; k < lanes; k++)
+            if (status[k] != 2)
+                for (int i = 0; i < n; i++)
+                    result[i * lanes + k] = Double.NaN;
+    }
+
+    private void allocate(int n) {
+        if (this.n == n)
+            return;
+        this.n = n;
+        int size = n * lanes;
+        yh = new double[lenyh * size];
+        ycur = new double[size];
+        savf = new double[size];
+        acor = new double[size];
+        saved = new double[size];
+        ewt = new double[size];
+        ftem = new double[size];
+        g = new double[size];
+        jac = new double[n * size];
+        wm = new double[n * size];
+        ipvt = new int[size];
+    }
+
+    /**
+     * load the history matrix and choose the initial step of each lane, as in block c of LSODA
+     */
+    private void start(LockstepSystem system, double t0, double[] y0, double[] tout, double[] result) {
+        int size = n * lanes;
+        Arrays.fill(tn, t0);
+        System.arraycopy(tout, 0, this.tout, 0, lanes);
+        System.arraycopy(y0, 0, ycur, 0, size);
+        system.computeDerivatives(tn, ycur, savf, lanes);
+        Arrays.fill(yh, 0);
+        System.arraycopy(ycur, 0, yh, 0, size);
+        System.arraycopy(savf, 0, yh, size, size);
+        Arrays.fill(jac, 0);
+        errorWeights();
+        for (int k = 0; k < lanes; k++) {
+            identity(k);
+            status[k] = 0;
+            nst[k] = 0;
+            nje[k] = 0;
+            nfe[k] = 1;
+            meth[k] = 1;
+            mused[k] = 0;
+            miter[k] = 0;
+            maxord[k] = mxordn;
+            jstart[k] = 0;
+            fresh[k] = true;
+            if (!weightsValid(k)) {
+                status[k] = -6;
+                continue;
+            }
+            double tdist = Math.abs(tout[k] - t0), w0 = Math.max(Math.abs(t0), Math.abs(tout[k]));
+            if (tdist < 2 * ETA * w0) {
+                status[k] = -3;
+                continue;
+            }
+            double h0 = initialStep(k, tdist, w0) * ((tout[k] - t0 >= 0.0) ? 1 : -1);
+            double r = Math.abs(h0) * hmxi;
+            if (r > 1.)
+                h0 /= r;
+            h[k] = h0;
+            for (int i = 0; i < n; i++)
+                yh[size + i * lanes + k] *= h0;
+        }
+    }
+
+    /**
+     * @return the magnitude of h0 of lane k, as LSODA.initialStep with scalar tolerances
+     */
+    private double initialStep(int k, double tdist, double w0) {
+        double tol = rtol;
+        if (tol <= 0.0)
+            for (int i = 0; i < n; i++) {
+                double ayi = Math.abs(yh[i * lanes + k]);
+                if (ayi != 0.0)
+                    tol = Math.max(tol, atol / ayi);
+            }
+        tol = Math.max(tol, 100 * ETA);
+        tol = Math.min(tol, 0.001);
+        double sum = laneNorm(yh, n * lanes, k);
+        sum = 1 / (tol * w0 * w0) + tol * sum * sum;
+        return Math.min(1 / Math.sqrt(sum), tdist);
+    }
+
+    /**
+     * one step attempt of every running lane: the checks of block e and the
+     * step of stoda, up to the point where a lane would retry, switch or return
+     * @return whether any lane is still running
+     */
+    private boolean step(LockstepSystem system, double[] result) {
+        int size = n * lanes, maxq = 0;
+        errorWeights();
+        norms(yh, 0, norm);
+        Arrays.fill(mask, 0);
+        for (int k = 0; k < lanes; k++) {
+            if (status[k] != 0)
+                continue;
+            if (fresh[k]) {
+                if (nst[k] >= mxstep) {
+                    status[k] = -1;
+                    continue;
+                }
+                if (!weightsValid(k)) {
+                    status[k] = -6;
+                    continue;
+                }
+                if (ETA * norm[k] > 0.01) {
+                    status[k] = -2;
+                    continue;
+                }
+                begin(k);
+            }
+            // whether to update P
+            if (Math.abs(rc[k] - 1) > ccmax)
+                ipup[k] = miter[k];
+            if (nst[k] >= nslp[k] + msbp)
+                ipup[k] = miter[k];
+            tn[k] += h[k];
+            mask[k] = 1;
+            maxq = Math.max(maxq, nq[k]);
+        }
+        if (maxq == 0)
+            return false;
+
+        // compute z_n^[0] = z_{n-1}xA; the columns past nq of a lane are zero,
+        // so the lanes of lower order are predicted exactly
+        for (int j = maxq; j >= 1; j--)
+            for (int i = j; i <= maxq; i++) {
+                int io = (i - 1) * size, i1 = io + size;
+                for (int c = 0; c < size; c += lanes)
+                    for (int k = 0; k < lanes; k++)
+                        yh[io + c + k] += mask[k] * yh[i1 + c + k];
+            }
+        norms(yh, 0, pnorm);
+
+        correct(system);
+
+        // error test; the corrections of the lanes that do not pass are
+        // cleared so that one update of the history serves all the lanes
+        norms(acor, 0, norm);
+        for (int k = 0; k < lanes; k++) {
+            double dsm = 0;
+            if (mask[k] != 0 && !corfail[k]) {
+                dsm = (m[k] == 0 ? del[k] : norm[k]) / coefficients[k].tesco[nq[k]][2];
+                norm[k] = dsm;
+            }
+            if (mask[k] == 0 || corfail[k] || dsm > 1) {
+                for (int c = k; c < size; c += lanes)
+                    acor[c] = 0;
+                if (mask[k] != 0 && !corfail[k])
+                    mask[k] = -1;  // failed the error test
+            }
+        }
+        int maxl = maxq + 2;
+        for (int j = 0; j < Math.min(maxl, lenyh); j++) {
+            int jo = j * size, eo = j * lanes;
+            for (int c = 0; c < size; c += lanes)
+                for (int k = 0; k < lanes; k++)
+                    yh[jo + c + k] += elv[eo + k] * acor[c + k];
+        }
+
+        boolean refills = false;
+        for (int k = 0; k < lanes; k++) {
+            if (mask[k] == 0 || corfail[k])
+                continue;
+            if (mask[k] > 0)
+                accept(k, norm[k], result);
+            else
+                refills |= reject(k, norm[k]);
+        }
+        if (refills) {
+            // recompute the first derivative of the lanes restarted at order 1
+            System.arraycopy(yh, 0, ycur, 0, size);
+            system.computeDerivatives(tn, ycur, savf, lanes);
+            for (int k = 0; k < lanes; k++) {
+                if (!refill[k])
+                    continue;
+                refill[k] = false;
+                nfe[k]++;
+                for (int c = k; c < size; c += lanes)
+                    yh[size + c] = h[k] * savf[c];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * the initialisation at the start of stoda
+     */
+    private void begin(int k) {
+        fresh[k] = false;
+        kflag[k] = 0;
+        told[k] = tn[k];
+        ncf[k] = 0;
+        jcur[k] = 0;
+        delp[k] = 0;
+        if (jstart[k] == 0) {
+            lmax[k] = maxord[k] + 1;
+            nq[k] = 1;
+            l[k] = 2;
+            ialth[k] = 2;
+            rmax[k] = 10000;
+            rc[k] = 0;
+            el0[k] = 1;
+            crate[k] = 0.7;
+            hold[k] = h[k];
+            nslp[k] = 0;
+            ipup[k] = miter[k];
+            icount[k] = 20;
+            irflag[k] = 0;
+            pdest[k] = 0;
+            pdlast[k] = 0;
+            coefficients[k] = MethodCoefficients.ADAMS;
+            resetCoeff(k);
+        } else if (jstart[k] == -1) {  // the method was switched
+            ipup[k] = miter[k];
+            lmax[k] = maxord[k] + 1;
+            if (ialth[k] == 1)
+                ialth[k] = 2;
+            if (meth[k] != mused[k]) {
+                coefficients[k] = meth[k] == 1 ? MethodCoefficients.ADAMS : MethodCoefficients.BDF;
+                ialth[k] = l[k];
+                resetCoeff(k);
+            }
+        }
+        jstart[k] = 1;
+    }
+
+    /**
+     * the corrector iteration of all the running lanes together, each lane
+     * leaving it when it has converged or failed
+     */
+    private void correct(LockstepSystem system) {
+        int size = n * lanes;
+        Arrays.fill(acor, 0);
+        System.arraycopy(yh, 0, ycur, 0, size);
+        for (int k = 0; k < lanes; k++) {
+            iterating[k] = mask[k] != 0;
+            corfail[k] = false;
+            m[k] = 0;
+            rate[k] = 0;
+            del[k] = 0;
+        }
+        evaluate(system);
+        while (true) {
+            // when one stiff lane needs a new Jacobian, every stiff lane at
+            // the start of its iteration gets one from the same evaluations,
+            // so that the lanes come to share their refreshes
+            boolean refresh = false;
+            for (int k = 0; k < lanes; k++) {
+                jmask[k] = iterating[k] && m[k] == 0 && miter[k] == 2 ? 1 : 0;
+                refresh |= jmask[k] != 0 && ipup[k] > 0;
+            }
+            if (refresh)
+                jacobian(system);
+
+            // g = h*f - y' - e, Newton lanes solving P g; Adams lanes have P = I
+            for (int c = 0; c < size; c += lanes)
+                for (int k = 0; k < lanes; k++)
+                    g[c + k] = h[k] * savf[c + k] - (yh[size + c + k] + acor[c + k]);
+            solve();
+            norms(g, 0, norm);
+            for (int c = 0; c < size; c += lanes)
+                for (int k = 0; k < lanes; k++) {
+                    double e = acor[c + k] + (iterating[k] ? g[c + k] : 0);
+                    acor[c + k] = e;
+                    ycur[c + k] = yh[c + k] + el1[k] * e;
+                }
+
+            boolean any = false;
+            for (int k = 0; k < lanes; k++) {
+                if (iterating[k])
+                    any |= converge(k, norm[k]);
+            }
+            if (!any)
+                return;
+            evaluate(system);
+        }
+    }
+
+    private void evaluate(LockstepSystem system) {
+        system.computeDerivatives(tn, ycur, savf, lanes);
+        for (int k = 0; k < lanes; k++)
+            if (iterating[k])
+                nfe[k]++;
+    }
+
+    /**
+     * the convergence test of LSODA.correction for lane k
+     * @return whether the lane iterates further
+     */
+    private boolean converge(int k, double d) {
+        del[k] = d;
+        if (d <= 100 * pnorm[k] * ETA) {
+            iterating[k] = false;
+            return false;
+        }
+        if (m[k] != 0 || meth[k] != 1) {
+            if (m[k] != 0) {
+                double rm = 1024;
+                if (d <= 1024 * delp[k])
+                    rm = d / delp[k];
+                rate[k] = Math.max(rate[k], rm);
+                crate[k] = Math.max(0.2 * crate[k], rm);
+            }
+            double dcon = d * Math.min(1, 1.5 * crate[k]) / (coefficients[k].tesco[nq[k]][2] * conit[k]);
+            if (dcon <= 1) {
+                pdest[k] = Math.max(pdest[k], rate[k] / Math.abs(h[k] * el1[k]));
+                if (pdest[k] != 0.0)
+                    pdlast[k] = pdest[k];
+                iterating[k] = false;
+                return false;
+            }
+        }
+        m[k]++;
+        if (m[k] == maxcor || (m[k] >= 2 && d > 2 * delp[k])) {
+            if (miter[k] == 0 || jcur[k] == 1) {
+                corFailure(k);
+                return false;
+            }
+            // restart the corrector with a new Jacobian
+            ipup[k] = miter[k];
+            m[k] = 0;
+            rate[k] = 0;
+            del[k] = 0;
+            int size = n * lanes;
+            for (int c = k; c < size; c += lanes) {
+                ycur[c] = yh[c];
+                acor[c] = 0;
+            }
+        } else {
+            delp[k] = d;
+        }
+        return true;
+    }
+
+    private void corFailure(int k) {
+        iterating[k] = false;
+        corfail[k] = true;
+        ncf[k]++;
+        rmax[k] = 2;
+        tn[k] = told[k];
+        retract(k);
+        if (Math.abs(h[k]) <= hmin * 1.00001 || ncf[k] == mxncf) {
+            status[k] = -5;
+            return;
+        }
+        rh[k] = Math.max(0.25, hmin / Math.abs(h[k]));
+        ipup[k] = miter[k];
+        scaleH(k, rh[k]);
+    }
+
+    /**
+     * difference quotient Jacobian of the lanes in jmask, one column of all
+     * the lanes per evaluation, then the factors of the iteration matrices
+     * of every lane
+     */
+    private void jacobian(LockstepSystem system) {
+        int size = n * lanes;
+        norms(savf, 0, norm);
+        for (int k = 0; k < lanes; k++) {
+            double r = 1000.0 * Math.abs(h[k]) * ETA * n * norm[k];
+            r0[k] = r == 0.0 || jmask[k] == 0 ? 1.0 : r;
+        }
+        for (int j = 0; j < n; j++) {
+            int jo = j * lanes;
+            for (int k = 0; k < lanes; k++) {
+                // formula 3.35 in Description and Use of LSODE
+                double r = Math.max(sqrteta * Math.abs(ycur[jo + k]), r0[k] / ewt[jo + k]);
+                pivot[k] = ycur[jo + k];
+                ycur[jo + k] += r;
+                norm[k] = 1 / r;
+            }
+            system.computeDerivatives(tn, ycur, ftem, lanes);
+            for (int i = 0; i < n; i++) {
+                int io = i * lanes, ao = (i * n + j) * lanes;
+                for (int k = 0; k < lanes; k++)
+                    jac[ao + k] = jmask[k] != 0 ? (ftem[io + k] - savf[io + k]) * norm[k] : jac[ao + k];
+            }
+            System.arraycopy(pivot, 0, ycur, jo, lanes);
+        }
+        for (int k = 0; k < lanes; k++) {
+            if (jmask[k] == 0)
+                continue;
+            nfe[k] += n;
+            nje[k]++;
+            ipup[k] = 0;
+            nslp[k] = nst[k];
+            crate[k] = 0.7;
+            jcur[k] = 1;
+            // norm of J consistent with the weighted max-norm
+            double an = 0;
+            for (int i = 0; i < n; i++) {
+                double sum = 0;
+                for (int c = 0; c < n; c++)
+                    sum += Math.abs(jac[(i * n + c) * lanes + k]) / ewt[c * lanes + k];
+                an = Math.max(an, sum * ewt[i * lanes + k]);
+            }
+            pdnorm[k] = an;
+        }
+        factor();
+        for (int k = 0; k < lanes; k++) {
+            if (pivot[k] != 0)
+                continue;
+            if (iterating[k])
+                corFailure(k);
+            else
+                ipup[k] = miter[k];
+        }
+    }
+
+    /**
+     * form P = I - h*el0*J of every lane at its current step size, I for
+     * the Adams lanes, and factor it by Gaussian elimination with partial
+     * pivoting. A singular lane gets P = I and is flagged by a zero in pivot.
+     */
+    private void factor() {
+        for (int k = 0; k < lanes; k++) {
+            hl0[k] = miter[k] == 2 ? h[k] * el0[k] : 0;
+            if (miter[k] == 2)
+                rc[k] = 1;
+            pivot[k] = 1;
+        }
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j < n; j++) {
+                int ao = (i * n + j) * lanes;
+                double d = i == j ? 1 : 0;
+                for (int k = 0; k < lanes; k++)
+                    wm[ao + k] = d - hl0[k] * jac[ao + k];
+            }
+        for (int c = 0; c < n; c++) {
+            int co = c * lanes, dc = (c * n + c) * lanes;
+            for (int k = 0; k < lanes; k++) {
+                ipvt[co + k] = c;
+                norm[k] = Math.abs(wm[dc + k]);
+            }
+            for (int i = c + 1; i < n; i++) {
+                int ao = (i * n + c) * lanes;
+                for (int k = 0; k < lanes; k++)
+                    if (Math.abs(wm[ao + k]) > norm[k]) {
+                        norm[k] = Math.abs(wm[ao + k]);
+                        ipvt[co + k] = i;
+                    }
+            }
+            for (int k = 0; k < lanes; k++) {
+                int p = ipvt[co + k];
+                if (p != c)
+                    for (int j = 0; j < n; j++) {
+                        int a = (c * n + j) * lanes + k, b = (p * n + j) * lanes + k;
+                        double t = wm[a];
+                        wm[a] = wm[b];
+                        wm[b] = t;
+                    }
+                if (wm[dc + k] == 0) {
+                    pivot[k] = 0;
+                    wm[dc + k] = 1;
+                }
+                hl0[k] = 1 / wm[dc + k];
+            }
+            for (int i = c + 1; i < n; i++) {
+                int ao = (i * n + c) * lanes;
+                for (int k = 0; k < lanes; k++)
+                    wm[ao + k] *= hl0[k];
+                for (int j = c + 1; j < n; j++) {
+                    int io = (i * n + j) * lanes, cj = (c * n + j) * lanes;
+                    for (int k = 0; k < lanes; k++)
+                        wm[io + k] -= wm[ao + k] * wm[cj + k];
+                }
+            }
+        }
+        for (int k = 0; k < lanes; k++)
+            if (pivot[k] == 0)
+                identity(k);
+    }
+
+    /**
+     * overwrite g with the solution of P x = g in every lane
+     */
+    private void solve() {
+        for (int c = 0; c < n; c++) {
+            int co = c * lanes;
+            for (int k = 0; k < lanes; k++) {
+                int p = ipvt[co + k];
+                if (p != c) {
+                    double t = g[co + k];
+                    g[co + k] = g[p * lanes + k];
+                    g[p * lanes + k] = t;
+                }
+            }
+        }
+        for (int i = 1; i < n; i++)
+            for (int c = 0; c < i; c++) {
+                int io = i * lanes, co = c * lanes, ao = (i * n + c) * lanes;
+                for (int k = 0; k < lanes; k++)
+                    g[io + k] -= wm[ao + k] * g[co + k];
+            }
+        for (int i = n - 1; i >= 0; i--) {
+            int io = i * lanes;
+            for (int j = i + 1; j < n; j++) {
+                int jo = j * lanes, ao = (i * n + j) * lanes;
+                for (int k = 0; k < lanes; k++)
+                    g[io + k] -= wm[ao + k] * g[jo + k];
+            }
+            int dc = (i * n + i) * lanes;
+            for (int k = 0; k < lanes; k++)
+                g[io + k] /= wm[dc + k];
+        }
+    }
+
+    private void identity(int k) {
+        for (int i = 0; i < n; i++) {
+            ipvt[i * lanes + k] = i;
+            for (int j = 0; j < n; j++)
+                wm[(i * n + j) * lanes + k] = i == j ? 1 : 0;
+        }
+    }
+
+    /**
+     * a step of lane k passed the error test: the method and order
+     * selection of stoda and the stop condition of block f
+     */
+    private void accept(int k, double dsm, double[] result) {
+        int size = n * lanes;
+        kflag[k] = 0;
+        nst[k]++;
+        mused[k] = meth[k];
+        icount[k]--;
+        boolean switched = false;
+        if (icount[k] < 0) {
+            methodSwitch(k, dsm);
+            if (meth[k] != mused[k]) {
+                rh[k] = Math.max(rh[k], hmin / Math.abs(h[k]));
+                scaleH(k, rh[k]);
+                rmax[k] = 10;
+                switched = true;
+            }
+        }
+        if (!switched) {
+            ialth[k]--;
+            if (ialth[k] == 0) {
+                rhup[k] = 0;
+                if (l[k] != lmax[k]) {
+                    double dup = 0;
+                    for (int c = k; c < size; c += lanes)
+                        dup = Math.max(dup, Math.abs(acor[c] - saved[c]) * ewt[c]);
+                    dup /= coefficients[k].tesco[nq[k]][3];  // D_{q+1}
+                    rhup[k] = 1.0 / (1.4 * Math.pow(dup, 1.0 / (l[k] + 1)) + 0.0000014);
+                }
+                int orderflag = orderSwitch(k, dsm);
+                if (orderflag == 2)
+                    resetCoeff(k);
+                if (orderflag != 0) {
+                    rh[k] = Math.max(rh[k], hmin / Math.abs(h[k]));
+                    scaleH(k, rh[k]);
+                    rmax[k] = 10;
+                }
+            } else if (ialth[k] == 1 && l[k] != lmax[k]) {
+                for (int c = k; c < size; c += lanes)
+                    saved[c] = acor[c];
+            }
+        }
+        hold[k] = h[k];
+        if (meth[k] != mused[k]) {
+            maxord[k] = meth[k] == 2 ? mxords : mxordn;
+            jstart[k] = -1;
+        }
+        fresh[k] = true;
+        if ((tn[k] - tout[k]) * h[k] >= 0.0) {
+            // interpolate at tout by Horner's rule
+            double s = (tout[k] - tn[k]) / h[k];
+            for (int i = 0; i < n; i++) {
+                double v = yh[(nq[k] * n + i) * lanes + k];
+                for (int j = nq[k] - 1; j >= 0; j--)
+                    v = yh[(j * n + i) * lanes + k] + s * v;
+                result[i * lanes + k] = v;
+            }
+            status[k] = 2;
+        }
+    }
+
+    /**
+     * a step of lane k failed the error test
+     * @return whether the lane needs its derivative at y_{n-1} again
+     */
+    private boolean reject(int k, double dsm) {
+        kflag[k]--;
+        tn[k] = told[k];
+        retract(k);
+        rmax[k] = 2;
+        if (Math.abs(h[k]) <= hmin * 1.00001) {
+            status[k] = -4;
+            return false;
+        }
+        if (kflag[k] > -3) {
+            rhup[k] = 0;
+            int orderflag = orderSwitch(k, dsm);
+            if (orderflag == 0)
+                rh[k] = Math.min(rh[k], 0.2);
+            if (orderflag == 2)
+                resetCoeff(k);
+            rh[k] = Math.max(rh[k], hmin / Math.abs(h[k]));
+            scaleH(k, rh[k]);
+            return false;
+        }
+        if (kflag[k] == -mxncf) {
+            status[k] = -4;
+            return false;
+        }
+        rh[k] = Math.max(hmin / Math.abs(h[k]), 0.1);
+        h[k] *= rh[k];
+        ipup[k] = miter[k];
+        ialth[k] = 5;
+        if (nq[k] != 1) {
+            clearColumns(k, 2, nq[k]);
+            nq[k] = 1;
+            l[k] = 2;
+            resetCoeff(k);
+        }
+        refill[k] = true;
+        return true;
+    }
+
+    /**
+     * LSODA.methodSwitch for lane k
+     */
+    private void methodSwitch(int k, double dsm) {
+        double rh1, rh2, rh1it, exsm, exm1, dm1, dm2, alpha, pdh;
+        int nqm1, nqm2;
+        int q = nq[k];
+        if (meth[k] == 1) {
+            if (q > 5)
+                return;
+            if (dsm <= (100 * pnorm[k] * ETA) || pdest[k] == 0.0) {
+                if (irflag[k] == 0)
+                    return;
+                rh2 = 2;
+                nqm2 = Math.min(q, mxords);
+            } else {
+                exsm = 1.0 / l[k];
+                rh1 = 1.0 / (1.2 * Math.pow(dsm, exsm) + 0.0000012);
+                rh1it = 2 * rh1;
+                pdh = pdlast[k] * Math.abs(h[k]);
+                if ((pdh * rh1) > 0.00001)
+                    rh1it = sm1[q] / pdh;
+                rh1 = Math.min(rh1, rh1it);
+                if (q > mxords) {
+                    nqm2 = mxords;
+                    dm2 = laneNorm(yh, (mxords + 1) * n * lanes, k) / cm2[mxords];
+                    rh2 = 1.0 / (1.2 * Math.pow(dm2, 1.0 / (mxords + 1)) + 0.0000012);
+                } else {
+                    dm2 = dsm * (cm1[q] / cm2[q]);
+                    rh2 = 1.0 / (1.2 * Math.pow(dm2, exsm) + 0.0000012);
+                    nqm2 = q;
+                }
+                if (rh2 < ratio * rh1)
+                    return;
+            }
+            rh[k] = rh2;
+            icount[k] = 20;
+            meth[k] = 2;
+            miter[k] = 2;
+            pdlast[k] = 0;
+            clearColumns(k, nqm2 + 1, q);
+            nq[k] = nqm2;
+            l[k] = nqm2 + 1;
+            return;
+        }
+
+        exsm = 1.0 / l[k];
+        if (mxordn < q) {
+            nqm1 = mxordn;
+            exm1 = 1.0 / (mxordn + 1);
+            dm1 = laneNorm(yh, (mxordn + 1) * n * lanes, k) / cm1[mxordn];
+            rh1 = 1.0 / (1.2 * Math.pow(dm1, exm1) + 0.0000012);
+        } else {
+            dm1 = dsm * (cm2[q] / cm1[q]);
+            rh1 = 1.0 / (1.2 * Math.pow(dm1, exsm) + 0.0000012);
+            nqm1 = q;
+            exm1 = exsm;
+        }
+        rh1it = 2 * rh1;
+        pdh = pdnorm[k] * Math.abs(h[k]);
+        if ((pdh * rh1) > 0.0001)
+            rh1it = sm1[nqm1] / pdh;
+        rh1 = Math.min(rh1, rh1it);
+        rh2 = 1.0 / (1.2 * Math.pow(dsm, exsm) + 0.0000012);
+        if ((rh1 * ratio) < (5 * rh2))
+            return;
+        alpha = Math.max(0.001, rh1);
+        dm1 *= Math.pow(alpha, exm1);
+        if (dm1 <= 1000 * ETA * pnorm[k])
+            return;
+        rh[k] = rh1;
+        icount[k] = 20;
+        meth[k] = 1;
+        miter[k] = 0;
+        pdlast[k] = 0;
+        clearColumns(k, nqm1 + 1, q);
+        nq[k] = nqm1;
+        l[k] = nqm1 + 1;
+        identity(k);
+    }
+
+    /**
+     * LSODA.orderSwitch for lane k
+     * @return 0 for no change, 1 for a change of h only, 2 for a change of h and nq
+     */
+    private int orderSwitch(int k, double dsm) {
+        int newq, q = nq[k];
+        double pdh = 0;
+        double rhsm = 1.0 / (1.2 * Math.pow(dsm, 1.0 / l[k]) + 0.0000012);
+        double rhdn = 0;
+        if (q != 1) {
+            double ddn = laneNorm(yh, q * n * lanes, k) / coefficients[k].tesco[q][1];
+            rhdn = 1.0 / (1.3 * Math.pow(ddn, 1.0 / q) + 0.0000013);
+        }
+        if (meth[k] == 1) {
+            pdh = Math.max(Math.abs(h[k]) * pdlast[k], 0.000001);
+            if (l[k] < lmax[k])
+                rhup[k] = Math.min(rhup[k], sm1[l[k]] / pdh);
+            rhsm = Math.min(rhsm, sm1[q] / pdh);
+            if (q > 1)
+                rhdn = Math.min(rhdn, sm1[q - 1] / pdh);
+            pdest[k] = 0;
+        }
+        if (rhsm >= rhup[k]) {
+            if (rhsm >= rhdn) {
+                newq = q;
+                rh[k] = rhsm;
+            } else {
+                newq = q - 1;
+                rh[k] = rhdn;
+                if (kflag[k] < 0 && rh[k] > 1)
+                    rh[k] = 1;
+            }
+        } else if (rhup[k] <= rhdn) {
+            newq = q - 1;
+            rh[k] = rhdn;
+            if (kflag[k] < 0 && rh[k] > 1)
+                rh[k] = 1;
+        } else {
+            rh[k] = rhup[k];
+            if (rh[k] < 1.1) {
+                ialth[k] = 3;
+                return 0;
+            }
+            // raise the order, the new column from the correction
+            double r = coefficients[k].elco[q][l[k]] / l[k];
+            nq[k] = l[k];
+            l[k] = nq[k] + 1;
+            int lo = nq[k] * n * lanes;
+            for (int c = k; c < n * lanes; c += lanes)
+                yh[lo + c] = acor[c] * r;
+            return 2;
+        }
+        if (meth[k] == 1) {
+            if ((rh[k] * pdh * 1.00001) < sm1[newq] && kflag[k] == 0 && rh[k] < 1.1) {
+                ialth[k] = 3;
+                return 0;
+            }
+        } else if (kflag[k] == 0 && rh[k] < 1.1) {
+            ialth[k] = 3;
+            return 0;
+        }
+        if (kflag[k] <= -2)
+            rh[k] = Math.min(rh[k], 0.2);
+        if (newq == q)
+            return 1;
+        clearColumns(k, newq + 1, q);
+        nq[k] = newq;
+        l[k] = newq + 1;
+        return 2;
+    }
+
+    /**
+     * LSODA.scaleH for lane k
+     */
+    private void scaleH(int k, double r) {
+        r = Math.min(r, rmax[k]);
+        r = r / Math.max(1.0, Math.abs(h[k]) * hmxi * r);
+        if (meth[k] == 1) {
+            irflag[k] = 0;
+            double pdh = Math.max(Math.abs(h[k]) * pdlast[k], 0.000001);
+            if ((r * pdh * 1.0001) >= sm1[nq[k]]) {
+                r = sm1[nq[k]] / pdh;
+                irflag[k] = 1;
+            }
+        }
+        int size = n * lanes;
+        double rj = 1;
+        for (int j = 1; j < l[k]; j++) {
+            rj *= r;
+            for (int c = j * size + k; c < (j + 1) * size; c += lanes)
+                yh[c] *= rj;
+        }
+        h[k] *= r;
+        rc[k] *= r;
+        ialth[k] = l[k];
+    }
+
+    private void resetCoeff(int k) {
+        double[] el = coefficients[k].elco[nq[k]];
+        rc[k] = rc[k] * el[1] / el0[k];
+        el0[k] = el[1];
+        el1[k] = el[1];
+        conit[k] = 0.5 / (nq[k] + 2);
+        for (int j = 0; j < lenyh; j++)
+            elv[j * lanes + k] = j < l[k] ? el[j + 1] : 0;
+    }
+
+    /**
+     * restore y_{n-1} of lane k after a failed step
+     */
+    private void retract(int k) {
+        int size = n * lanes;
+        for (int j = nq[k]; j >= 1; j--)
+            for (int i = j; i <= nq[k]; i++) {
+                int io = (i - 1) * size, i1 = io + size;
+                for (int c = k; c < size; c += lanes)
+                    yh[io + c] -= yh[i1 + c];
+            }
+    }
+
+    /**
+     * zero columns from, ..., to of the history of lane k, left unused by a lower order
+     */
+    private void clearColumns(int k, int from, int to) {
+        int size = n * lanes;
+        for (int j = from; j <= to; j++)
+            for (int c = j * size + k; c < (j + 1) * size; c += lanes)
+                yh[c] = 0;
+    }
+
+    /**
+     * inverted error weights of all the lanes from column 0 of the history
+     */
+    private void errorWeights() {
+        int size = n * lanes;
+        for (int c = 0; c < size; c++)
+            ewt[c] = 1 / (rtol * Math.abs(yh[c]) + atol);
+    }
+
+    private boolean weightsValid(int k) {
+        for (int c = k; c < n * lanes; c += lanes)
+            if (!(ewt[c] < Double.POSITIVE_INFINITY))
+                return false;
+        return true;
+    }
+
+    /**
+     * weighted max-norm of every lane of the vector at off
+     */
+    private void norms(double[] v, int off, double[] out) {
+        Arrays.fill(out, 0);
+        for (int c = 0; c < n * lanes; c += lanes)
+            for (int k = 0; k < lanes; k++)
+                out[k] = Math.max(out[k], Math.abs(v[off + c + k]) * ewt[c + k]);
+    }
+
+    /**
+     * weighted max-norm of lane k of the vector at off
+     */
+    private double laneNorm(double[] v, int off, int k) {
+        double vm = 0;
+        for (int c = k; c < n * lanes; c += lanes)
+            vm = Math.max(vm, Math.abs(v[off + c]) * ewt[c]);
+        return vm;
+    }
+
+    public int getLanes() {
+        return lanes;
+    }
+
+    public int getStepsTaken(int lane) {
+        return nst[lane];
+    }
+
+    public int getEvaluations(int lane) {
+        return nfe[lane];
+    }
+
+    public int getJacobianEvaluations(int lane) {
+        return nje[lane];
+    }
+
+    /**
+     * @return the method used on the last step of the lane, 1 for Adams and 2 for BDF
+     */
+    public int getMethodUsed(int lane) {
+        return mused[lane];
+    }
+
+    /**
+     * @return 2 if the lane reached tout, otherwise the istate LSODA would
+     * have stopped with: -1 too many steps, -2 too much accuracy requested,
+     * -3 illegal input, -4 repeated error test failures, -5 repeated
+     * corrector convergence failures, -6 a zero error weight
+     */
+    public int getStatus(int lane) {
+        return status[lane];
+    }
+}
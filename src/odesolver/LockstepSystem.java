@@ -0,0 +1,25 @@
+package odesolver;
+
+/**
+ * A system of ordinary differential equations evaluated for many members of
+ * an ensemble at once, as LockstepEnsemble needs. The states are laid out
+ * structure of arrays: component i of lane k is at index i*lanes + k, so a
+ * loop over the lanes of one component runs through contiguous memory and
+ * can be vectorised.
+ */
+public interface LockstepSystem {
+
+    /**
+     * @return number of components of the state of one lane
+     */
+    int getDimension();
+
+    /**
+     * compute the derivatives of every lane
+     * @param t time of each lane
+     * @param y states of the lanes, component i of lane k at y[i*lanes + k]; not to be modified
+     * @param ydot receives the derivatives, laid out as y
+     * @param lanes number of lanes
+     */
+    void computeDerivatives(double[] t, double[] y, double[] ydot, int lanes);
+}
@@ -0,0 +1,148 @@
+package odesolver;
+
+/**
+ * The method and test coefficients of the Adams and BDF methods, computed
+ * once and shared read-only by every LSODA, so that starting an integration
+ * or switching methods costs no computation and no allocation.
+ */
+final class MethodCoefficients {
+    static final MethodCoefficients ADAMS = new MethodCoefficients(1), BDF = new MethodCoefficients(2);
+
+    // method coefficients, row q for order q
+    final double[][] elco;
+    // coefficients for tests
+    final double[][] tesco;
+    // C_q = tesco[q][2] * elco[q][q+1]
+    final double[] cm;
+
+    private MethodCoefficients(int meth) {
+        double[][] elco = new double[13][14], tesco = new double[13][4];
+        cfode(meth, elco, tesco);
+        int maxord = meth == 1 ? 12 : 5;
+        double[] cm = new double[maxord + 1];
+        for (int i = 1; i <= maxord; i++)
+            cm[i] = tesco[i][2] * elco[i][i + 1];
+        this.elco = elco;
+        this.tesco = tesco;
+        this.cm = cm;
+    }
+
+    /**
+     * Compute the method and test coefficient.
+     * The coefficients are given by a generating polynomial, i.e.,
+     * <p>
+     * l(x) = el[1] + el[2]*x + ... + el[nq+1]*x^nq.
+     * <p>
+     * For the implicit Adams method, l(x) is given by
+     * <p>
+     * dl/dx = (x+1)*(x+2)*...*(x+nq-1)/factorial(nq-1),   l(-1) = 0.
+     * <p>
+     * For the bdf methods, l(x) is given by
+     * <p>
+     * l(x) = (x+1)*(x+2)*...*(x+nq)/k,
+     * <p>
+     * where   k = factorial(nq)*(1+1/2+...+1/nq).
+     * The tesco array contains test constants used for the
+     * local error test and the selection of step size and/or order.
+     * At order nq, tesco[nq][k] is used for the selection of step
+     * size at order nq-1 if k = 1, at order nq if k = 2, and at order
+     * nq+1 if k = 3.
+     * (This method is from the paper: LINEAR MULTISTEP METHODS FOR
+     * ORDINARY DIFFERENTIAL EQUATIONS: METHOD FORMULATIONS, STABILITY,
+     * AND THE METHODS OF NORDSIECK AND GEAR.)
+     *
+     * @param meth 1 for nonstiff method and 2 for stiff method
+     * @param elco receives the method coefficients
+     * @param tesco receives the test coefficients
+     */
+    private static void cfode(int meth, double[][] elco, double[][] tesco) {
+        double[] pc = new double[13];  // coefficients for the polynomials
+        double rqfac, rq1fac, pint, xpin, ragq;
+        int qm1, qp1;
+        // non-stiff method: AM
+        if (meth == 1) {
+            // coefficients for first order method
+            elco[1][1] = 1.0;
+            elco[1][2] = 1.0;
+            tesco[1][1] = 0.0;
+            tesco[1][2] = 2.0;
+            tesco[2][1] = 1.0;
+            tesco[12][3] = 0.0;
+            pc[1] = 1.0;
+            rqfac = 1.0;
+
+            for (int q = 2; q <= 12; q++) {
+/*
+    The pc array will contain the coefficients of the polynomial
+        p(x) = (x+1)*(x+2)*...*(x+nq-1).
+    Initially, p(x) = 1.
+ */
+                rq1fac = rqfac; // 1/(q-1)!
+                rqfac = rqfac / q; // 1/q!
+                qm1 = q - 1;
+                qp1 = q + 1;
+
+                // form coefficients of p(x)*(x+q-1)
+                pc[q] = 0;
+                for (int i = q; i >= 2; i--)
+                    pc[i] = pc[i - 1] + qm1 * pc[i];
+                pc[1] = qm1 * pc[1];
+
+                // compute the integral, -1 to 0, of p(x) and x*p(x)
+                // since p(x)=dl/dx
+
+                pint = pc[1];  // p(x)
+                xpin = pc[1] / 2; // x*p(x)
+                double tsign = 1.0;
+                for (int i = 2; i <= q; i++) {
+                    tsign = -tsign;
+                    pint += tsign * pc[i] / (double) i;
+                    xpin += tsign * pc[i] / (double) (i + 1);
+                }
+
+                // store coefficients for order q in elco and tesco
+                elco[q][1] = pint * rq1fac;
+                elco[q][2] = 1.0;
+                for (int i = 2; i <= q; i++)
+                    elco[q][i + 1] = rq1fac * pc[i] / i;
+                ragq = 1 / (rqfac * xpin);
+                tesco[q][2] = ragq;
+                if (q < 12)
+                    tesco[qp1][1] = ragq * rqfac / qp1;
+                tesco[qm1][3] = ragq;
+            }
+            return;
+        }
+
+/*
+    meth = 2. Coefficients for stiff method
+ */
+        pc[1] = 1;
+        rq1fac = 1;
+/*
+   The pc array will contain the coefficients of the polynomial
+
+      p(x) = (x+1)*(x+2)*...*(x+nq).
+
+   Initially, p(x) = 1.
+*/
+        for (int q = 1; q <= 5; q++) {
+            qp1 = q + 1;
+
+            // form coefficients of p(x)*(x+nq)
+            pc[qp1] = 0;
+            for (int i = q + 1; i >= 2; i--)
+                pc[i] = pc[i - 1] + q * pc[i];
+            pc[1] *= q;
+
+            // Store coefficients in elco and tesco
+            for (int i = 1; i <= qp1; i++)
+                elco[q][i] = pc[i] / pc[2];
+            elco[q][2] = 1;
+            tesco[q][1] = rq1fac;
+            tesco[q][2] = qp1 / elco[q][1];
+            tesco[q][3] = (q + 2) / elco[q][1];
+            rq1fac /= q;
+        }
+    }
+}
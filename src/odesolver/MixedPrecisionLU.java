@@ -0,0 +1,147 @@
+package odesolver;
+
+/**
+ * LU factorization of a full iteration matrix in single precision, with
+ * double precision iterative refinement of every solve. The chord Newton
+ * iteration only needs an approximate P = I - h*el0*J, and factoring in
+ * float halves the memory traffic of the O(n^3) part. Each refinement step
+ * computes the residual b - P*x in double against P, which the caller
+ * leaves unfactored in the array, and corrects x with the float factors.
+ * <p>
+ * The layout is that of DenseLU (jt = 1 or 2): row i of P from a[i*n].
+ * Pivoting is partial, as in LINPACK dgefa on P^T.
+ */
+public final class MixedPrecisionLU implements LinearSolver {
+    private final int refinements;
+    private int n;
+    // factors of P^T, column-major, and the 0-based pivots
+    private float[] lu;
+    private int[] ipvt;
+    // right hand side, correction and residual of the refinement
+    private double[] rhs, z, r;
+
+    /**
+     * @param refinements number of refinement steps after the first solve, 1 or 2
+     */
+    public MixedPrecisionLU(int refinements) {
+        if (refinements < 1 || refinements > 2)
+            throw new IllegalArgumentException("mixed precision LU: refinements = " + refinements + " not 1 or 2");
+        this.refinements = refinements;
+    }
+
+    @Override
+    public int setup(int n) {
+        this.n = n;
+        lu = new float[n * n];
+        ipvt = new int[n];
+        rhs = new double[n];
+        z = new double[n];
+        r = new double[n];
+        return n * n;
+    }
+
+    @Override
+    public double norm(double[] a, double[] w) {
+        return SupportingFunctions.fnorm(n, a, n, w, 0);
+    }
+
+    /**
+     * factor a float copy of P; a is left as it is
+     */
+    @Override
+    public int factor(double[] a) {
+        for (int i = 0; i < n * n; i++) {
+            float v = (float) a[i];
+            if (Float.isInfinite(v))
+                return i / n + 1;  // P is out of the range of float
+            lu[i] = v;
+        }
+
+        int info = 0;
+        for (int k = 0; k < n - 1; k++) {
+            int kcol = k * n;
+            int l = k;
+            float max = Math.abs(lu[kcol + k]);
+            for (int i = k + 1; i < n; i++)
+                if (Math.abs(lu[kcol + i]) > max) {
+                    max = Math.abs(lu[kcol + i]);
+                    l = i;
+                }
+            ipvt[k] = l;
+            if (lu[kcol + l] == 0.0f) {
+                info = k + 1;
+                continue;
+            }
+            float t;
+            if (l != k) {
+                t = lu[kcol + l];
+                lu[kcol + l] = lu[kcol + k];
+                lu[kcol + k] = t;
+            }
+            t = -1.0f / lu[kcol + k];
+            for (int i = k + 1; i < n; i++)
+                lu[kcol + i] *= t;
+            for (int j = k + 1; j < n; j++) {
+                int jcol = j * n;
+                t = lu[jcol + l];
+                if (l != k) {
+                    lu[jcol + l] = lu[jcol + k];
+                    lu[jcol + k] = t;
+                }
+                if (t != 0.0f)
+                    for (int i = k + 1; i < n; i++)
+                        lu[jcol + i] += t * lu[kcol + i];
+            }
+        }
+        ipvt[n - 1] = n - 1;
+        if (lu[(n - 1) * n + n - 1] == 0.0f)
+            info = n;
+        return info;
+    }
+
+    @Override
+    public void solve(double[] a, double[] b, int boff) {
+        System.arraycopy(b, boff, rhs, 0, n);
+        System.arraycopy(b, boff, r, 0, n);
+        for (int i = 0; i < n; i++)
+            b[boff + i] = 0.0;
+        for (int step = 0; step <= refinements; step++) {
+            System.arraycopy(r, 0, z, 0, n);
+            solveFactors(z);
+            for (int i = 0; i < n; i++)
+                b[boff + i] += z[i];
+            if (step == refinements)
+                break;
+            // r = b - P*x, row i of P being contiguous
+            for (int i = 0; i < n; i++)
+                r[i] = rhs[i] - Utility.Dot(n, a, i * n, 1, b, boff, 1);
+        }
+    }
+
+    /**
+     * solves P x = x with the float factors of P^T, accumulating in double
+     * (LINPACK dgesl, job = 1)
+     */
+    private void solveFactors(double[] x) {
+        for (int k = 0; k < n; k++) {
+            int kcol = k * n;
+            double t = 0;
+            for (int i = 0; i < k; i++)
+                t += lu[kcol + i] * x[i];
+            x[k] = (x[k] - t) / lu[kcol + k];
+        }
+        for (int k = n - 2; k >= 0; k--) {
+            int kcol = k * n;
+            double t = 0;
+            for (int i = k + 1; i < n; i++)
+                t += lu[kcol + i] * x[i];
+            x[k] += t;
+            int l = ipvt[k];
+            if (l != k) {
+                t = x[l];
+                x[l] = x[k];
+                x[k] = t;
+            }
+        }
+    }
+}
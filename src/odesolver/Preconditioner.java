@@ -0,0 +1,34 @@
+package odesolver;
+
+/**
+ * Preconditioner for the matrix-free Newton iteration of the stiff method
+ * (jt == 9). GMRES solves P x = g with P = I - hl0*J without ever forming
+ * J; a preconditioner approximating P, or a factor of it, cuts the number
+ * of Krylov iterations. It may be applied on the left, on the right or on
+ * both sides, as in LSODKR.
+ * <p>
+ * Vectors are 0-based arrays of length n and must not be kept between calls.
+ */
+public interface Preconditioner {
+
+    /**
+     * prepare the preconditioner for P = I - hl0*J(t, y). Called whenever
+     * the stiff method would re-evaluate the Jacobian.
+     * @param t current value of the independent time variable
+     * @param y current value of the state vector; not to be modified
+     * @param f derivative at (t, y); not to be modified
+     * @param hl0 step size times the leading method coefficient
+     * @return 0 on success; anything else makes LSODA retry with a smaller step
+     */
+    int setup(double t, double[] y, double[] f, double hl0);
+
+    /**
+     * overwrite z with an approximate solution of P x = z
+     * @param t current value of the independent time variable
+     * @param y current value of the state vector; not to be modified
+     * @param f derivative at (t, y); not to be modified
+     * @param hl0 step size times the leading method coefficient
+     * @param z right hand side, replaced by the solution
+     */
+    void solve(double t, double[] y, double[] f, double hl0, double[] z);
+}
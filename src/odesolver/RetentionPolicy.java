@@ -0,0 +1,67 @@
+package odesolver;
+
+/**
+ * Which recorded points a Trajectory keeps. With lastN or none the memory
+ * taken by the trajectory is bounded however many steps are taken; everyKth
+ * and tolerance thin the output out. Except with lastN and none, the latest
+ * point is always kept, so the output at tout is never lost.
+ */
+public final class RetentionPolicy {
+    enum Kind {ALL, LAST, EVERY_KTH, TOLERANCE, NONE}
+
+    final Kind kind;
+    final int count;
+    final double atol, rtol;
+
+    private RetentionPolicy(Kind kind, int count, double atol, double rtol) {
+        this.kind = kind;
+        this.count = count;
+        this.atol = atol;
+        this.rtol = rtol;
+    }
+
+    /**
+     * keep every point; the default
+     */
+    public static RetentionPolicy all() {
+        return new RetentionPolicy(Kind.ALL, 0, 0, 0);
+    }
+
+    /**
+     * keep the last n points in a ring buffer
+     */
+    public static RetentionPolicy lastN(int n) {
+        if (n < 1)
+            throw new IllegalArgumentException("retention policy: n = " + n + " less than 1");
+        return new RetentionPolicy(Kind.LAST, n, 0, 0);
+    }
+
+    /**
+     * keep the first point, every k-th after it and the latest one
+     */
+    public static RetentionPolicy everyKth(int k) {
+        if (k < 1)
+            throw new IllegalArgumentException("retention policy: k = " + k + " less than 1");
+        return new RetentionPolicy(Kind.EVERY_KTH, k, 0, 0);
+    }
+
+    /**
+     * drop a point when the straight line from the last point kept to the
+     * point after it reproduces each component y_i of it, and of every point
+     * dropped since the last one kept, within atol + rtol*|y_i|. Linear
+     * interpolation between the points kept is then within tolerance at
+     * every point recorded.
+     */
+    public static RetentionPolicy tolerance(double atol, double rtol) {
+        if (atol < 0 || rtol < 0 || atol + rtol == 0)
+            throw new IllegalArgumentException("retention policy: illegal tolerances " + atol + ", " + rtol);
+        return new RetentionPolicy(Kind.TOLERANCE, 0, atol, rtol);
+    }
+
+    /**
+     * record nothing
+     */
+    public static RetentionPolicy none() {
+        return new RetentionPolicy(Kind.NONE, 0, 0, 0);
+    }
+}
@@ -0,0 +1,85 @@
+package odesolver;
+
+/**
+ * Scalar kernels, unrolled as in the reference BLAS
+ */
+class ScalarKernels extends Kernels {
+
+    @Override
+    double dot(int n, double[] dx, int xstart, double[] dy, int ystart) {
+        double dotProd = 0;
+        int d = ystart - xstart;
+        int m = n % 5;
+        // Clean-up loop so remaining vector length is a multiple of 5
+        if (m != 0){
+            for (int i=xstart; i<xstart+m;i++)
+                dotProd += dx[i] * dy[i+d];
+            if (n < 5)
+                return dotProd;
+        }
+        for (int i=xstart+m; i<xstart+n;i=i+5)
+            dotProd += dx[i] * dy[i+d] + dx[i+1] * dy[i+d+1] +
+                    dx[i+2] * dy[i+d+2] + dx[i+3] * dy[i+d+3] +
+                    dx[i+4] * dy[i+d+4];
+        return dotProd;
+    }
+
+    @Override
+    void scal(int n, double da, double[] dx, int start) {
+        int m = n % 5;
+        if ( m != 0 ) {
+            for (int i = start ; i <= m+start - 1 ; i++ )
+                dx[i] = da * dx[i];
+            if ( n < 5 )
+                return;
+        }
+        for (int i = m + start; i <= n + start - 1; i = i + 5 ) {
+            dx[i] = da * dx[i];
+            dx[i+1] = da * dx[i+1];
+            dx[i+2] = da * dx[i+2];
+            dx[i+3] = da * dx[i+3];
+            dx[i+4] = da * dx[i+4];
+        }
+    }
+
+    @Override
+    void axpy(int n, double da, double[] dx, int xstart, double[] dy, int ystart) {
+        // Clean-up loop
+        int m = n % 4;
+        if (m != 0){
+            for (int i=1; i<=m; i++)
+                dy[i+ystart-1] += da * dx[i+xstart-1];
+            if (n < 4)
+                return;
+        }
+        for (int i=m+1; i <= n; i=i+4){
+            dy[i+ystart-1] = dy[i+ystart-1] + da * dx[i+xstart-1];
+            dy[i+ystart] = dy[i+ystart] + da * dx[i+xstart];
+            dy[i+ystart+1] = dy[i+ystart+1] + da * dx[i+xstart+1];
+            dy[i+ystart+2] = dy[i+ystart+2] + da * dx[i+xstart+2];
+        }
+    }
+
+    @Override
+    void axpy4(int n, double a0, double a1, double a2, double a3,
+               double[] x, int o0, int o1, int o2, int o3, double[] y, int yo) {
+        for (int i=0; i<n; i++)
+            y[yo+i] = y[yo+i] + a0*x[o0+i] + a1*x[o1+i] + a2*x[o2+i] + a3*x[o3+i];
+    }
+
+    @Override
+    double maxNorm(int n, double[] v, int voff, double[] w, int woff) {
+        double vm = 0.0;
+        for (int i=0; i<n; i++)
+            vm = Math.max(vm, Math.abs(v[i+voff])*w[i+woff]);
+        return vm;
+    }
+
+    @Override
+    double rowNorm(int n, double[] a, int ao, double[] w, int woff) {
+        double sum = 0;
+        for(int j=0; j<n; j++)
+            sum += Math.abs(a[ao+j])/w[j+woff];
+        return sum;
+    }
+}
@@ -0,0 +1,290 @@
+package odesolver;
+
+import java.util.Arrays;
+
+/**
+ * LU factorization of a sparse matrix with a fixed nonzero pattern, in the
+ * manner of the Yale sparse matrix package used by LSODES.
+ * <p>
+ * The work is split into three phases:
+ * <ul>
+ *     <li>ordering: a minimum degree ordering of the symmetrised pattern,
+ *     chosen once to limit the fill-in;</li>
+ *     <li>symbolic factorization: the pattern of L+U of the reordered matrix,
+ *     also computed once;</li>
+ *     <li>numeric factorization and solves, repeated for every new set of values.</li>
+ * </ul>
+ * Pivots are taken on the diagonal of the reordered matrix, without
+ * interchanges. This suits the iteration matrix P = I - h*el0*J, whose
+ * diagonal dominates for small h; a zero pivot is reported and lsoda then
+ * retries with a smaller step.
+ * <p>
+ * This is the default LinearSolver for jt = 7; the factors are kept here
+ * rather than in the array of matrix values.
+ */
+public final class SparseLU implements LinearSolver {
+    private final int n;
+    private final SparsityPattern pattern;
+    // perm[k] is the original index of the k-th pivot, inv[perm[k]] = k
+    private final int[] perm, inv;
+    // pattern of L+U of the reordered matrix by rows, columns increasing;
+    // the diagonal of row i is at luDiag[i]
+    private final int[] luStart, luCols, luDiag;
+    private final double[] lu;
+    // position in lu of each entry of the matrix
+    private final int[] map;
+    private final double[] work, x;
+
+    /**
+     * order the matrix and compute the pattern of its factors
+     * @param pattern nonzero pattern of the matrices to be factored
+     */
+    public SparseLU(SparsityPattern pattern) {
+        this.pattern = pattern;
+        n = pattern.n;
+        perm = minimumDegree(pattern);
+        inv = new int[n];
+        for (int k = 0; k < n; k++)
+            inv[perm[k]] = k;
+
+        // symbolic factorization; row i of L+U is kept as a sorted linked list
+        // through next, where n serves as both the head and the end marker
+        luStart = new int[n + 1];
+        luDiag = new int[n];
+        int[] cols = new int[pattern.getNonZeros() + n];
+        int nnz = 0;
+        int[] next = new int[n + 1];
+        int[] mark = new int[n];
+        Arrays.fill(mark, -1);
+        int[] row = new int[n];
+        for (int i = 0; i < n; i++) {
+            int r = perm[i], len = 0;
+            row[len++] = i;
+            mark[i] = i;
+            for (int p = pattern.rowStart[r]; p < pattern.rowStart[r + 1]; p++) {
+                int j = inv[pattern.columns[p]];
+                if (mark[j] != i) {
+                    mark[j] = i;
+                    row[len++] = j;
+                }
+            }
+            Arrays.sort(row, 0, len);
+            int head = n;
+            for (int k = 0; k < len; k++) {
+                next[head] = row[k];
+                head = row[k];
+            }
+            next[head] = n;
+
+            // merge in the upper part of every row k < i that row i eliminates
+            for (int k = next[n]; k < i; k = next[k]) {
+                int prev = k;
+                for (int q = luDiag[k] + 1; q < luStart[k + 1]; q++) {
+                    int j = cols[q];
+                    if (mark[j] == i)
+                        continue;
+                    mark[j] = i;
+                    while (next[prev] < j)
+                        prev = next[prev];
+                    next[j] = next[prev];
+                    next[prev] = j;
+                    prev = j;
+                }
+            }
+
+            for (int j = next[n]; j != n; j = next[j]) {
+                if (nnz == cols.length)
+                    cols = Arrays.copyOf(cols, 2 * cols.length);
+                if (j == i)
+                    luDiag[i] = nnz;
+                cols[nnz++] = j;
+            }
+            luStart[i + 1] = nnz;
+        }
+        luCols = Arrays.copyOf(cols, nnz);
+        lu = new double[nnz];
+
+        map = new int[pattern.getNonZeros()];
+        for (int r = 0; r < n; r++) {
+            int i = inv[r];
+            for (int p = pattern.rowStart[r]; p < pattern.rowStart[r + 1]; p++)
+                map[p] = Arrays.binarySearch(luCols, luStart[i], luStart[i + 1], inv[pattern.columns[p]]);
+        }
+        work = new double[n];
+        x = new double[n];
+    }
+
+    /**
+     * minimum degree ordering of the graph of A + A^T. The node of smallest
+     * degree is eliminated first and its neighbours are joined into a clique;
+     * ties go to the lowest index.
+     * @param pattern nonzero pattern of A
+     * @return the elimination order
+     */
+    static int[] minimumDegree(SparsityPattern pattern) {
+        int n = pattern.n;
+        int[][] adj = new int[n][];
+        int[] deg = new int[n];
+        int[] mark = new int[n];
+        int stamp = 0;
+
+        // symmetric adjacency without the diagonal
+        int[] count = new int[n];
+        for (int i = 0; i < n; i++)
+            for (int p = pattern.rowStart[i]; p < pattern.rowStart[i + 1]; p++) {
+                int j = pattern.columns[p];
+                if (j != i) {
+                    count[i]++;
+                    count[j]++;
+                }
+            }
+        for (int i = 0; i < n; i++)
+            adj[i] = new int[count[i]];
+        for (int i = 0; i < n; i++)
+            for (int p = pattern.rowStart[i]; p < pattern.rowStart[i + 1]; p++) {
+                int j = pattern.columns[p];
+                if (j != i) {
+                    adj[i][deg[i]++] = j;
+                    adj[j][deg[j]++] = i;
+                }
+            }
+        for (int i = 0; i < n; i++) {
+            stamp++;
+            int d = 0;
+            for (int k = 0; k < deg[i]; k++) {
+                int j = adj[i][k];
+                if (mark[j] != stamp) {
+                    mark[j] = stamp;
+                    adj[i][d++] = j;
+                }
+            }
+            deg[i] = d;
+        }
+
+        boolean[] done = new boolean[n];
+        int[] order = new int[n];
+        int[] nb = new int[n];
+        for (int k = 0; k < n; k++) {
+            int p = -1;
+            for (int i = 0; i < n; i++)
+                if (!done[i] && (p < 0 || deg[i] < deg[p]))
+                    p = i;
+            order[k] = p;
+            done[p] = true;
+
+            int m = 0;
+            for (int q = 0; q < deg[p]; q++)
+                if (!done[adj[p][q]])
+                    nb[m++] = adj[p][q];
+            for (int a = 0; a < m; a++) {
+                int u = nb[a];
+                stamp++;
+                int d = 0;
+                for (int q = 0; q < deg[u]; q++) {
+                    int v = adj[u][q];
+                    if (!done[v]) {
+                        mark[v] = stamp;
+                        adj[u][d++] = v;
+                    }
+                }
+                for (int b = 0; b < m; b++) {
+                    int v = nb[b];
+                    if (v != u && mark[v] != stamp) {
+                        if (d == adj[u].length)
+                            adj[u] = Arrays.copyOf(adj[u], Math.max(4, 2 * d));
+                        adj[u][d++] = v;
+                    }
+                }
+                deg[u] = d;
+            }
+        }
+        return order;
+    }
+
+    @Override
+    public int setup(int n) {
+        if (n != this.n)
+            throw new IllegalArgumentException("sparse LU: dimension " + n + " differs from the pattern's " + this.n);
+        return pattern.getNonZeros();
+    }
+
+    @Override
+    public double norm(double[] a, double[] w) {
+        return SupportingFunctions.fnorm(n, pattern, a, w, 0);
+    }
+
+    /**
+     * numeric factorization
+     * @param a values of the matrix, in the CSR order of its pattern
+     * @return 0, or k if the k-th pivot (1-based) is zero
+     */
+    @Override
+    public int factor(double[] a) {
+        Arrays.fill(lu, 0.0);
+        for (int p = 0; p < map.length; p++)
+            lu[map[p]] = a[p];
+
+        for (int i = 0; i < n; i++) {
+            int rs = luStart[i], re = luStart[i + 1];
+            for (int q = rs; q < re; q++)
+                work[luCols[q]] = lu[q];
+            for (int q = rs; q < luDiag[i]; q++) {
+                int k = luCols[q];
+                double mult = work[k] / lu[luDiag[k]];
+                work[k] = mult;
+                if (mult != 0.0)
+                    for (int s = luDiag[k] + 1; s < luStart[k + 1]; s++)
+                        work[luCols[s]] -= mult * lu[s];
+            }
+            for (int q = rs; q < re; q++) {
+                lu[q] = work[luCols[q]];
+                work[luCols[q]] = 0.0;
+            }
+            if (lu[luDiag[i]] == 0.0)
+                return i + 1;
+        }
+        return 0;
+    }
+
+    /**
+     * solves a * x = b with the factors of the last call to factor
+     * @param b the right hand side vector
+     * @param boff index of the first element of b
+     * @return b the solution vector x.
+     */
+    public double[] solve(double[] b, int boff) {
+        for (int i = 0; i < n; i++)
+            x[i] = b[boff + perm[i]];
+        for (int i = 0; i < n; i++) {
+            double s = x[i];
+            for (int q = luStart[i]; q < luDiag[i]; q++)
+                s -= lu[q] * x[luCols[q]];
+            x[i] = s;
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            double s = x[i];
+            for (int q = luDiag[i] + 1; q < luStart[i + 1]; q++)
+                s -= lu[q] * x[luCols[q]];
+            x[i] = s / lu[luDiag[i]];
+        }
+        for (int i = 0; i < n; i++)
+            b[boff + perm[i]] = x[i];
+        return b;
+    }
+
+    @Override
+    public void solve(double[] a, double[] b, int boff) {
+        solve(b, boff);
+    }
+
+    public SparsityPattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     * @return number of nonzeros in L+U, including the fill-in
+     */
+    public int getFactorNonZeros() {
+        return luCols.length;
+    }
+}
@@ -0,0 +1,160 @@
+package odesolver;
+
+import java.util.Arrays;
+
+/**
+ * Nonzero pattern of an n by n Jacobian in compressed sparse row (CSR) form.
+ * Row i holds the components of y that f_i depends on, with column indices
+ * columns[rowStart[i]] ... columns[rowStart[i+1]-1] in increasing order.
+ * All indices are 0-based.
+ */
+public final class SparsityPattern {
+    final int n;
+    final int[] rowStart, columns;
+    // the same pattern by columns: positions of the entries of column j in the
+    // CSR arrays are colEntries[colStart[j]] ... colEntries[colStart[j+1]-1],
+    // with their rows in colRows
+    final int[] colStart, colEntries, colRows;
+
+    /**
+     * @param n dimension
+     * @param rowStart n+1 row pointers into columns
+     * @param columns column indices; each row is sorted and duplicates dropped
+     */
+    public SparsityPattern(int n, int[] rowStart, int[] columns) {
+        if (n <= 0)
+            throw new IllegalArgumentException("sparsity pattern: n = " + n + " less than 1");
+        if (rowStart.length != n + 1 || rowStart[0] != 0 || rowStart[n] > columns.length)
+            throw new IllegalArgumentException("sparsity pattern: illegal row pointers");
+        this.n = n;
+        this.rowStart = new int[n + 1];
+        int[] cols = new int[rowStart[n]];
+        int nnz = 0;
+        for (int i = 0; i < n; i++) {
+            if (rowStart[i + 1] < rowStart[i])
+                throw new IllegalArgumentException("sparsity pattern: illegal row pointers");
+            int[] row = Arrays.copyOfRange(columns, rowStart[i], rowStart[i + 1]);
+            Arrays.sort(row);
+            for (int k = 0; k < row.length; k++) {
+                if (row[k] < 0 || row[k] >= n)
+                    throw new IllegalArgumentException("sparsity pattern: column " + row[k] + " in row " + i);
+                if (k == 0 || row[k] != row[k - 1])
+                    cols[nnz++] = row[k];
+            }
+            this.rowStart[i + 1] = nnz;
+        }
+        this.columns = Arrays.copyOf(cols, nnz);
+
+        colStart = new int[n + 1];
+        colEntries = new int[nnz];
+        colRows = new int[nnz];
+        for (int p = 0; p < nnz; p++)
+            colStart[this.columns[p] + 1]++;
+        for (int j = 0; j < n; j++)
+            colStart[j + 1] += colStart[j];
+        int[] next = Arrays.copyOf(colStart, n);
+        for (int i = 0; i < n; i++)
+            for (int p = this.rowStart[i]; p < this.rowStart[i + 1]; p++) {
+                int q = next[this.columns[p]]++;
+                colEntries[q] = p;
+                colRows[q] = i;
+            }
+    }
+
+    /**
+     * build a pattern from the dependencies of each equation
+     * @param dependencies dependencies[i] lists the components of y that f_i depends on
+     * @return the sparsity pattern
+     */
+    public static SparsityPattern of(int[][] dependencies) {
+        int n = dependencies.length;
+        int[] rowStart = new int[n + 1];
+        for (int i = 0; i < n; i++)
+            rowStart[i + 1] = rowStart[i] + dependencies[i].length;
+        int[] columns = new int[rowStart[n]];
+        for (int i = 0; i < n; i++)
+            System.arraycopy(dependencies[i], 0, columns, rowStart[i], dependencies[i].length);
+        return new SparsityPattern(n, rowStart, columns);
+    }
+
+    /**
+     * @return this pattern with the diagonal added, as needed for P = I - h*el0*J
+     */
+    SparsityPattern withDiagonal() {
+        int[] rs = new int[n + 1];
+        int[] cols = new int[columns.length + n];
+        int nnz = 0;
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(columns, rowStart[i], cols, nnz, rowStart[i + 1] - rowStart[i]);
+            nnz += rowStart[i + 1] - rowStart[i];
+            cols[nnz++] = i;
+            rs[i + 1] = nnz;
+        }
+        return new SparsityPattern(n, rs, cols);
+    }
+
+    /**
+     * partition the columns into groups of structurally independent columns,
+     * no two of which have a nonzero in the same row (Curtis, Powell and Reid).
+     * The columns of a group can be perturbed together, so a difference
+     * quotient Jacobian costs one derivative evaluation per group.
+     * Columns are coloured greedily, those with the most nonzeros first.
+     * @return groups[g] lists the columns of group g in increasing order
+     */
+    int[][] groupColumns() {
+        Integer[] order = new Integer[n];
+        for (int j = 0; j < n; j++)
+            order[j] = j;
+        Arrays.sort(order, (a, b) -> (colStart[b + 1] - colStart[b]) - (colStart[a + 1] - colStart[a]));
+
+        int[] group = new int[n];
+        Arrays.fill(group, -1);
+        int[] used = new int[n];  // used[g] == j + 1 if group g is taken by a neighbour of j
+        int ngrp = 0;
+        for (int j : order) {
+            for (int q = colStart[j]; q < colStart[j + 1]; q++) {
+                int i = colRows[q];
+                for (int p = rowStart[i]; p < rowStart[i + 1]; p++) {
+                    int g = group[columns[p]];
+                    if (g >= 0)
+                        used[g] = j + 1;
+                }
+            }
+            int g = 0;
+            while (g < ngrp && used[g] == j + 1)
+                g++;
+            group[j] = g;
+            if (g == ngrp)
+                ngrp++;
+        }
+
+        int[] size = new int[ngrp];
+        for (int j = 0; j < n; j++)
+            size[group[j]]++;
+        int[][] groups = new int[ngrp][];
+        for (int g = 0; g < ngrp; g++)
+            groups[g] = new int[size[g]];
+        Arrays.fill(size, 0);
+        for (int j = 0; j < n; j++)
+            groups[group[j]][size[group[j]]++] = j;
+        return groups;
+    }
+
+    /**
+     * @param i row
+     * @param j column
+     * @return the position of entry (i, j) in the CSR arrays, or -1 if it is not in the pattern
+     */
+    int position(int i, int j) {
+        int p = Arrays.binarySearch(columns, rowStart[i], rowStart[i + 1], j);
+        return p < 0 ? -1 : p;
+    }
+
+    public int getDimension() {
+        return n;
+    }
+
+    public int getNonZeros() {
+        return columns.length;
+    }
+}
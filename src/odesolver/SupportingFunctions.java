@@ -9,10 +9,20 @@ public class SupportingFunctions {
      * @return vector norm
      */
     public static double vmnorm(int n, double[] v, double[] w){
-        double vm = 0.0;
-        for (int i=1; i<=n; i++)
-            vm = Math.max(vm, Math.abs(v[i])*w[i]);
-        return vm;
+        return vmnorm(n, v, 1, w, 1);
+    }
+
+    /**
+     * weighted max-norm of n elements starting at the given offsets
+     * @param n number of elements
+     * @param v value of the vector
+     * @param voff index of the first element of v
+     * @param w weights
+     * @param woff index of the first element of w
+     * @return vector norm
+     */
+    public static double vmnorm(int n, double[] v, int voff, double[] w, int woff){
+        return Kernels.INSTANCE.maxNorm(n, v, voff, w, woff);
     }
 
     /**
@@ -27,12 +37,94 @@ public class SupportingFunctions {
      * @return matrix norm
      */
     public static double fnorm(int n, double[][] a, double[] w){
+        return fnorm(n, a, 1, w, 1);
+    }
+
+    /**
+     * full matrix norm with the first row and column of a at aoff,
+     * and the first weight at woff
+     * @param n dimensions
+     * @param a the matrix
+     * @param aoff index of the first row and column of a
+     * @param w weights
+     * @param woff index of the first element of w
+     * @return matrix norm
+     */
+    public static double fnorm(int n, double[][] a, int aoff, double[] w, int woff){
         double an = 0.0, sum;
-        for (int i=1; i <= n ; i++){
+        for (int i=0; i < n ; i++){
             sum = 0;
-            for(int j=1; j<=n; j++)
-                sum += Math.abs(a[i][j])/w[j];
-            an = Math.max(an, sum*w[i]);
+            for(int j=0; j<n; j++)
+                sum += Math.abs(a[i+aoff][j+aoff])/w[j+woff];
+            an = Math.max(an, sum*w[i+woff]);
+        }
+        return an;
+    }
+
+    /**
+     * full matrix norm of an n by n matrix stored in one array,
+     * with row i contiguous from a[i*lda]
+     * @param n dimensions
+     * @param a the matrix
+     * @param lda distance between the starts of two rows of a
+     * @param w weights
+     * @param woff index of the first element of w
+     * @return matrix norm
+     */
+    public static double fnorm(int n, double[] a, int lda, double[] w, int woff){
+        double an = 0.0, sum;
+        for (int i=0; i < n ; i++){
+            sum = Kernels.INSTANCE.rowNorm(n, a, i*lda, w, woff);
+            an = Math.max(an, sum*w[i+woff]);
+        }
+        return an;
+    }
+
+    /**
+     * sparse matrix norm of an n by n matrix stored in compressed sparse rows
+     * @param n dimensions
+     * @param pattern nonzero pattern of a
+     * @param a values of the matrix in the CSR order of pattern
+     * @param w weights
+     * @param woff index of the first element of w
+     * @return matrix norm
+     */
+    public static double fnorm(int n, SparsityPattern pattern, double[] a, double[] w, int woff){
+        double an = 0.0, sum;
+        for (int i=0; i < n ; i++){
+            sum = 0;
+            for(int p=pattern.rowStart[i]; p<pattern.rowStart[i+1]; p++)
+                sum += Math.abs(a[p])/w[pattern.columns[p]+woff];
+            an = Math.max(an, sum*w[i+woff]);
+        }
+        return an;
+    }
+
+    /**
+     * band matrix norm
+     * Computes the norm of an n by n band matrix that is consistent with
+     * the weighted max-norm on vectors, with weights stored in the array w.
+     * The matrix is stored in the LINPACK band form of Utility.bandLUDecomposition,
+     * element (i, j) at a[j*lda + ml + mu + i - j].
+     *       bnorm = max(i=1,...,n) ( w[i] * sum(j=i-ml,...,i+mu) fabs( a[i][j] ) / w[j] )
+     * @param n dimensions
+     * @param a the band matrix
+     * @param lda column stride of a
+     * @param ml number of sub-diagonals
+     * @param mu number of super-diagonals
+     * @param w weights
+     * @param woff index of the first element of w
+     * @return matrix norm
+     */
+    public static double bnorm(int n, double[] a, int lda, int ml, int mu, double[] w, int woff){
+        double an = 0.0, sum;
+        int m = ml + mu;
+        for (int i=0; i < n ; i++){
+            sum = 0;
+            int j1 = Math.max(i-ml, 0), j2 = Math.min(i+mu, n-1);
+            for(int j=j1; j<=j2; j++)
+                sum += Math.abs(a[j*lda+m+i-j])/w[j+woff];
+            an = Math.max(an, sum*w[i+woff]);
         }
         return an;
     }
@@ -42,27 +134,48 @@ public class SupportingFunctions {
      * @param ycur current value of y
      */
     public static double[] ewset(double[] ycur, int itol, double[] rtol, double[] atol, int n){
+        return ewset(ycur, itol, rtol, atol, n, new double[n+1]);
+    }
+
+    /**
+     * compute EWT into an existing array
+     * @param ycur current value of y
+     * @param EWT n+1 array receiving the weights
+     */
+    public static double[] ewset(double[] ycur, int itol, double[] rtol, double[] atol, int n, double[] EWT){
+        ewset(ycur, 1, itol, rtol, atol, n, EWT, 1);
+        return EWT;
+    }
+
+    /**
+     * compute EWT for y stored from yoff into EWT stored from woff.
+     * rtol and atol keep the 1-based layout of the lsoda input.
+     * @param ycur current value of y
+     * @param yoff index of the first element of ycur
+     * @param EWT array receiving the weights
+     * @param woff index of the first element of EWT
+     */
+    public static void ewset(double[] ycur, int yoff, int itol, double[] rtol, double[] atol,
+                             int n, double[] EWT, int woff){
         int i;
-        double[] EWT = new double[n+1];
         switch (itol){
             case 1:
                 for (i=1; i<=n; i++)  // both are scalars
-                    EWT[i] = rtol[1] * Math.abs(ycur[i])+atol[1];
+                    EWT[i-1+woff] = rtol[1] * Math.abs(ycur[i-1+yoff])+atol[1];
                 break;
             case 2:
                 for (i=1;i<=n; i++) //scalar rtol and array atol
-                    EWT[i] = rtol[1] * Math.abs(ycur[i]) + atol[i];
+                    EWT[i-1+woff] = rtol[1] * Math.abs(ycur[i-1+yoff]) + atol[i];
                 break;
             case 3:
                 for (i=1;i<=n; i++) //array rtol and scalar atol
-                    EWT[i] = rtol[i] * Math.abs(ycur[i]) + atol[1];
+                    EWT[i-1+woff] = rtol[i] * Math.abs(ycur[i-1+yoff]) + atol[1];
                 break;
             case 4:
                 for (i=1;i<=n; i++) // both are arrays
-                    EWT[i] = rtol[i] * Math.abs(ycur[i]) + atol[i];
+                    EWT[i-1+woff] = rtol[i] * Math.abs(ycur[i-1+yoff]) + atol[i];
                 break;
         }
-        return EWT;
     }
 
     /**
@@ -86,20 +199,39 @@ public class SupportingFunctions {
      */
     public static double[] intdy(double t, int k, double[] dky, int nq, double tn,
                        double hu, double ETA, double h, double[][] yh, int n){
+        // columns 1..nq+1 of yh side by side in one array
+        double[] flat = new double[(nq+1)*n];
+        for (int j=1; j<=nq+1 && j<yh.length; j++)
+            System.arraycopy(yh[j], 1, flat, (j-1)*n, n);
+        int iflag = intdy(t, k, dky, 1, nq, tn, hu, ETA, h, flat, n, n);
+        if (iflag != 0)
+            dky[0] = iflag;
+        return dky;
+    }
+
+    /**
+     * interpolate at the output station, writing dky from doff and
+     * reading column j of yh from yh[(j-1)*nyh]
+     * @param t value of independent variable
+     * @param k integer that specifies the desired derivative order
+     * @param doff index of the first element of dky
+     * @param nyh column stride of yh
+     * @return 0 on success, -1 for an illegal k, -2 for an illegal t
+     */
+    public static int intdy(double t, int k, double[] dky, int doff, int nq, double tn,
+                            double hu, double ETA, double h, double[] yh, int nyh, int n){
         int ic ,jp1;
         double r, s, tp;
 
         if (k < 0 || k > nq){
             System.err.printf("intdy: k = %d illegal", k);
-            dky[0] = -1;
-            return dky;
+            return -1;
         }
         tp = tn - hu -100.0 * ETA * (tn + hu);
         if ((t-tp) * (t-tn)> 0.0){
             System.err.printf("intdy: t = %f illegal\n" +
                     "t not in interval tcur-hu to tcur\n", t);
-            dky[0] = -2;
-            return dky;
+            return -2;
         }
 
         s = (t-tn)/h;
@@ -107,8 +239,9 @@ public class SupportingFunctions {
         for (int i = nq+1-k; i <= nq; i++){
             ic *= i;   // ic = nq(nq-1)...(nq-k+1)
         }
-        for (int i=1; i<=n; i++)
-            dky[i] = ic* yh[nq+1][i];
+        int jo = nq*nyh;
+        for (int i=0; i<n; i++)
+            dky[i+doff] = ic* yh[jo+i];
 
         // use Horner's rule
         for (int j = nq-1; j >= k; j--){
@@ -116,16 +249,17 @@ public class SupportingFunctions {
             ic = 1;
             for (int jj = jp1-k; jj<=j;jj++)
                 ic *= jj;   // coefficient
-            for (int i=1; i<=n; i++)
-                dky[i] = ic * yh[jp1][i] + s * dky[i];
+            jo = j*nyh;
+            for (int i=0; i<n; i++)
+                dky[i+doff] = ic * yh[jo+i] + s * dky[i+doff];
         }
         if (k == 0){
-            return dky;
+            return 0;
         }
         r = Math.pow(h, -k);
-        for (int i=1; i<=n; i++)
-            dky[i] = r*dky[i];
+        for (int i=0; i<n; i++)
+            dky[i+doff] = r*dky[i+doff];
 
-        return dky;
+        return 0;
     }
 }
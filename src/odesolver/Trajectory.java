@@ -0,0 +1,232 @@
+package odesolver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Points recorded by LSODA, kept in primitive arrays: a column of times
+ * and the states row-major, the point in slot s at states[s*n] ...
+ * states[s*n+n-1]. The arrays grow by doubling, so recording a point
+ * allocates nothing in the steady state and boxes nothing.
+ * <p>
+ * Which points are kept is set by a RetentionPolicy. Under lastN the
+ * arrays are a ring of fixed size and point i is in slot
+ * (getFirst() + i) % getTimes().length; otherwise point i is in slot i.
+ */
+public final class Trajectory {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private RetentionPolicy retention = RetentionPolicy.all();
+    private int n, size, first;
+    // points offered since clear, kept or not
+    private long offered;
+    private double[] times = new double[INITIAL_CAPACITY];
+    private double[] states = new double[0];
+    // under tolerance, the range of slopes of each component of a chord from
+    // the last point kept that reproduces every point dropped since
+    private double[] lower = new double[0], upper = new double[0];
+
+    /**
+     * set the policy for the points recorded from now on; takes effect at the next clear
+     */
+    public void setRetention(RetentionPolicy retention) {
+        this.retention = retention;
+    }
+
+    public RetentionPolicy getRetention() {
+        return retention;
+    }
+
+    /**
+     * drop all points and set the dimension of the states; the arrays are
+     * kept, unless the ring of lastN is of another size
+     */
+    public void clear(int n) {
+        if (n < 0)
+            throw new IllegalArgumentException("trajectory: n = " + n + " negative");
+        this.n = n;
+        size = 0;
+        first = 0;
+        offered = 0;
+        if (retention.kind == RetentionPolicy.Kind.LAST && times.length != retention.count)
+            times = new double[retention.count];
+        else if (retention.kind != RetentionPolicy.Kind.LAST && times.length < INITIAL_CAPACITY)
+            times = new double[INITIAL_CAPACITY];
+        if (states.length < times.length * n)
+            states = new double[times.length * n];
+        if (retention.kind == RetentionPolicy.Kind.TOLERANCE && lower.length < n) {
+            lower = new double[n];
+            upper = new double[n];
+        }
+    }
+
+    /**
+     * offer a point, kept or not as the retention policy says
+     * @param t the value of t
+     * @param values the state
+     * @param off index of the first component in values
+     */
+    public void add(double t, double[] values, int off) {
+        long index = offered++;
+        switch (retention.kind) {
+            case NONE:
+                return;
+            case LAST:
+                if (size == times.length) {
+                    put(first, t, values, off);
+                    first = (first + 1) % times.length;
+                } else
+                    put(size++, t, values, off);
+                return;
+            case EVERY_KTH:
+                // the latest point is kept until the next one comes
+                if (size > 1 && (index - 1) % retention.count != 0) {
+                    put(size - 1, t, values, off);
+                    return;
+                }
+                break;
+            case TOLERANCE:
+                if (size > 1 && onChord(t, values, off)) {
+                    put(size - 1, t, values, off);
+                    return;
+                }
+                // the latest point is kept, and the chords start from it
+                Arrays.fill(lower, 0, n, Double.NEGATIVE_INFINITY);
+                Arrays.fill(upper, 0, n, Double.POSITIVE_INFINITY);
+                break;
+            default:
+                break;
+        }
+        if (size == times.length) {
+            times = Arrays.copyOf(times, 2 * size);
+            states = Arrays.copyOf(states, 2 * size * n);
+        }
+        put(size++, t, values, off);
+    }
+
+    private void put(int slot, double t, double[] values, int off) {
+        times[slot] = t;
+        System.arraycopy(values, off, states, slot * n, n);
+    }
+
+    /**
+     * whether the straight line from the last point kept to (t, values)
+     * reproduces within tolerance the latest point and every point dropped
+     * before it. Each dropped point bounds the slope of each component of
+     * such a line, so only the intersection of the bounds is kept; it is
+     * narrowed by the latest point as the bounds are checked, which does no
+     * harm when the check fails, the bounds being reset then.
+     */
+    private boolean onChord(double t, double[] values, int off) {
+        int a = (size - 2) * n, b = (size - 1) * n;
+        double ta = times[size - 2], hb = times[size - 1] - ta, h = t - ta;
+        if (hb == 0 || h == 0)
+            return false;
+        for (int j = 0; j < n; j++) {
+            double yb = states[b + j], tol = retention.atol + retention.rtol * Math.abs(yb);
+            double lo = (yb - tol - states[a + j]) / hb, hi = (yb + tol - states[a + j]) / hb;
+            if (hb < 0) {
+                double swap = lo;
+                lo = hi;
+                hi = swap;
+            }
+            lower[j] = Math.max(lower[j], lo);
+            upper[j] = Math.min(upper[j], hi);
+            double slope = (values[off + j] - states[a + j]) / h;
+            if (slope < lower[j] || slope > upper[j])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return number of points kept
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of points offered since the last clear, kept or not
+     */
+    public long getOffered() {
+        return offered;
+    }
+
+    /**
+     * @return number of components of each state
+     */
+    public int getDimension() {
+        return n;
+    }
+
+    public double getTime(int i) {
+        return times[slot(i)];
+    }
+
+    /**
+     * @return component j of the state of point i
+     */
+    public double getState(int i, int j) {
+        if (j < 0 || j >= n)
+            throw new IndexOutOfBoundsException("trajectory: component " + j + " of " + n);
+        return states[slot(i) * n + j];
+    }
+
+    /**
+     * copy the state of point i into dst from off
+     */
+    public void getState(int i, double[] dst, int off) {
+        System.arraycopy(states, slot(i) * n, dst, off, n);
+    }
+
+    /**
+     * @return the slot of the oldest point; not 0 only for a full ring
+     */
+    public int getFirst() {
+        return first;
+    }
+
+    /**
+     * @return the array of times itself, of which size() slots are in use.
+     * It is replaced when the trajectory grows.
+     */
+    public double[] getTimes() {
+        return times;
+    }
+
+    /**
+     * @return the row-major array of states itself, of which size() slots
+     * are in use. It is replaced when the trajectory grows.
+     */
+    public double[] getStates() {
+        return states;
+    }
+
+    /**
+     * @return the times as a list of boxed values
+     */
+    public ArrayList<Double> toTimeList() {
+        ArrayList<Double> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            list.add(times[slot(i)]);
+        return list;
+    }
+
+    /**
+     * @return the states as a list of boxed arrays
+     */
+    public ArrayList<Double[]> toStateList() {
+        ArrayList<Double[]> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            list.add(Utility.transformYVec(states, slot(i) * n, n));
+        return list;
+    }
+
+    private int slot(int i) {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("trajectory: point " + i + " of " + size);
+        int s = first + i;
+        return s < times.length ? s : s - times.length;
+    }
+}
@@ -1,7 +1,5 @@
 package odesolver;
 
-import java.util.Arrays;
-
 public class Utility {
     /**
      * ddot.c
@@ -13,8 +11,23 @@ public class Utility {
      * @return dot product of dx and dy
      */
     public static double Dot(int n, double[] dx, int incx, double[] dy, int incy){
+        return Dot(n, dx, 1, incx, dy, 1, incy);
+    }
+
+    /**
+     * ddot.c on vectors stored from xstart and ystart
+     * @param n number of elements
+     * @param dx vector
+     * @param xstart start position of x
+     * @param incx storage spacing between elements of dx
+     * @param dy vector
+     * @param ystart start position of y
+     * @param incy storage spacing between elements of dy
+     * @return dot product of dx and dy
+     */
+    public static double Dot(int n, double[] dx, int xstart, int incx, double[] dy, int ystart, int incy){
         double dotProd = 0;  // result
-        int ix = 1, iy = 1;  // index of dx and dy
+        int ix = xstart, iy = ystart;  // index of dx and dy
         if (n <= 0)
             return dotProd;
 
@@ -22,9 +35,9 @@ public class Utility {
         if( incx != incy || incx < 1){
 
             if (incx < 0)
-                ix = (-n+1) * incx + 1;
+                ix = (-n+1) * incx + xstart;
             if (incx < 0)
-                iy = (-n+1) * incy + 1;
+                iy = (-n+1) * incy + ystart;
 
             for(int i=1;i<=n;i++){
                 dotProd += dx[ix] * dy[iy];
@@ -35,24 +48,11 @@ public class Utility {
         }
 
         // Both increments equal to 1
-        if(incx == 1){
-            int m = n % 5;
-            // Clean-up loop so remaining vector length is a multiple of 5
-            if (m != 0){
-                for (int i=1; i<=m;i++)
-                    dotProd += dx[i] * dy[i];
-                if (n < 5)
-                    return dotProd;
-            }
-            for (int i=m+1; i<=n;i=i+5)
-                dotProd += dx[i] * dy[i] + dx[i+1] * dy[i+1] +
-                        dx[i+2] * dy[i+2] + dx[i+3] * dy[i+3] +
-                        dx[i+4] * dy[i+4];
-            return dotProd;
-        }
+        if(incx == 1)
+            return Kernels.INSTANCE.dot(n, dx, xstart, dy, ystart);
         // positive equal non-unit increments
-        for (int i=1; i<= n*incx; i=i+incx)
-            dotProd += dx[i] * dy[i];
+        for (int i=0; i< n*incx; i=i+incx)
+            dotProd += dx[xstart+i] * dy[ystart+i];
 
         return dotProd;
     }
@@ -66,6 +66,18 @@ public class Utility {
      * @return smallest index
      */
     public static int findMaxMagnitude(int n, double[] dx, int incx){
+        return findMaxMagnitude(n, dx, 1, incx);
+    }
+
+    /**
+     * idamax.c on a vector stored from start
+     * @param n number of elements
+     * @param dx vector
+     * @param start start position of x
+     * @param incx storage spacing between elements of dx
+     * @return smallest position (1 for the element at start) of the largest magnitude
+     */
+    public static int findMaxMagnitude(int n, double[] dx, int start, int incx){
         double maxValue, curValue;
         int xindex = 0;
 
@@ -75,11 +87,11 @@ public class Utility {
         if (n <= 1 || incx <= 0)
             return xindex;
 
-        maxValue = Math.abs(dx[1]);
+        maxValue = Math.abs(dx[start]);
         // increments are not euqal to 1
         if (incx != 1){
             int curIndex = 2;
-            for (int i=1+incx; i <= n*incx; i=i+incx){
+            for (int i=start+incx; i <= start+(n-1)*incx; i=i+incx){
                 curValue = Math.abs(dx[i]);
                 if (curValue > maxValue){
                     xindex = curIndex;
@@ -92,7 +104,7 @@ public class Utility {
 
         // increments are equal to 1.
         for (int i=2; i <= n; i++){
-            curValue = Math.abs(dx[i]);
+            curValue = Math.abs(dx[start+i-1]);
             if (curValue > maxValue){
                 xindex = i;
                 maxValue = curValue;
@@ -125,20 +137,7 @@ public class Utility {
         }
 
         // increments are equal to 1
-        int m = n % 5;
-        if ( m != 0 ) {
-            for (int i = start ; i <= m+start - 1 ; i++ )
-                dx[i] = da * dx[i];
-            if ( n < 5 )
-                return dx;
-        }
-        for (int i = m + start; i <= n + start - 1; i = i + 5 ) {
-            dx[i] = da * dx[i];
-            dx[i+1] = da * dx[i+1];
-            dx[i+2] = da * dx[i+2];
-            dx[i+3] = da * dx[i+3];
-            dx[i+4] = da * dx[i+4];
-        }
+        Kernels.INSTANCE.scal(n, da, dx, start);
         return dx;
     }
 
@@ -183,20 +182,7 @@ public class Utility {
 
         // increments are equal to 1
         if (incx == 1){
-            // Clean-up loop
-            int m = n % 4;
-            if (m != 0){
-                for (int i=1; i<=m; i++)
-                    dy[i+ystart-1] += da * dx[i+xstart-1];
-                if (n < 4)
-                    return dy;
-            }
-            for (int i=m+1; i <= n; i=i+4){
-                dy[i+ystart-1] = dy[i+ystart-1] + da * dx[i+xstart-1];
-                dy[i+ystart] = dy[i+ystart] + da * dx[i+xstart];
-                dy[i+ystart+1] = dy[i+ystart+1] + da * dx[i+xstart+1];
-                dy[i+ystart+2] = dy[i+ystart+2] + da * dx[i+xstart+2];
-            }
+            Kernels.INSTANCE.axpy(n, da, dx, xstart, dy, ystart);
             return dy;
         }
 
@@ -215,13 +201,25 @@ public class Utility {
      * if info != 0, the matrix is singular
      */
     public static ReturningValues LUDecomposition(double[][] a, int n){
+        int[] ipvt = new int[n+1];
+        int info = LUDecomposition(a, n, ipvt);
+        return new ReturningValues(a, ipvt, info);
+    }
+
+    /**
+     * LU decomposition using partial pivoting, in place and without allocation
+     * @param a (n+1)x(n+1) matrix, overwritten by the factors
+     * @param n dimension
+     * @param ipvt n+1 array receiving the pivot vector
+     * @return info; if info != 0, the matrix is singular
+     */
+    public static int LUDecomposition(double[][] a, int n, int[] ipvt){
         double t;
         int info = 0;
-        int[] ipvt = new int[n+1];
 
         for (int k=1 ; k<=n-1 ; k++){
             // Find j = pivot index
-            int j = findMaxMagnitude(n-k+1,Arrays.copyOfRange(a[k],k-1,n+1),1)+k-1;
+            int j = findMaxMagnitude(n-k+1, a[k], k, 1)+k-1;
             ipvt[k] = j;
 
             // zero pivot implies this row already triangularised
@@ -239,7 +237,7 @@ public class Utility {
 
             // compute multipliers
             t = - 1.0/ a[k][k];
-            a[k] = calAX(n-k, t, a[k],1, k+1);
+            calAX(n-k, t, a[k],1, k+1);
 
             // column elimination with row indexing
             for (int i=k+1; i<=n;i++){
@@ -248,7 +246,7 @@ public class Utility {
                     a[i][j] = a[i][k];
                     a[i][k] = t;
                 }
-                a[i] = calAXPlusY(n-k, t, a[k], 1, a[i], 1,k+1,k+1);
+                calAXPlusY(n-k, t, a[k], 1, a[i], 1,k+1,k+1);
             }
         }
 
@@ -256,7 +254,7 @@ public class Utility {
         if(a[n][n] == 0.0)
             info = n;
 
-        return new ReturningValues(a, ipvt, info);
+        return info;
     }
 
     /**
@@ -268,34 +266,407 @@ public class Utility {
      * @return b the solution vector x.
      */
     public static double[] solveLinearSys(double[][] a, int n, int[] ipvt, double[] b){
+        return solveLinearSys(a, n, ipvt, b, 1);
+    }
+
+    /**
+     * solves the linear system in place for a right hand side stored from boff
+     * @param a (n+1)x(n+1) matrix
+     * @param n row dimension of a
+     * @param ipvt the pivot vector from LUDecomposition
+     * @param b the right hand side vector
+     * @param boff index of the first element of b
+     * @return b the solution vector x.
+     */
+    public static double[] solveLinearSys(double[][] a, int n, int[] ipvt, double[] b, int boff){
         int j;
         double t;
 
     // Ax = LUx = b; Let Ux = y, so Ly = b.
         // 1. Solve L * y = b.
         for(int k=1; k <= n; k++){
-            t = Dot(k-1, Arrays.copyOfRange(a[k],0,k),1,b,1);
-            b[k] = (b[k]-t) / a[k][k];
+            t = Dot(k-1, a[k], 1, 1, b, boff, 1);
+            b[boff+k-1] = (b[boff+k-1]-t) / a[k][k];
         }
 
         // 2. Solve U * x = y.
         for (int k=n-1; k >= 1; k--){
-            b[k] = b[k] + Dot(n-k, Arrays.copyOfRange(a[k],k,n+1),1, Arrays.copyOfRange(b,k,n+1),1);
+            b[boff+k-1] = b[boff+k-1] + Dot(n-k, a[k], k+1, 1, b, boff+k, 1);
             j = ipvt[k];
             if (j != k){
-                t = b[j];
-                b[j] = b[k];
-                b[k] = t;
+                t = b[boff+j-1];
+                b[boff+j-1] = b[boff+k-1];
+                b[boff+k-1] = t;
+            }
+        }
+        return b;
+    }
+
+    /**
+     * LU decomposition using partial pivoting on a flat column-major matrix.
+     * Column k is contiguous from a[k*lda], so the pivot search, the
+     * multipliers and the column eliminations all walk memory sequentially.
+     * @param a matrix, overwritten by the factors
+     * @param lda leading dimension (column stride) of a
+     * @param n dimension
+     * @param ipvt array receiving the 0-based pivot vector
+     * @return info; if info != 0, the matrix is singular
+     */
+    public static int LUDecomposition(double[] a, int lda, int n, int[] ipvt){
+        double t;
+        int info = 0;
+
+        for (int k=0 ; k<n-1 ; k++){
+            int kcol = k*lda;
+            // Find l = pivot index
+            int l = findMaxMagnitude(n-k, a, kcol+k, 1)+k-1;
+            ipvt[k] = l;
+
+            // zero pivot implies this column already triangularised
+            if (a[kcol+l] == 0.0){
+                info = k+1;
+                continue;
+            }
+
+            // interchange
+            if(l != k){
+                t = a[kcol+l];
+                a[kcol+l] = a[kcol+k];
+                a[kcol+k] = t;
+            }
+
+            // compute multipliers
+            t = - 1.0/ a[kcol+k];
+            calAX(n-k-1, t, a, 1, kcol+k+1);
+
+            // column elimination with row indexing
+            for (int j=k+1; j<n; j++){
+                int jcol = j*lda;
+                t = a[jcol+l];
+                if(l != k){
+                    a[jcol+l] = a[jcol+k];
+                    a[jcol+k] = t;
+                }
+                calAXPlusY(n-k-1, t, a, 1, a, 1, kcol+k+1, jcol+k+1);
+            }
+        }
+
+        ipvt[n-1] = n-1;
+        if(a[(n-1)*lda+n-1] == 0.0)
+            info = n;
+
+        return info;
+    }
+
+    /**
+     * right-looking blocked version of LUDecomposition. The columns are
+     * factored in panels of nb, the eliminations of a panel reaching only
+     * its own columns. The panel is then applied to each column right of it
+     * in one pass: its row interchanges, a triangular solve for the rows of
+     * the panel and a matrix product update of the rows below, four
+     * multiplier columns at a time. The trailing matrix is thus streamed
+     * through once per panel rather than once per column while the panel
+     * stays in cache.
+     * <p>
+     * The product update needs the multipliers permuted by the later
+     * interchanges of the panel, as LAPACK stores them; a permuted copy is
+     * kept in work so that a keeps the LINPACK layout of LUDecomposition.
+     * Each element sees the same operations in the same order as in
+     * LUDecomposition, so the factors, pivots and info are identical.
+     * @param a matrix, overwritten by the factors
+     * @param lda leading dimension (column stride) of a
+     * @param n dimension
+     * @param ipvt array receiving the 0-based pivot vector
+     * @param nb panel width
+     * @param work workspace of at least nb*n elements
+     * @param steps workspace of at least nb elements
+     * @param active workspace of at least nb elements
+     * @return info; if info != 0, the matrix is singular
+     */
+    public static int blockedLUDecomposition(double[] a, int lda, int n, int[] ipvt, int nb, double[] work,
+                                             int[] steps, int[] active){
+        double t;
+        int info = 0;
+
+        for (int k0=0 ; k0<n-1 ; k0+=nb){
+            int k1 = Math.min(k0+nb, n-1);  // pivot steps k0 .. k1-1
+            int j1 = Math.min(k0+nb, n);    // columns of the panel
+
+            // factor the panel
+            for (int k=k0 ; k<k1 ; k++){
+                int kcol = k*lda;
+                int l = findMaxMagnitude(n-k, a, kcol+k, 1)+k-1;
+                ipvt[k] = l;
+
+                // zero pivot implies this column already triangularised
+                if (a[kcol+l] == 0.0){
+                    info = k+1;
+                    continue;
+                }
+
+                if(l != k){
+                    t = a[kcol+l];
+                    a[kcol+l] = a[kcol+k];
+                    a[kcol+k] = t;
+                }
+
+                t = - 1.0/ a[kcol+k];
+                calAX(n-k-1, t, a, 1, kcol+k+1);
+
+                for (int j=k+1; j<j1; j++){
+                    int jcol = j*lda;
+                    t = a[jcol+l];
+                    if(l != k){
+                        a[jcol+l] = a[jcol+k];
+                        a[jcol+k] = t;
+                    }
+                    calAXPlusY(n-k-1, t, a, 1, a, 1, kcol+k+1, jcol+k+1);
+                }
+            }
+            if (j1 == n)
+                break;
+
+            // the steps taken (a zero pivot, left in place, means a skipped
+            // step) and their multipliers, permuted by the later interchanges
+            int ns = 0;
+            for (int k=k0 ; k<k1 ; k++){
+                if (a[k*lda+k] == 0.0)
+                    continue;
+                steps[ns++] = k;
+                System.arraycopy(a, k*lda+k+1, work, (k-k0)*n+k+1, n-k-1);
+                int l = ipvt[k];
+                if (l != k)
+                    for (int s=0; s<ns-1; s++){
+                        int w0 = (steps[s]-k0)*n;
+                        t = work[w0+l];
+                        work[w0+l] = work[w0+k];
+                        work[w0+k] = t;
+                    }
+            }
+
+            // update the trailing columns with the whole panel
+            for (int j=j1; j<n; j++){
+                int jcol = j*lda;
+                for (int s=0; s<ns; s++){
+                    int k = steps[s], l = ipvt[k];
+                    if (l != k){
+                        t = a[jcol+l];
+                        a[jcol+l] = a[jcol+k];
+                        a[jcol+k] = t;
+                    }
+                }
+                // triangular solve for the rows of the panel
+                for (int s=0; s<ns; s++){
+                    int k = steps[s], w0 = (k-k0)*n;
+                    t = a[jcol+k];
+                    if (t != 0.0)
+                        for (int i=k+1; i<k1; i++)
+                            a[jcol+i] += t*work[w0+i];
+                }
+                // product update of the rows below, four columns of the panel
+                // at a time, skipping zero multipliers as calAXPlusY does
+                int na = 0;
+                for (int s=0; s<ns; s++)
+                    if (a[jcol+steps[s]] != 0.0)
+                        active[na++] = steps[s];
+                int len = n-k1, s = 0;
+                for ( ; s+4<=na; s+=4){
+                    int ka = active[s], kb = active[s+1], kc = active[s+2], kd = active[s+3];
+                    Kernels.INSTANCE.axpy4(len, a[jcol+ka], a[jcol+kb], a[jcol+kc], a[jcol+kd], work,
+                            (ka-k0)*n+k1, (kb-k0)*n+k1, (kc-k0)*n+k1, (kd-k0)*n+k1, a, jcol+k1);
+                }
+                for ( ; s<na; s++){
+                    int k = active[s];
+                    Kernels.INSTANCE.axpy(len, a[jcol+k], work, (k-k0)*n+k1, a, jcol+k1);
+                }
+            }
+        }
+
+        ipvt[n-1] = n-1;
+        if(a[(n-1)*lda+n-1] == 0.0)
+            info = n;
+
+        return info;
+    }
+
+    /**
+     * solves trans(a) * x = b using the flat factors computed by LUDecomposition
+     * @param a factors
+     * @param lda leading dimension (column stride) of a
+     * @param n dimension
+     * @param ipvt the 0-based pivot vector from LUDecomposition
+     * @param b the right hand side vector
+     * @param boff index of the first element of b
+     * @return b the solution vector x.
+     */
+    public static double[] solveLinearSys(double[] a, int lda, int n, int[] ipvt, double[] b, int boff){
+        int l;
+        double t;
+
+        // 1. Solve trans(U) * y = b.
+        for(int k=0; k < n; k++){
+            t = Dot(k, a, k*lda, 1, b, boff, 1);
+            b[boff+k] = (b[boff+k]-t) / a[k*lda+k];
+        }
+
+        // 2. Solve trans(L) * x = y.
+        for (int k=n-2; k >= 0; k--){
+            b[boff+k] = b[boff+k] + Dot(n-k-1, a, k*lda+k+1, 1, b, boff+k+1, 1);
+            l = ipvt[k];
+            if (l != k){
+                t = b[boff+l];
+                b[boff+l] = b[boff+k];
+                b[boff+k] = t;
+            }
+        }
+        return b;
+    }
+
+    /**
+     * dgbfa.c
+     * LU decomposition of a band matrix using partial pivoting.
+     * The matrix is stored column by column in LINPACK band form:
+     * column j starts at abd[j*lda], and element (i, j) is at
+     * abd[j*lda + ml + mu + i - j]. The first ml rows of each column
+     * are left free for the fill-in generated by pivoting, so lda must be
+     * at least 2*ml + mu + 1.
+     * @param abd band matrix, overwritten by the factors
+     * @param lda leading dimension (column stride) of abd
+     * @param n dimension
+     * @param ml number of sub-diagonals
+     * @param mu number of super-diagonals
+     * @param ipvt array receiving the 0-based pivot vector
+     * @return info; if info != 0, the matrix is singular
+     */
+    public static int bandLUDecomposition(double[] abd, int lda, int n, int ml, int mu, int[] ipvt){
+        double t;
+        int info = 0;
+        int m = ml + mu;  // row of the diagonal
+
+        // zero the initial fill-in columns
+        int j0 = mu + 1, j1 = Math.min(n, m + 1) - 1;
+        for (int jz = j0; jz < j1; jz++){
+            int i0 = m - jz;
+            for (int i = i0; i < ml; i++)
+                abd[jz*lda + i] = 0.0;
+        }
+        int jz = j1 - 1;
+        int ju = 0;
+
+        for (int k = 0; k < n-1; k++){
+            int kcol = k*lda;
+            // zero the next fill-in column
+            jz++;
+            if (jz < n)
+                for (int i = 0; i < ml; i++)
+                    abd[jz*lda + i] = 0.0;
+
+            // Find l = pivot index
+            int lm = Math.min(ml, n-k-1);
+            int l = findMaxMagnitude(lm+1, abd, kcol+m, 1) + m - 1;
+            ipvt[k] = l + k - m;
+
+            // zero pivot implies this column already triangularised
+            if (abd[kcol+l] == 0.0){
+                info = k+1;
+                continue;
+            }
+
+            // interchange
+            if (l != m){
+                t = abd[kcol+l];
+                abd[kcol+l] = abd[kcol+m];
+                abd[kcol+m] = t;
+            }
+
+            // compute multipliers
+            t = -1.0 / abd[kcol+m];
+            if (lm > 0)
+                calAX(lm, t, abd, 1, kcol+m+1);
+
+            // row elimination with column indexing
+            ju = Math.min(Math.max(ju, mu + ipvt[k] + 1), n);
+            int mm = m;
+            for (int j = k+1; j < ju; j++){
+                int jcol = j*lda;
+                l--;
+                mm--;
+                t = abd[jcol+l];
+                if (l != mm){
+                    abd[jcol+l] = abd[jcol+mm];
+                    abd[jcol+mm] = t;
+                }
+                if (lm > 0)
+                    calAXPlusY(lm, t, abd, 1, abd, 1, kcol+m+1, jcol+mm+1);
+            }
+        }
+
+        ipvt[n-1] = n-1;
+        if (abd[(n-1)*lda+m] == 0.0)
+            info = n;
+
+        return info;
+    }
+
+    /**
+     * dgbsl.c
+     * solves a * x = b using the band factors computed by bandLUDecomposition
+     * @param abd band factors
+     * @param lda leading dimension (column stride) of abd
+     * @param n dimension
+     * @param ml number of sub-diagonals
+     * @param mu number of super-diagonals
+     * @param ipvt the 0-based pivot vector from bandLUDecomposition
+     * @param b the right hand side vector
+     * @param boff index of the first element of b
+     * @return b the solution vector x.
+     */
+    public static double[] solveBandSys(double[] abd, int lda, int n, int ml, int mu, int[] ipvt,
+                                        double[] b, int boff){
+        int m = ml + mu;
+        double t;
+
+        // 1. Solve L * y = b.
+        if (ml != 0){
+            for (int k = 0; k < n-1; k++){
+                int lm = Math.min(ml, n-k-1);
+                int l = ipvt[k];
+                t = b[boff+l];
+                if (l != k){
+                    b[boff+l] = b[boff+k];
+                    b[boff+k] = t;
+                }
+                if (lm > 0)
+                    calAXPlusY(lm, t, abd, 1, b, 1, k*lda+m+1, boff+k+1);
             }
         }
+
+        // 2. Solve U * x = y.
+        for (int k = n-1; k >= 0; k--){
+            b[boff+k] /= abd[k*lda+m];
+            int lm = Math.min(k, m);
+            t = -b[boff+k];
+            if (lm > 0)
+                calAXPlusY(lm, t, abd, 1, b, 1, k*lda+m-lm, boff+k-lm);
+        }
         return b;
     }
 
     public static Double[] transformYVec(double[] y){
-        int len = y.length-1;
+        return transformYVec(y, 1, y.length-1);
+    }
+
+    /**
+     * box len elements of y starting at off
+     * @param y the vector
+     * @param off index of the first element
+     * @param len number of elements
+     * @return boxed copy of the elements
+     */
+    public static Double[] transformYVec(double[] y, int off, int len){
         Double[] yvec = new Double[len];
         for (int i=0; i<len;i++)
-            yvec[i] = y[i+1];
+            yvec[i] = y[i+off];
         return yvec;
     }
 }
@@ -0,0 +1,202 @@
+package tools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands the rows recorded by the solver to another recorder on a
+ * background thread. Rows are copied into a preallocated ring of slots;
+ * the writer thread takes all the rows queued at once and writes them out
+ * while the solver fills the free slots, so the solver never waits for
+ * the disk unless asked to.
+ * <p>
+ * What happens when the ring is full is set by the backpressure:
+ * BLOCK makes the solver wait for a free slot and loses nothing; DROP
+ * drops the new row; SAMPLE replaces the newest row not yet taken by the
+ * writer, so the output keeps up with the latest state at a coarser rate,
+ * and drops the new row only if there is none. Rows lost either way are
+ * counted by getDropped.
+ */
+public class AsyncRecorder implements Recorder {
+    public enum Backpressure {BLOCK, DROP, SAMPLE}
+
+    private final Recorder out;
+    private final Backpressure backpressure;
+    private final int n, capacity;
+    private final double[] times, states;
+    private final Thread writer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition(), notFull = lock.newCondition();
+    // rows queued, rows taken by the writer and rows written out, counted from the start
+    private long head, taken, tail;
+    private long dropped;
+    private boolean closed;
+    private Exception failure;
+
+    /**
+     * @param out the recorder the rows are written to, closed with this one
+     * @param n number of components of y
+     * @param capacity number of slots in the ring
+     * @param backpressure what to do with a row when the ring is full
+     */
+    public AsyncRecorder(Recorder out, int n, int capacity, Backpressure backpressure) {
+        if (n < 1 || capacity < 1)
+            throw new IllegalArgumentException("async recorder: n = " + n + ", capacity = " + capacity);
+        this.out = out;
+        this.n = n;
+        this.capacity = capacity;
+        this.backpressure = backpressure;
+        times = new double[capacity];
+        states = new double[capacity * n];
+        writer = new Thread(this::drain, "lsoda-recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void write(double t, double[] y, int off) {
+        lock.lock();
+        try {
+            if (closed)
+                throw new IllegalStateException("async recorder: closed");
+            long row = head;
+            while (head - tail == capacity) {
+                if (failure != null)
+                    return;
+                if (backpressure == Backpressure.BLOCK) {
+                    notFull.awaitUninterruptibly();
+                    row = head;
+                    continue;
+                }
+                dropped++;
+                if (backpressure == Backpressure.SAMPLE && head - 1 >= taken) {
+                    row = head - 1;
+                    break;
+                }
+                return;
+            }
+            int slot = (int) (row % capacity);
+            times[slot] = t;
+            System.arraycopy(y, off, states, slot * n, n);
+            if (row == head) {
+                head++;
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            long from, to;
+            lock.lock();
+            try {
+                while (head == tail && !closed)
+                    notEmpty.awaitUninterruptibly();
+                if (head == tail)
+                    return;
+                from = tail;
+                to = head;
+                taken = to;
+            } finally {
+                lock.unlock();
+            }
+            // the slots taken are left alone by write until tail passes them
+            try {
+                for (long row = from; row < to; row++) {
+                    int slot = (int) (row % capacity);
+                    out.write(times[slot], states, slot * n);
+                }
+            } catch (RuntimeException e) {
+                fail(e);
+                return;
+            }
+            lock.lock();
+            try {
+                tail = to;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void fail(Exception e) {
+        lock.lock();
+        try {
+            failure = e;
+            tail = head;
+            taken = head;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * wait until every row queued so far has been handed to the recorder
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            while (tail < head && failure == null)
+                notFull.awaitUninterruptibly();
+        } finally {
+            lock.unlock();
+        }
+        rethrow();
+    }
+
+    /**
+     * @return number of rows lost to backpressure
+     */
+    public long getDropped() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * write out the rows queued, stop the writer thread and close the recorder
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed)
+                return;
+            closed = true;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+        rethrow();
+    }
+
+    private void rethrow() {
+        Exception e;
+        lock.lock();
+        try {
+            e = failure;
+        } finally {
+            lock.unlock();
+        }
+        if (e instanceof UncheckedIOException)
+            throw (UncheckedIOException) e;
+        if (e != null)
+            throw new IllegalStateException("async recorder: writing failed", e);
+    }
+}
@@ -0,0 +1,66 @@
+package tools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of a binary trajectory file, all little-endian:
+ * <pre>
+ *   8 bytes   magic "LSODABIN"
+ *   int       version, 1
+ *   int       n, the number of components of y
+ *   n+1 times int length and UTF-8 bytes of a column name, t first
+ *   zeros up to a multiple of 8 bytes
+ *   rows of n+1 doubles: t, y_1, ..., y_n
+ * </pre>
+ * The number of rows follows from the size of the file.
+ */
+final class BinaryFormat {
+    static final byte[] MAGIC = "LSODABIN".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+
+    private BinaryFormat() {
+    }
+
+    /**
+     * @return t, y_1, ..., y_n, the columns of tools.Data
+     */
+    static String[] defaultNames(int n) {
+        String[] names = new String[n + 1];
+        names[0] = "t";
+        for (int i = 1; i <= n; i++)
+            names[i] = "y_" + i;
+        return names;
+    }
+
+    static ByteBuffer header(int n, String[] names) {
+        if (n < 1)
+            throw new IllegalArgumentException("binary trajectory: n = " + n + " less than 1");
+        if (names == null)
+            names = defaultNames(n);
+        if (names.length != n + 1)
+            throw new IllegalArgumentException("binary trajectory: " + names.length + " column names for n = " + n);
+        byte[][] bytes = new byte[n + 1][];
+        int length = MAGIC.length + 8;
+        for (int i = 0; i <= n; i++) {
+            bytes[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            length += 4 + bytes[i].length;
+        }
+        length = (length + 7) & ~7;
+        ByteBuffer header = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).putInt(VERSION).putInt(n);
+        for (byte[] name : bytes)
+            header.putInt(name.length).put(name);
+        header.position(length);
+        header.flip();
+        return header;
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+}
@@ -0,0 +1,138 @@
+package tools;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a trajectory written by BinaryWriter or MappedBinaryWriter, row by
+ * row through a buffer.
+ */
+public class BinaryReader implements Closeable {
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int n;
+    private final String[] names;
+    private final long rows;
+    private long read;
+
+    public BinaryReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer fixed = readBytes(BinaryFormat.MAGIC.length + 8);
+            byte[] magic = new byte[BinaryFormat.MAGIC.length];
+            fixed.get(magic);
+            if (!Arrays.equals(magic, BinaryFormat.MAGIC))
+                throw new IOException("binary trajectory: " + path + " is not a trajectory file");
+            int version = fixed.getInt();
+            if (version != BinaryFormat.VERSION)
+                throw new IOException("binary trajectory: version " + version + " not supported");
+            n = fixed.getInt();
+            if (n < 1)
+                throw new IOException("binary trajectory: n = " + n);
+            names = new String[n + 1];
+            long length = fixed.capacity();
+            for (int i = 0; i <= n; i++) {
+                int size = readBytes(4).getInt();
+                names[i] = new String(readBytes(size).array(), StandardCharsets.UTF_8);
+                length += 4 + size;
+            }
+            length = (length + 7) & ~7L;
+            rows = (channel.size() - length) / (8L * (n + 1));
+            channel.position(length);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        buffer = ByteBuffer.allocateDirect(Math.max(BinaryWriter.BLOCK, 8 * (n + 1)))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+    }
+
+    private ByteBuffer readBytes(int size) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (bytes.hasRemaining())
+            if (channel.read(bytes) < 0)
+                throw new EOFException("binary trajectory: truncated header");
+        bytes.flip();
+        return bytes;
+    }
+
+    /**
+     * @return number of components of y
+     */
+    public int getDimension() {
+        return n;
+    }
+
+    /**
+     * @return the n+1 column names, t first
+     */
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    /**
+     * @return number of complete rows in the file
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * read the next row
+     * @param row array of length at least n+1 receiving t, y_1, ..., y_n
+     * @return false at the end of the file
+     */
+    public boolean next(double[] row) throws IOException {
+        if (read == rows)
+            return false;
+        int rowBytes = 8 * (n + 1);
+        if (buffer.remaining() < rowBytes) {
+            buffer.compact();
+            while (buffer.position() < rowBytes)
+                if (channel.read(buffer) < 0)
+                    throw new EOFException("binary trajectory: truncated row");
+            buffer.flip();
+        }
+        for (int i = 0; i <= n; i++)
+            row[i] = buffer.getDouble();
+        read++;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * convert a binary trajectory to the CSV written by tools.Data
+     * @param binary the binary file
+     * @param csv the CSV file, created or truncated
+     */
+    public static void toCsv(Path binary, Path csv) throws IOException {
+        try (BinaryReader reader = new BinaryReader(binary);
+             BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            writer.write(String.join(",", reader.names));
+            double[] row = new double[reader.n + 1];
+            while (reader.next(row)) {
+                writer.newLine();
+                writer.write(Double.toString(row[0]));
+                for (int i = 1; i <= reader.n; i++) {
+                    writer.write(',');
+                    writer.write(Double.toString(row[i]));
+                }
+            }
+        }
+    }
+}
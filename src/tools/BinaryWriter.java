@@ -0,0 +1,76 @@
+package tools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a trajectory in the binary format of BinaryFormat. Rows are
+ * gathered in a direct buffer and written through a FileChannel a block
+ * at a time, so the cost per row is n+1 stores of a double.
+ */
+public class BinaryWriter implements Recorder {
+    static final int BLOCK = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int n, rowBytes;
+
+    /**
+     * @param path the file, created or truncated
+     * @param n number of components of y
+     */
+    public BinaryWriter(Path path, int n) throws IOException {
+        this(path, n, null);
+    }
+
+    /**
+     * @param path the file, created or truncated
+     * @param n number of components of y
+     * @param names n+1 column names, t first; null for t, y_1, ..., y_n
+     */
+    public BinaryWriter(Path path, int n, String[] names) throws IOException {
+        ByteBuffer header = BinaryFormat.header(n, names);
+        this.n = n;
+        rowBytes = 8 * (n + 1);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        BinaryFormat.writeFully(channel, header);
+        buffer = ByteBuffer.allocateDirect(Math.max(BLOCK, rowBytes) / rowBytes * rowBytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public void write(double t, double[] y, int off) {
+        if (buffer.remaining() < rowBytes)
+            flush();
+        buffer.putDouble(t);
+        for (int i = 0; i < n; i++)
+            buffer.putDouble(y[off + i]);
+    }
+
+    /**
+     * write the rows buffered so far to the file
+     */
+    public void flush() {
+        buffer.flip();
+        try {
+            BinaryFormat.writeFully(channel, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen())
+            return;
+        flush();
+        channel.close();
+    }
+}
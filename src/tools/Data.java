@@ -6,7 +6,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 
-public class Data {
+public class Data implements Recorder {
     private String filePath;
     private BufferedWriter bufferedWriter;
     private int n;
@@ -24,12 +24,23 @@ public class Data {
     }
 
     public void write(double t, double[] y) {
+        write(t, y, 1);
+    }
+
+    /**
+     * write one row with the values of y stored from off
+     * @param t the value of t
+     * @param y the values of y
+     * @param off index of the first element of y
+     */
+    @Override
+    public void write(double t, double[] y, int off) {
         try{
             bufferedWriter.newLine();
             bufferedWriter.write(t +",");
-            for (int i=1; i<n; i++)
-                bufferedWriter.write(y[i]+",");
-            bufferedWriter.write(Double.toString(y[n]));
+            for (int i=0; i<n-1; i++)
+                bufferedWriter.write(y[i+off]+",");
+            bufferedWriter.write(Double.toString(y[n-1+off]));
             bufferedWriter.flush();
         } catch (IOException e) {
             System.out.println("Error occurred in file writing.");
@@ -39,4 +50,9 @@ public class Data {
     public void closeWriter() throws IOException {
         bufferedWriter.close();
     }
+
+    @Override
+    public void close() throws IOException {
+        closeWriter();
+    }
 }
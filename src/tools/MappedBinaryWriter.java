@@ -0,0 +1,82 @@
+package tools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a trajectory in the binary format of BinaryFormat into memory
+ * mapped regions of the file, leaving the writing back to the operating
+ * system. The file is extended a region at a time and cut to the rows
+ * written on close.
+ */
+public class MappedBinaryWriter implements Recorder {
+    static final int REGION = 1 << 23;
+
+    private final FileChannel channel;
+    private final int n, rowBytes, regionBytes;
+    private MappedByteBuffer region;
+    // file position of the start of the current region
+    private long position;
+
+    /**
+     * @param path the file, created or truncated
+     * @param n number of components of y
+     */
+    public MappedBinaryWriter(Path path, int n) throws IOException {
+        this(path, n, null);
+    }
+
+    /**
+     * @param path the file, created or truncated
+     * @param n number of components of y
+     * @param names n+1 column names, t first; null for t, y_1, ..., y_n
+     */
+    public MappedBinaryWriter(Path path, int n, String[] names) throws IOException {
+        ByteBuffer header = BinaryFormat.header(n, names);
+        this.n = n;
+        rowBytes = 8 * (n + 1);
+        regionBytes = Math.max(REGION, rowBytes) / rowBytes * rowBytes;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        position = header.remaining();
+        BinaryFormat.writeFully(channel, header);
+        map();
+    }
+
+    private void map() throws IOException {
+        region = channel.map(FileChannel.MapMode.READ_WRITE, position, regionBytes);
+        region.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public void write(double t, double[] y, int off) {
+        if (region.remaining() < rowBytes) {
+            position += region.position();
+            try {
+                map();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        region.putDouble(t);
+        for (int i = 0; i < n; i++)
+            region.putDouble(y[off + i]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen())
+            return;
+        long end = position + region.position();
+        region.force();
+        region = null;
+        channel.truncate(end);
+        channel.close();
+    }
+}
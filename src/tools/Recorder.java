@@ -0,0 +1,17 @@
+package tools;
+
+import java.io.Closeable;
+
+/**
+ * Destination of the points recorded by LSODA, one row (t, y) at a time.
+ */
+public interface Recorder extends Closeable {
+
+    /**
+     * write one row with the n values of y stored from off
+     * @param t the value of t
+     * @param y the values of y
+     * @param off index of the first element of y
+     */
+    void write(double t, double[] y, int off);
+}
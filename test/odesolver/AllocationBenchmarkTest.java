@@ -0,0 +1,162 @@
+package odesolver;
+
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AllocationBenchmarkTest {
+    private final com.sun.management.ThreadMXBean bean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final FirstOrderDifferentialEquations ode = new Robertson();
+
+    private long allocatedBytes() {
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    void allocation_of_rhs_evaluations() {
+        Assumptions.assumeTrue(bean.isThreadAllocatedMemorySupported());
+        bean.setThreadAllocatedMemoryEnabled(true);
+
+        LSODA lsoda = new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5);
+        double[] result = new double[3];
+        lsoda.integrate(ode, 0, new double[]{1.0, 0.0, 0.0}, 40, result);
+
+        int calls = 200000;
+        double[] y = result.clone();
+        double[] ydot = new double[3];
+
+        // warm up before measuring
+        for (int i = 0; i < calls; i++)
+            lsoda.FirstOrderSystem(y, 40, ydot);
+
+        long start = allocatedBytes();
+        for (int i = 0; i < calls; i++)
+            lsoda.FirstOrderSystem(y, 40, ydot);
+        long workspace = allocatedBytes() - start;
+
+        assertTrue(workspace < 1024);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void allocation_of_a_stiff_integration() {
+        Assumptions.assumeTrue(bean.isThreadAllocatedMemorySupported());
+        bean.setThreadAllocatedMemoryEnabled(true);
+
+        double[] result = new double[3];
+        for (int i = 0; i < 20; i++)
+            new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5).integrate(ode, 0, new double[]{1.0, 0.0, 0.0}, 4e5, result);
+
+        LSODA lsoda = new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5);
+        long start = allocatedBytes();
+        lsoda.integrate(ode, 0, new double[]{1.0, 0.0, 0.0}, 4e5, result);
+        long allocated = allocatedBytes() - start;
+        System.out.printf("Allocated per step: %.2f bytes over %d steps, %d f evals, %d Jacobian evals\n",
+                (double) allocated / lsoda.getStepsTaken(), lsoda.getStepsTaken(),
+                lsoda.getEvaluations(), lsoda.getJacobianEvaluations());
+    }
+
+    @Test
+    void steady_state_steps_allocate_nothing() {
+        Assumptions.assumeTrue(bean.isThreadAllocatedMemorySupported());
+        bean.setThreadAllocatedMemoryEnabled(true);
+
+        LSODA lsoda = new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5);
+        lsoda.setRetention(RetentionPolicy.none());
+        lsoda.ode = ode;
+        double[] rtol = {0, 1.0e-6}, atol = {0, 1.0e-8};
+        // the continuation calls of an integration on to 4e5 by outputs 1%
+        // apart, measured until the JIT has compiled them
+        long allocated = Long.MAX_VALUE;
+        int steps = 0;
+        for (int run = 0; run < 10 && allocated >= 1024; run++) {
+            lsoda.lsoda(3, new double[]{1.0, 0.0, 0.0}, 0, 0.4, 1, rtol, atol, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+            int nst = lsoda.getStepsTaken();
+            long start = allocatedBytes();
+            for (double tout = 0.4 * 1.01; tout < 4e5; tout *= 1.01)
+                lsoda.lsoda(3, null, 0, tout, 1, rtol, atol, 1, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+            allocated = allocatedBytes() - start;
+            steps = lsoda.getStepsTaken() - nst;
+        }
+        assertTrue(steps > 100);
+        assertTrue(allocated < 1024);
+    }
+
+    @Test
+    void allocation_of_lu_factor_and_solve() {
+        Assumptions.assumeTrue(bean.isThreadAllocatedMemorySupported());
+        bean.setThreadAllocatedMemoryEnabled(true);
+
+        int n = 200;
+        double[][] a = new double[n+1][n+1];
+        double[][] lu = new double[n+1][n+1];
+        double[] b = new double[n];
+        int[] ipvt = new int[n+1];
+        for (int i = 1; i <= n; i++)
+            for (int j = 1; j <= n; j++)
+                a[i][j] = (i == j) ? 4.0 : 1.0 / (i + j);
+
+        int runs = 50;
+        for (int r = 0; r < runs; r++) {
+            for (int i = 1; i <= n; i++)
+                System.arraycopy(a[i], 0, lu[i], 0, n + 1);
+            Utility.LUDecomposition(lu, n, ipvt);
+            Utility.solveLinearSys(lu, n, ipvt, b, 0);
+        }
+
+        // the least of a few measurements, as the kernels allocate until they are compiled
+        long allocated = Long.MAX_VALUE;
+        for (int m = 0; m < 5 && allocated >= 1024; m++) {
+            long start = allocatedBytes();
+            for (int r = 0; r < runs; r++) {
+                for (int i = 1; i <= n; i++)
+                    System.arraycopy(a[i], 0, lu[i], 0, n + 1);
+                Utility.LUDecomposition(lu, n, ipvt);
+                Utility.solveLinearSys(lu, n, ipvt, b, 0);
+            }
+            allocated = Math.min(allocated, allocatedBytes() - start);
+        }
+        assertTrue(allocated < 1024);
+    }
+
+    @Test
+    void allocation_of_blocked_dense_factor_and_solve() {
+        Assumptions.assumeTrue(bean.isThreadAllocatedMemorySupported());
+        bean.setThreadAllocatedMemoryEnabled(true);
+
+        // large enough to be factored by blocks
+        int n = DenseLU.BLOCKED_MIN_N + 44;
+        double[] a = new double[n * n], lu = new double[n * n], b = new double[n];
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j < n; j++)
+                a[i * n + j] = (i == j) ? 4.0 : 1.0 / (i + j + 2);
+        DenseLU solver = new DenseLU();
+        solver.setup(n);
+
+        int runs = 10;
+        for (int r = 0; r < runs; r++) {
+            System.arraycopy(a, 0, lu, 0, n * n);
+            solver.factor(lu);
+            solver.solve(lu, b, 0);
+        }
+
+        long allocated = Long.MAX_VALUE;
+        for (int m = 0; m < 5 && allocated >= 1024; m++) {
+            long start = allocatedBytes();
+            for (int r = 0; r < runs; r++) {
+                System.arraycopy(a, 0, lu, 0, n * n);
+                solver.factor(lu);
+                solver.solve(lu, b, 0);
+            }
+            allocated = Math.min(allocated, allocatedBytes() - start);
+        }
+        assertTrue(allocated < 1024);
+    }
+}
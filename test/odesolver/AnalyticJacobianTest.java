@@ -0,0 +1,75 @@
+package odesolver;
+
+import odesolver.exception.IllegalInputException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnalyticJacobianTest {
+
+    @Test
+    void analytic_jacobian_saves_derivative_evaluations() {
+        double[] y0 = {1.0, 0.0, 0.0};
+        double[] fd = new double[3], analytic = new double[3], mainState = new double[3];
+
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+        lsoda.integrate(new Robertson(), 0, y0, 4e5, fd);
+        LSODA withJacobian = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+        withJacobian.integrate(new Robertson.WithJacobian(), 0, y0, 4e5, analytic);
+        LSODA withMainState = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+        withMainState.integrate(new Robertson.WithMainStateJacobian(), 0, y0, 4e5, mainState);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(fd[i], analytic[i], 1.0e-6 * Math.abs(fd[i]) + 1.0e-10);
+            assertEquals(analytic[i], mainState[i]);
+        }
+        assertTrue(withJacobian.getJacobianEvaluations() > 0);
+        // every difference Jacobian costs n = 3 extra evaluations
+        assertTrue(withJacobian.getEvaluations() < lsoda.getEvaluations());
+    }
+
+    @Test
+    void difference_jacobian_can_still_be_chosen() {
+        double[] y0 = {1.0, 0.0, 0.0};
+        double[] rtol = {0, 1.0e-8}, atol = {0, 1.0e-10};
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+        lsoda.ode = new Robertson();
+        lsoda.lsoda(3, y0, 0, 4e5, 1, rtol, atol, 1, 1, 0, 2, 0, 0,
+                0, 0, 0, 0, 0, 0, 0, 0, 0);
+        LSODA forced = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+        forced.ode = new Robertson.WithJacobian();
+        forced.lsoda(3, y0, 0, 4e5, 1, rtol, atol, 1, 1, 0, 2, 0, 0,
+                0, 0, 0, 0, 0, 0, 0, 0, 0);
+        assertEquals(lsoda.getEvaluations(), forced.getEvaluations());
+        for (int i = 1; i <= 3; i++)
+            assertEquals(lsoda.y[i], forced.y[i]);
+    }
+
+    @Test
+    void one_workspace_integrates_both_kinds_of_ode() {
+        double[] y0 = {1.0, 0.0, 0.0};
+        double[] fd = new double[3], analytic = new double[3], again = new double[3];
+        new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5).integrate(new Robertson(), 0, y0, 4e5, fd);
+        new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5).integrate(new Robertson.WithJacobian(), 0, y0, 4e5, analytic);
+
+        // the type picked for a provider is not kept for the next ode
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+        lsoda.integrate(new Robertson.WithJacobian(), 0, y0, 4e5, again);
+        assertArrayEquals(analytic, again);
+        lsoda.integrate(new Robertson(), 0, y0, 4e5, again);
+        assertArrayEquals(fd, again);
+        lsoda.integrate(new Robertson.WithMainStateJacobian(), 0, y0, 4e5, again);
+        assertArrayEquals(analytic, again);
+    }
+
+    @Test
+    void analytic_jacobian_needs_a_provider() {
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+        lsoda.ode = new Robertson();
+        double[] rtol = {0, 1.0e-8}, atol = {0, 1.0e-10};
+        IllegalInputException e = assertThrows(IllegalInputException.class, () ->
+                lsoda.lsoda(3, new double[]{1, 0, 0}, 0, 1.0, 1, rtol, atol, 1, 1, 0, 1, 0, 0,
+                        0, 0, 0, 0, 0, 0, 0, 0, 0));
+        assertEquals("lsoda: illegal jt=1", e.getMessage());
+    }
+}
@@ -0,0 +1,168 @@
+package odesolver;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncIntegratorTest {
+
+    // Robertson's problem, sleeping for a millisecond every block evaluations as a slow callback would
+    private static FirstOrderDifferentialEquations robertson(double k1, int block) {
+        return new Robertson(k1) {
+            private int calls;
+
+            @Override
+            public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+                if (block > 0 && ++calls % block == 0) {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.computeDerivatives(t, y, ydot);
+            }
+        };
+    }
+
+    @Test
+    void futures_match_synchronous_integrations() throws Exception {
+        int requests = 100;
+        AsyncIntegrator async = new AsyncIntegrator(new LSODAConfig(0, 0, 1.0e-8, 1.0e-6, 12, 5));
+        List<CompletableFuture<AsyncIntegrator.Result>> futures = new ArrayList<>();
+        double[] y0 = {1, 0, 0};
+        for (int i = 0; i < requests; i++)
+            futures.add(async.integrate(robertson(0.04 * (1 + 0.01 * i), 100), 0, y0, 40));
+        y0[0] = 0;
+
+        double[] single = new double[3];
+        for (int i = 0; i < requests; i++) {
+            AsyncIntegrator.Result result = futures.get(i).get(30, TimeUnit.SECONDS);
+            LSODA lsoda = new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5);
+            lsoda.integrate(robertson(0.04 * (1 + 0.01 * i), 0), 0, new double[]{1, 0, 0}, 40, single);
+            assertEquals(40, result.getTime());
+            assertArrayEquals(single, result.getState());
+            assertEquals(lsoda.getStepsTaken(), result.getStepsTaken());
+            assertEquals(lsoda.getEvaluations(), result.getEvaluations());
+            assertEquals(lsoda.getJacobianEvaluations(), result.getJacobianEvaluations());
+            assertEquals(2, result.getMethodUsed());
+        }
+    }
+
+    @Test
+    void cancelling_stops_the_integration() throws Exception {
+        // an oscillator integrated far enough to run for minutes
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger evaluations = new AtomicInteger();
+        FirstOrderDifferentialEquations oscillator = new FirstOrderDifferentialEquations() {
+            @Override
+            public int getDimension() {
+                return 2;
+            }
+
+            @Override
+            public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+                if (evaluations.incrementAndGet() == 1000)
+                    started.countDown();
+                ydot[0] = y[1];
+                ydot[1] = -y[0];
+            }
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AsyncIntegrator async = new AsyncIntegrator(new LSODAConfig(0, 0, 1.0e-10, 1.0e-10, 12, 5), executor);
+        CompletableFuture<AsyncIntegrator.Result> future = async.integrate(oscillator, 0, new double[]{1, 0}, 1.0e9);
+        assertTrue(started.await(30, TimeUnit.SECONDS));
+        assertTrue(future.cancel(true));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertTrue(future.isCancelled());
+        assertThrows(CancellationException.class, future::join);
+
+        // the workspace is reused by the next integration
+        int before = evaluations.get();
+        CompletableFuture<AsyncIntegrator.Result> next = new AsyncIntegrator(
+                new LSODAConfig(0, 0, 1.0e-10, 1.0e-10, 12, 5), Runnable::run).integrate(oscillator, 0, new double[]{1, 0}, 1);
+        assertEquals(Math.cos(1), next.get().getState()[0], 1.0e-8);
+        assertTrue(evaluations.get() > before);
+    }
+
+    @Test
+    void failures_complete_the_future_exceptionally() {
+        FirstOrderDifferentialEquations failing = new FirstOrderDifferentialEquations() {
+            @Override
+            public int getDimension() {
+                return 1;
+            }
+
+            @Override
+            public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+                throw new IllegalStateException("callback failed");
+            }
+        };
+        AsyncIntegrator async = new AsyncIntegrator(new LSODAConfig(0, 0, 1.0e-8, 1.0e-6, 12, 5));
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> async.integrate(failing, 0, new double[]{1}, 1).get(30, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+
+        ExecutorService closed = Executors.newSingleThreadExecutor();
+        closed.shutdown();
+        CompletableFuture<AsyncIntegrator.Result> rejected = new AsyncIntegrator(
+                new LSODAConfig(0, 0, 1.0e-8, 1.0e-6, 12, 5), closed).integrate(failing, 0, new double[]{1}, 1);
+        assertTrue(rejected.isCompletedExceptionally());
+    }
+
+    @Test
+    void idle_workspaces_are_capped() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AsyncIntegrator async = new AsyncIntegrator(new LSODAConfig(0, 0, 1.0e-8, 1.0e-6, 12, 5), executor, 2);
+        List<CompletableFuture<AsyncIntegrator.Result>> futures = new ArrayList<>();
+        for (int i = 0; i < 64; i++)
+            futures.add(async.integrate(robertson(0.04, 10), 0, new double[]{1, 0, 0}, 40));
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertTrue(async.getIdleWorkspaces() > 0 && async.getIdleWorkspaces() <= 2);
+        assertThrows(IllegalArgumentException.class,
+                () -> new AsyncIntegrator(new LSODAConfig(0, 0, 1.0e-8, 1.0e-6, 12, 5), executor, -1));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void blocking_callbacks_throughput() throws Exception {
+        int requests = 200, workers = Runtime.getRuntime().availableProcessors();
+        LSODAConfig config = new LSODAConfig(0, 0, 1.0e-8, 1.0e-6, 12, 5);
+        ExecutorService fixed = Executors.newFixedThreadPool(workers);
+        long bounded = 0, unbounded = 0;
+        for (int rep = 0; rep < 2; rep++) {
+            bounded = run(new AsyncIntegrator(config, fixed), requests);
+            unbounded = run(new AsyncIntegrator(config), requests);
+        }
+        fixed.shutdown();
+        System.out.printf("Async integration of %d Robertson requests with blocking callbacks: %d-thread pool %.1f ms, default executor %.1f ms\n",
+                requests, workers, bounded / 1e6, unbounded / 1e6);
+    }
+
+    private static long run(AsyncIntegrator async, int requests) throws Exception {
+        long start = System.nanoTime();
+        List<CompletableFuture<AsyncIntegrator.Result>> futures = new ArrayList<>();
+        for (int i = 0; i < requests; i++)
+            futures.add(async.integrate(robertson(0.04, 50), 0, new double[]{1, 0, 0}, 40));
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,85 @@
+package odesolver;
+
+import odesolver.exception.IllegalInputException;
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BandedJacobianTest {
+
+    /*
+     * 1-D reaction-diffusion: y_i' = D*(y_{i-1} - 2y_i + y_{i+1}) - k*y_i^2,
+     * a stiff system with a tridiagonal Jacobian
+     */
+    private FirstOrderDifferentialEquations reactionDiffusion(int n) {
+        return new FirstOrderDifferentialEquations() {
+            @Override
+            public int getDimension() {
+                return n;
+            }
+
+            @Override
+            public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+                double d = 1.0e3;
+                for (int i = 0; i < n; i++) {
+                    double left = (i == 0) ? 1.0 : y[i - 1];
+                    double right = (i == n - 1) ? 0.0 : y[i + 1];
+                    ydot[i] = d * (left - 2 * y[i] + right) - 10 * y[i] * y[i];
+                }
+            }
+        };
+    }
+
+    @Test
+    void band_jacobian_matches_full_jacobian() {
+        int n = 100;
+        FirstOrderDifferentialEquations ode = reactionDiffusion(n);
+        double[] full = new double[n], band = new double[n];
+
+        LSODA dense = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+        dense.integrate(ode, 0, new double[n], 1.0, full);
+        LSODA banded = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5, 1, 1);
+        banded.integrate(ode, 0, new double[n], 1.0, band);
+
+        for (int i = 0; i < n; i++)
+            assertEquals(full[i], band[i], 1.0e-6);
+        assertTrue(banded.getJacobianEvaluations() > 0);
+        // 3 evaluations per band Jacobian instead of n
+        assertTrue(banded.getEvaluations() < dense.getEvaluations());
+    }
+
+    @Test
+    void band_jacobian_through_lsoda() {
+        int n = 20;
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+        lsoda.ode = reactionDiffusion(n);
+        double[] rtol = {0, 1.0e-8}, atol = {0, 1.0e-10};
+        lsoda.lsoda(n, new double[n], 0, 1.0, 1, rtol, atol, 1, 1, 0, 5, 1, 1,
+                0, 0, 0, 0, 0, 0, 0, 0, 0);
+        assertTrue(lsoda.tn >= 1.0);
+        assertTrue(lsoda.y[1] > lsoda.y[n] && lsoda.y[n] > 0);
+    }
+
+    @Test
+    void illegal_band_input() {
+        int n = 4;
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+        lsoda.ode = reactionDiffusion(n);
+        double[] rtol = {0, 1.0e-8}, atol = {0, 1.0e-10};
+        IllegalInputException e = assertThrows(IllegalInputException.class, () ->
+                lsoda.lsoda(n, new double[n], 0, 1.0, 1, rtol, atol, 1, 1, 0, 3, 1, 1,
+                        0, 0, 0, 0, 0, 0, 0, 0, 0));
+        assertEquals("lsoda: illegal jt=3", e.getMessage());
+        e = assertThrows(IllegalInputException.class, () ->
+                lsoda.lsoda(n, new double[n], 0, 1.0, 1, rtol, atol, 1, 1, 0, 5, n, 1,
+                        0, 0, 0, 0, 0, 0, 0, 0, 0));
+        assertEquals("lsoda: illegal ml=4", e.getMessage());
+        e = assertThrows(IllegalInputException.class, () ->
+                lsoda.lsoda(n, new double[n], 0, 1.0, 1, rtol, atol, 1, 1, 0, 5, 1, -1,
+                        0, 0, 0, 0, 0, 0, 0, 0, 0));
+        assertEquals("lsoda: illegal mu=-1", e.getMessage());
+    }
+}
@@ -0,0 +1,99 @@
+package odesolver;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlockedLUTest {
+
+    private double[] random(Random random, int lda, int n) {
+        double[] a = new double[lda * n];
+        for (int i = 0; i < a.length; i++)
+            a[i] = random.nextDouble() - 0.5;
+        return a;
+    }
+
+    @Test
+    void blocked_factors_are_identical() {
+        Random random = new Random(2);
+        for (int n : new int[]{1, 2, 3, 17, 64, 65, 130, 301})
+            for (int nb : new int[]{1, 3, 8, 32}) {
+                int lda = n + 2;
+                double[] a = random(random, lda, n);
+                // sparse entries give zero multipliers, which are skipped
+                for (int i = 0; i < a.length; i += 3)
+                    a[i] = 0.0;
+                double[] b = a.clone();
+                int[] ipa = new int[n], ipb = new int[n];
+                assertEquals(Utility.LUDecomposition(a, lda, n, ipa),
+                        Utility.blockedLUDecomposition(b, lda, n, ipb, nb, new double[nb * n], new int[nb], new int[nb]));
+                assertArrayEquals(ipa, ipb);
+                assertArrayEquals(a, b);
+            }
+    }
+
+    @Test
+    void blocked_factorization_reports_a_singular_matrix() {
+        int n = 40;
+        double[] a = random(new Random(4), n, n);
+        for (int i = 0; i < n; i++)
+            a[7 * n + i] = 0.0;  // column 7 of P^T, row 7 of P
+        double[] b = a.clone();
+        int[] ipa = new int[n], ipb = new int[n];
+        int info = Utility.LUDecomposition(a, n, n, ipa);
+        assertTrue(info != 0);
+        assertEquals(info, Utility.blockedLUDecomposition(b, n, n, ipb, 8, new double[8 * n], new int[8], new int[8]));
+        assertArrayEquals(a, b);
+    }
+
+    @Test
+    void dense_solver_switches_to_blocks() {
+        int n = DenseLU.BLOCKED_MIN_N + 10;
+        Random random = new Random(6);
+        double[] p = random(random, n, n);
+        for (int i = 0; i < n; i++)
+            p[i * n + i] += n;
+        double[] x = new double[n], b = new double[n];
+        for (int i = 0; i < n; i++)
+            x[i] = random.nextDouble();
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j < n; j++)
+                b[i] += p[i * n + j] * x[j];
+
+        DenseLU lu = new DenseLU();
+        assertEquals(n * n, lu.setup(n));
+        assertEquals(0, lu.factor(p));
+        lu.solve(p, b, 0);
+        assertArrayEquals(x, b, 1.0e-10);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void blocked_and_unblocked_timing() {
+        Random random = new Random(1);
+        for (int n : new int[]{50, 100, 200, 500, 1000, 2000}) {
+            double[] a0 = random(random, n, n);
+            int[] ipvt = new int[n];
+            double[] work = new double[DenseLU.PANEL * n];
+            int[] steps = new int[DenseLU.PANEL], active = new int[DenseLU.PANEL];
+            int reps = Math.max(1, (int) (1.0e8 / ((double) n * n * n)));
+            long unblocked = Long.MAX_VALUE, blocked = Long.MAX_VALUE;
+            // the first rounds warm up the JIT, except for the largest sizes
+            for (int round = 0; round < (n >= 1000 ? 1 : 3); round++) {
+                long start = System.nanoTime();
+                for (int r = 0; r < reps; r++)
+                    Utility.LUDecomposition(a0.clone(), n, n, ipvt);
+                unblocked = Math.min(unblocked, (System.nanoTime() - start) / reps);
+                start = System.nanoTime();
+                for (int r = 0; r < reps; r++)
+                    Utility.blockedLUDecomposition(a0.clone(), n, n, ipvt, DenseLU.PANEL, work, steps, active);
+                blocked = Math.min(blocked, (System.nanoTime() - start) / reps);
+            }
+            System.out.printf("LU n = %d: unblocked %.2f ms, blocked (panel %d) %.2f ms\n",
+                    n, unblocked / 1e6, DenseLU.PANEL, blocked / 1e6);
+        }
+    }
+}
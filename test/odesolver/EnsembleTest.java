@@ -0,0 +1,139 @@
+package odesolver;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EnsembleTest {
+
+    // Robertson's problem with the three rate constants as parameters
+    private static FirstOrderDifferentialEquations robertson(double[] p, int off) {
+        return new Robertson(p[off], p[off + 1], p[off + 2]) {
+            @Override
+            public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+                if (k1 < 0)
+                    throw new IllegalStateException("negative rate constant");
+                super.computeDerivatives(t, y, ydot);
+            }
+        };
+    }
+
+    private static double[] sweep(int members, double[] y0, double[] tout) {
+        double[] p = new double[3 * members];
+        for (int i = 0; i < members; i++) {
+            p[3 * i] = 0.04 * (1 + 0.5 * i / members);
+            p[3 * i + 1] = 3.0e7;
+            p[3 * i + 2] = 1.0e4;
+            y0[3 * i] = 1;
+            tout[i] = 40 * (1 + i % 7);
+        }
+        return p;
+    }
+
+    @Test
+    void members_match_single_integrations() {
+        int members = 200;
+        double[] y0 = new double[3 * members], tout = new double[members];
+        double[] p = sweep(members, y0, tout);
+        double[] result = new double[3 * members];
+        Ensemble.Statistics statistics = new Ensemble.Statistics(members);
+        LSODAConfig config = new LSODAConfig(0, 0, 1.0e-8, 1.0e-6, 12, 5);
+        new Ensemble(config, ForkJoinPool.commonPool())
+                .integrate(EnsembleTest::robertson, 3, 0, y0, p, 3, tout, result, statistics);
+
+        assertEquals(0, statistics.getFailures());
+        double[] single = new double[3];
+        for (int i = 0; i < members; i++) {
+            LSODA lsoda = new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5);
+            lsoda.integrate(robertson(p, 3 * i), 0, new double[]{1, 0, 0}, tout[i], single);
+            for (int j = 0; j < 3; j++)
+                assertEquals(single[j], result[3 * i + j]);
+            assertEquals(lsoda.getStepsTaken(), statistics.getStepsTaken(i));
+            assertEquals(lsoda.getEvaluations(), statistics.getEvaluations(i));
+            assertEquals(lsoda.getJacobianEvaluations(), statistics.getJacobianEvaluations(i));
+            assertEquals(lsoda.getMethodUsed(), statistics.getMethodUsed(i));
+        }
+        // Robertson turns stiff early on
+        assertEquals(2, statistics.getMethodUsed(members - 1));
+    }
+
+    @Test
+    void a_failing_member_does_not_stop_the_others() {
+        int members = 10;
+        double[] y0 = new double[3 * members], tout = new double[members];
+        double[] p = sweep(members, y0, tout);
+        p[3 * 4] = -1;
+        Ensemble.Statistics statistics = new Ensemble.Statistics(members);
+        // results written over the initial states
+        new Ensemble(new LSODAConfig(0, 0, 1.0e-8, 1.0e-6, 12, 5), new ForkJoinPool(2))
+                .integrate(EnsembleTest::robertson, 3, 0, y0, p, 3, tout, y0, statistics);
+        assertEquals(1, statistics.getFailures());
+        assertTrue(statistics.getFailure(4) instanceof IllegalStateException);
+        assertTrue(Double.isNaN(y0[3 * 4]));
+        for (int i = 0; i < members; i++)
+            if (i != 4)
+                assertEquals(1.0, y0[3 * i] + y0[3 * i + 1] + y0[3 * i + 2], 1.0e-6);
+        assertThrows(IllegalArgumentException.class, () -> new Ensemble(new LSODAConfig(0, 0, 1.0e-8, 1.0e-6, 12, 5),
+                ForkJoinPool.commonPool()).integrate(EnsembleTest::robertson, 3, 0, new double[3], p, 3, tout, y0, null));
+    }
+
+    @Test
+    void members_already_at_tout_keep_their_initial_state() {
+        int members = 12;
+        double[] y0 = new double[3 * members], tout = new double[members];
+        double[] p = sweep(members, y0, tout);
+        // every other member, on one worker so that they share a workspace
+        for (int i = 1; i < members; i += 2) {
+            tout[i] = 0;
+            y0[3 * i] = 0.5;
+            y0[3 * i + 2] = 0.5;
+        }
+        double[] result = new double[3 * members];
+        Ensemble.Statistics statistics = new Ensemble.Statistics(members);
+        new Ensemble(new LSODAConfig(0, 0, 1.0e-8, 1.0e-6, 12, 5), new ForkJoinPool(1))
+                .integrate(EnsembleTest::robertson, 3, 0, y0, p, 3, tout, result, statistics);
+
+        assertEquals(0, statistics.getFailures());
+        for (int i = 1; i < members; i += 2) {
+            assertArrayEquals(new double[]{0.5, 0, 0.5}, Arrays.copyOfRange(result, 3 * i, 3 * i + 3));
+            assertEquals(0, statistics.getStepsTaken(i));
+            assertEquals(0, statistics.getEvaluations(i));
+            assertEquals(0, statistics.getJacobianEvaluations(i));
+        }
+        for (int i = 0; i < members; i += 2)
+            assertTrue(statistics.getStepsTaken(i) > 0);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void ensemble_throughput() {
+        int members = 10000;
+        double[] y0 = new double[3 * members], tout = new double[members];
+        double[] p = sweep(members, y0, tout);
+        double[] result = new double[3 * members];
+        LSODAConfig config = new LSODAConfig(0, 0, 1.0e-8, 1.0e-6, 12, 5);
+        Ensemble.Statistics statistics = new Ensemble.Statistics(members);
+        long sequential = 0, parallel = 0;
+        for (int rep = 0; rep < 2; rep++) {
+            long start = System.nanoTime();
+            double[] single = new double[3];
+            for (int i = 0; i < members; i++)
+                new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5).integrate(robertson(p, 3 * i), 0, new double[]{1, 0, 0}, tout[i], single);
+            sequential = System.nanoTime() - start;
+            start = System.nanoTime();
+            new Ensemble(config, ForkJoinPool.commonPool())
+                    .integrate(EnsembleTest::robertson, 3, 0, y0, p, 3, tout, result, statistics);
+            parallel = System.nanoTime() - start;
+        }
+        System.out.printf("Ensemble of %d Robertson members on %d workers: sequential %.1f ms, ensemble %.1f ms\n",
+                members, ForkJoinPool.commonPool().getParallelism(), sequential / 1e6, parallel / 1e6);
+        assertEquals(0, statistics.getFailures());
+    }
+}
@@ -0,0 +1,226 @@
+package odesolver;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.apache.commons.math3.ode.events.EventHandler;
+import org.apache.commons.math3.ode.sampling.StepHandler;
+import org.apache.commons.math3.ode.sampling.StepInterpolator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventHandlerTest {
+
+    // y1' = y2, y2' = -y1: y1 = cos t, y2 = -sin t
+    private final FirstOrderDifferentialEquations oscillator = new FirstOrderDifferentialEquations() {
+        @Override
+        public int getDimension() {
+            return 2;
+        }
+
+        @Override
+        public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+            ydot[0] = y[1];
+            ydot[1] = -y[0];
+        }
+    };
+
+    // g = y[component], recording the events and answering with action
+    private static class Crossing implements EventHandler {
+        final int component;
+        final Action action;
+        final List<double[]> events = new ArrayList<>();
+        double t0 = Double.NaN;
+
+        Crossing(int component, Action action) {
+            this.component = component;
+            this.action = action;
+        }
+
+        @Override
+        public void init(double t0, double[] y0, double t) {
+            this.t0 = t0;
+        }
+
+        @Override
+        public double g(double t, double[] y) {
+            return y[component];
+        }
+
+        @Override
+        public Action eventOccurred(double t, double[] y, boolean increasing) {
+            events.add(new double[]{t, y[0], y[1], increasing ? 1 : 0});
+            return action;
+        }
+
+        @Override
+        public void resetState(double t, double[] y) {
+        }
+    }
+
+    @Test
+    void roots_are_located_without_extra_evaluations() {
+        double[] plain = new double[2], found = new double[2];
+        LSODA reference = new LSODA(0, 0, 1.0e-10, 1.0e-10, 12, 5);
+        reference.integrate(oscillator, 0, new double[]{1, 0}, 10, plain);
+
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-10, 12, 5);
+        Crossing zeros = new Crossing(0, EventHandler.Action.CONTINUE);
+        Crossing turns = new Crossing(1, EventHandler.Action.CONTINUE);
+        lsoda.addEventHandler(zeros, 0.1, 1.0e-12, 100);
+        lsoda.addEventHandler(turns, 0.1, 1.0e-12, 100);
+        assertEquals(2, lsoda.getEventHandlers().size());
+        assertEquals(10, lsoda.integrate(oscillator, 0, new double[]{1, 0}, 10, found));
+
+        assertArrayEquals(plain, found);
+        assertEquals(reference.getEvaluations(), lsoda.getEvaluations());
+        assertEquals(reference.getStepsTaken(), lsoda.getStepsTaken());
+        assertEquals(0, zeros.t0);
+        // cos t vanishes at pi/2 + k*pi, -sin t at k*pi
+        assertEquals(3, zeros.events.size());
+        assertEquals(3, turns.events.size());
+        for (int k = 0; k < 3; k++) {
+            double[] zero = zeros.events.get(k), turn = turns.events.get(k);
+            assertEquals(Math.PI / 2 + k * Math.PI, zero[0], 1.0e-8);
+            assertEquals(0, zero[1], 1.0e-8);
+            assertEquals(k % 2 == 0 ? 0 : 1, zero[3]);
+            assertEquals((k + 1) * Math.PI, turn[0], 1.0e-8);
+        }
+
+        lsoda.clearEventHandlers();
+        assertTrue(lsoda.getEventHandlers().isEmpty());
+    }
+
+    @Test
+    void stop_ends_the_integration_at_the_event() {
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-10, 12, 5);
+        Crossing zeros = new Crossing(0, EventHandler.Action.STOP);
+        lsoda.addEventHandler(zeros, 0.1, 1.0e-12, 100);
+        List<Boolean> lasts = new ArrayList<>();
+        double[] end = new double[1];
+        lsoda.addStepHandler(new StepHandler() {
+            @Override
+            public void init(double t0, double[] y0, double t) {
+            }
+
+            @Override
+            public void handleStep(StepInterpolator interpolator, boolean isLast) {
+                lasts.add(isLast);
+                end[0] = interpolator.getCurrentTime();
+            }
+        });
+        double[] result = new double[2];
+        double t = lsoda.integrate(oscillator, 0, new double[]{1, 0}, 10, result);
+
+        assertEquals(1, zeros.events.size());
+        assertEquals(Math.PI / 2, t, 1.0e-8);
+        assertEquals(t, end[0]);
+        assertEquals(0, result[0], 1.0e-8);
+        assertEquals(-1, result[1], 1.0e-8);
+        assertTrue(lasts.get(lasts.size() - 1));
+        assertEquals(1, lasts.stream().filter(b -> b).count());
+    }
+
+    @Test
+    void roots_past_tout_are_found_on_continuation() {
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-10, 12, 5);
+        lsoda.ode = oscillator;
+        Crossing zeros = new Crossing(0, EventHandler.Action.CONTINUE);
+        lsoda.addEventHandler(zeros, 1.0, 1.0e-12, 100);
+        double[] rtol = {0, 1.0e-10}, atol = {0, 1.0e-10};
+        double[] y = {1, 0};
+        int istate = 1;
+        // outputs every 0.05 put pi/2 inside a step that runs past tout
+        for (int k = 1; k <= 60; k++) {
+            lsoda.lsoda(2, y, 0, 0.05 * k, 1, rtol, atol, 1, istate, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+            istate = 2;
+            assertEquals(Math.cos(0.05 * k), lsoda.y[1], 1.0e-8);
+            assertEquals(k * 0.05 >= Math.PI / 2 ? 1 : 0, zeros.events.size());
+        }
+        assertEquals(Math.PI / 2, zeros.events.get(0)[0], 1.0e-8);
+    }
+
+    @Test
+    void reset_state_bounces_a_ball() {
+        double gravity = 9.81, height = 10, e = 0.9;
+        FirstOrderDifferentialEquations ball = new FirstOrderDifferentialEquations() {
+            @Override
+            public int getDimension() {
+                return 2;
+            }
+
+            @Override
+            public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+                ydot[0] = y[1];
+                ydot[1] = -gravity;
+            }
+        };
+        Crossing ground = new Crossing(0, EventHandler.Action.RESET_STATE) {
+            @Override
+            public void resetState(double t, double[] y) {
+                y[0] = 0;
+                y[1] = -e * y[1];
+            }
+        };
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-10, 12, 5);
+        lsoda.addEventHandler(ground, 0.1, 1.0e-12, 100);
+        double[] result = new double[2];
+        lsoda.integrate(ball, 0, new double[]{height, 0}, 7, result);
+
+        double t1 = Math.sqrt(2 * height / gravity), v = gravity * t1;
+        double[] bounces = {t1, t1 + 2 * e * v / gravity, t1 + 2 * (e + e * e) * v / gravity};
+        assertEquals(3, ground.events.size());
+        for (int k = 0; k < 3; k++) {
+            assertEquals(bounces[k], ground.events.get(k)[0], 1.0e-7);
+            assertEquals(0, ground.events.get(k)[3]);
+        }
+        double since = 7 - bounces[2], up = e * e * e * v;
+        assertEquals(up * since - 0.5 * gravity * since * since, result[0], 1.0e-6);
+        assertEquals(up - gravity * since, result[1], 1.0e-6);
+    }
+
+    @Test
+    void reset_derivatives_switches_the_dynamics() {
+        double[] slope = {1};
+        FirstOrderDifferentialEquations ramp = new FirstOrderDifferentialEquations() {
+            @Override
+            public int getDimension() {
+                return 1;
+            }
+
+            @Override
+            public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+                ydot[0] = slope[0];
+            }
+        };
+        EventHandler thermostat = new EventHandler() {
+            @Override
+            public void init(double t0, double[] y0, double t) {
+            }
+
+            @Override
+            public double g(double t, double[] y) {
+                return y[0] - 1;
+            }
+
+            @Override
+            public Action eventOccurred(double t, double[] y, boolean increasing) {
+                slope[0] = -1;
+                return Action.RESET_DERIVATIVES;
+            }
+
+            @Override
+            public void resetState(double t, double[] y) {
+            }
+        };
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-10, 12, 5);
+        lsoda.addEventHandler(thermostat, 0.5, 1.0e-12, 100);
+        double[] result = new double[1];
+        lsoda.integrate(ramp, 0, new double[]{0}, 3, result);
+        assertEquals(-1, result[0], 1.0e-8);
+    }
+}
@@ -0,0 +1,137 @@
+package odesolver;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InterruptionTest {
+
+    // y'' = -y, counting the evaluations
+    private static FirstOrderDifferentialEquations oscillator(AtomicInteger evaluations) {
+        return new FirstOrderDifferentialEquations() {
+            @Override
+            public int getDimension() {
+                return 2;
+            }
+
+            @Override
+            public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+                evaluations.incrementAndGet();
+                ydot[0] = y[1];
+                ydot[1] = -y[0];
+            }
+        };
+    }
+
+    @Test
+    void evaluation_budget_returns_the_last_step() {
+        AtomicInteger evaluations = new AtomicInteger();
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-10, 12, 5);
+        lsoda.setMaxEvaluations(500);
+        assertEquals(500, lsoda.getMaxEvaluations());
+        double[] y = new double[2];
+        double t = lsoda.integrate(oscillator(evaluations), 0, new double[]{1, 0}, 100, y);
+
+        assertEquals(LSODA.Interruption.EVALUATIONS, lsoda.getInterruption());
+        assertTrue(t > 0 && t < 100);
+        assertEquals(lsoda.tn, t);
+        assertEquals(2, lsoda.istate);
+        assertTrue(lsoda.getEvaluations() >= 500 && lsoda.getEvaluations() < 520);
+        assertEquals(Math.cos(t), y[0], 1.0e-8);
+        assertEquals(-Math.sin(t), y[1], 1.0e-8);
+        // the partial state is the last point recorded
+        Trajectory trajectory = lsoda.getTrajectory();
+        assertEquals(t, trajectory.getTime(trajectory.size() - 1));
+
+        lsoda.setMaxEvaluations(-1);
+        lsoda.integrate(oscillator(evaluations), 0, new double[]{1, 0}, 10, y);
+        assertNull(lsoda.getInterruption());
+    }
+
+    @Test
+    void an_interrupted_integration_goes_on_as_if_uninterrupted() {
+        double[] rtol = {0, 1.0e-10}, atol = {0, 1.0e-10};
+        LSODA whole = new LSODA(0, 0, 1.0e-10, 1.0e-10, 12, 5);
+        whole.ode = oscillator(new AtomicInteger());
+        whole.lsoda(2, new double[]{1, 0}, 0, 50, 1, rtol, atol, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+        LSODA parts = new LSODA(0, 0, 1.0e-10, 1.0e-10, 12, 5);
+        parts.ode = oscillator(new AtomicInteger());
+        parts.setMaxEvaluations(300);
+        double[] y = {1, 0};
+        int calls = 0, istate = 1;
+        do {
+            parts.lsoda(2, y, 0, 50, 1, rtol, atol, 1, istate, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+            istate = parts.istate;
+            calls++;
+        } while (parts.getInterruption() != null);
+        assertTrue(calls > 2);
+        assertArrayEquals(whole.y, parts.y);
+        assertEquals(whole.getStepsTaken(), parts.getStepsTaken());
+        assertEquals(whole.getEvaluations(), parts.getEvaluations());
+    }
+
+    @Test
+    void deadline_and_cancellation_stop_runaway_integrations() throws Exception {
+        AtomicInteger evaluations = new AtomicInteger();
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-10, 12, 5);
+        long start = System.nanoTime();
+        lsoda.setDeadline(start + TimeUnit.MILLISECONDS.toNanos(50));
+        double[] y = new double[2];
+        double t = lsoda.integrate(oscillator(evaluations), 0, new double[]{1, 0}, 1.0e9, y);
+        assertEquals(LSODA.Interruption.DEADLINE, lsoda.getInterruption());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        assertTrue(t > 0 && t < 1.0e9);
+        assertEquals(Math.cos(t), y[0], 1.0e-4);
+
+        // a deadline already past stops before the first step, with the initial state
+        lsoda.setDeadline(System.nanoTime() - 1);
+        assertEquals(0, lsoda.integrate(oscillator(evaluations), 0, new double[]{1, 0}, 1, y));
+        assertArrayEquals(new double[]{1, 0}, y);
+        assertEquals(LSODA.Interruption.DEADLINE, lsoda.getInterruption());
+        lsoda.clearDeadline();
+        // with nothing to go on from, the next call starts afresh with the istate returned
+        assertEquals(1, lsoda.istate);
+        double[] rtol = {0, 1.0e-10}, atol = {0, 1.0e-10};
+        lsoda.lsoda(2, new double[]{1, 0}, 0, 1, 1, rtol, atol, 1, lsoda.istate, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+        assertNull(lsoda.getInterruption());
+        assertEquals(Math.cos(1), lsoda.y[1], 1.0e-8);
+
+        CancellationToken token = new CancellationToken();
+        lsoda.setCancellationToken(token);
+        FirstOrderDifferentialEquations oscillator = oscillator(evaluations);
+        Thread canceller = new Thread(() -> {
+            while (evaluations.get() < 10000)
+                Thread.yield();
+            token.cancel();
+        });
+        evaluations.set(0);
+        canceller.start();
+        t = lsoda.integrate(oscillator, 0, new double[]{1, 0}, 1.0e9, y);
+        canceller.join();
+        assertTrue(token.isCancelled());
+        assertEquals(LSODA.Interruption.CANCELLED, lsoda.getInterruption());
+        assertTrue(t < 1.0e9);
+        assertEquals(Math.cos(t), y[0], 1.0e-4);
+    }
+
+    @Test
+    void async_deadline_completes_with_a_partial_result() throws Exception {
+        AsyncIntegrator async = new AsyncIntegrator(new LSODAConfig(0, 0, 1.0e-10, 1.0e-10, 12, 5));
+        AsyncIntegrator.Result result = async.integrate(oscillator(new AtomicInteger()), 0, new double[]{1, 0}, 1.0e9,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50)).get(30, TimeUnit.SECONDS);
+        assertEquals(LSODA.Interruption.DEADLINE, result.getInterruption());
+        assertTrue(result.getTime() < 1.0e9);
+        assertEquals(Math.cos(result.getTime()), result.getState()[0], 1.0e-4);
+
+        result = async.integrate(oscillator(new AtomicInteger()), 0, new double[]{1, 0}, 1).get(30, TimeUnit.SECONDS);
+        assertNull(result.getInterruption());
+        assertEquals(1, result.getTime());
+    }
+}
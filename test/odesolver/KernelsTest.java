@@ -0,0 +1,134 @@
+package odesolver;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KernelsTest {
+    private final Kernels scalar = new ScalarKernels();
+    private final Kernels kernels = Kernels.INSTANCE;
+
+    private double[] random(Random random, int n) {
+        double[] v = new double[n];
+        for (int i = 0; i < n; i++)
+            v[i] = random.nextDouble() - 0.3;
+        return v;
+    }
+
+    @Test
+    void kernels_agree_with_the_scalar_loops() {
+        Random random = new Random(3);
+        for (int n : new int[]{0, 1, 3, 4, 5, 7, 8, 16, 17, 31, 100, 1001}) {
+            double[] x = random(random, n + 2), y = random(random, n + 3);
+            double[] w = random(random, n + 1);
+            for (int i = 0; i < w.length; i++)
+                w[i] = Math.abs(w[i]) + 0.1;
+
+            double dot = scalar.dot(n, x, 2, y, 1);
+            assertEquals(dot, kernels.dot(n, x, 2, y, 1), 1e-13 * Math.max(1, Math.abs(dot)));
+            assertEquals(scalar.maxNorm(n, x, 1, w, 0), kernels.maxNorm(n, x, 1, w, 0));
+            double sum = scalar.rowNorm(n, y, 3, w, 1);
+            assertEquals(sum, kernels.rowNorm(n, y, 3, w, 1), 1e-13 * Math.max(1, sum));
+
+            double[] x1 = x.clone(), x2 = x.clone();
+            scalar.scal(n, -1.7, x1, 1);
+            kernels.scal(n, -1.7, x2, 1);
+            assertArrayEquals(x1, x2);
+
+            double[] y1 = y.clone(), y2 = y.clone();
+            scalar.axpy(n, 0.3, x, 2, y1, 3);
+            kernels.axpy(n, 0.3, x, 2, y2, 3);
+            assertArrayEquals(y1, y2);
+
+            // axpy4 adds from left to right, as four axpy calls do
+            double[] x4 = random(random, 4 * n + 1);
+            double[] y3 = y.clone(), y4 = y.clone(), c = {-0.2, -0.1, 0.7, 0.1};
+            for (int k = 0; k < 4; k++)
+                scalar.axpy(n, c[k], x4, k * n + 1, y3, 3);
+            kernels.axpy4(n, c[0], c[1], c[2], c[3], x4, 1, n + 1, 2 * n + 1, 3 * n + 1, y4, 3);
+            assertArrayEquals(y3, y4);
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void kernel_throughput() {
+        Random random = new Random(5);
+        int n = 1000, runs = 20000;
+        double[] x = random(random, n), y = random(random, n), w = random(random, n);
+        for (int i = 0; i < n; i++)
+            w[i] = Math.abs(w[i]) + 0.1;
+
+        for (Kernels k : new Kernels[]{scalar, kernels}) {
+            double sink = 0;
+            long[] elapsed = new long[5];
+            for (int rep = 0; rep < 2; rep++) {
+                long start = System.nanoTime();
+                for (int r = 0; r < runs; r++)
+                    sink += k.dot(n, x, 0, y, 0);
+                elapsed[0] = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int r = 0; r < runs; r++)
+                    k.axpy(n, 1e-9, x, 0, y, 0);
+                elapsed[1] = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int r = 0; r < runs; r++)
+                    k.scal(n, 1.0, x, 0);
+                elapsed[2] = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int r = 0; r < runs; r++)
+                    sink += k.maxNorm(n, x, 0, w, 0);
+                elapsed[3] = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int r = 0; r < runs; r++)
+                    sink += k.rowNorm(n, x, 0, w, 0);
+                elapsed[4] = System.nanoTime() - start;
+            }
+            assertFalse(Double.isNaN(sink));
+            System.out.printf("%s, n = %d: dot %.3f us, axpy %.3f us, scal %.3f us, vmnorm %.3f us, fnorm row %.3f us\n",
+                    k.getClass().getSimpleName(), n, elapsed[0] / 1e3 / runs, elapsed[1] / 1e3 / runs,
+                    elapsed[2] / 1e3 / runs, elapsed[3] / 1e3 / runs, elapsed[4] / 1e3 / runs);
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void stiff_integration_throughput() {
+        // dense 1-D reaction-diffusion, where the LU and solves dominate
+        int n = 300;
+        FirstOrderDifferentialEquations ode = new FirstOrderDifferentialEquations() {
+            @Override
+            public int getDimension() {
+                return n;
+            }
+
+            @Override
+            public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+                for (int i = 0; i < n; i++) {
+                    double left = (i == 0) ? 1.0 : y[i - 1];
+                    double right = (i == n - 1) ? 0.0 : y[i + 1];
+                    ydot[i] = 1.0e3 * (left - 2 * y[i] + right) - 10 * y[i] * y[i];
+                }
+            }
+        };
+        double[] result = new double[n];
+        long elapsed = 0;
+        LSODA lsoda = null;
+        // the first runs warm up the JIT
+        for (int rep = 0; rep < 5; rep++) {
+            lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+            long start = System.nanoTime();
+            lsoda.integrate(ode, 0, new double[n], 1.0, result);
+            elapsed = System.nanoTime() - start;
+        }
+        assertTrue(result[0] > result[n - 1]);
+        System.out.printf("%s, stiff integration n = %d: %d steps, %d Jacobians, %.1f ms\n",
+                kernels.getClass().getSimpleName(), n, lsoda.getStepsTaken(), lsoda.getJacobianEvaluations(), elapsed / 1e6);
+    }
+}
@@ -0,0 +1,190 @@
+package odesolver;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KrylovJacobianTest {
+    private static final double D = 1.0, K = 10;
+
+    /*
+     * 2-D reaction-diffusion on an m x m grid of the unit square, held at 1
+     * on the left edge: y' = D*laplacian(y) - K*y^2
+     */
+    private FirstOrderDifferentialEquations reactionDiffusion2D(int m) {
+        double c = D * (m + 1) * (m + 1);
+        return new FirstOrderDifferentialEquations() {
+            @Override
+            public int getDimension() {
+                return m * m;
+            }
+
+            @Override
+            public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+                for (int i = 0; i < m; i++)
+                    for (int j = 0; j < m; j++) {
+                        int p = i * m + j;
+                        double left = (j == 0) ? 1.0 : y[p - 1];
+                        double right = (j == m - 1) ? 0.0 : y[p + 1];
+                        double down = (i == 0) ? 0.0 : y[p - m];
+                        double up = (i == m - 1) ? 0.0 : y[p + m];
+                        ydot[p] = c * (left + right + down + up - 4 * y[p]) - K * y[p] * y[p];
+                    }
+            }
+        };
+    }
+
+    private SparsityPattern fivePoint(int m) {
+        int[][] deps = new int[m * m][];
+        for (int i = 0; i < m; i++)
+            for (int j = 0; j < m; j++) {
+                int p = i * m + j;
+                deps[p] = new int[]{p, j > 0 ? p - 1 : p, j < m - 1 ? p + 1 : p,
+                        i > 0 ? p - m : p, i < m - 1 ? p + m : p};
+            }
+        return SparsityPattern.of(deps);
+    }
+
+    // P = I - hl0*J restricted to the couplings along each grid row, which
+    // are tridiagonal and solved by the Thomas algorithm
+    private Preconditioner lines(int m) {
+        double c = D * (m + 1) * (m + 1);
+        double[] sub = new double[m];
+        return new Preconditioner() {
+            @Override
+            public int setup(double t, double[] y, double[] f, double hl0) {
+                return 0;
+            }
+
+            @Override
+            public void solve(double t, double[] y, double[] f, double hl0, double[] z) {
+                double off = -hl0 * c;
+                for (int i = 0; i < m; i++) {
+                    int p0 = i * m;
+                    double diag = 1 + hl0 * (4 * c + 2 * K * y[p0]);
+                    z[p0] /= diag;
+                    sub[0] = off / diag;
+                    for (int j = 1; j < m; j++) {
+                        diag = 1 + hl0 * (4 * c + 2 * K * y[p0 + j]) - off * sub[j - 1];
+                        z[p0 + j] = (z[p0 + j] - off * z[p0 + j - 1]) / diag;
+                        sub[j] = off / diag;
+                    }
+                    for (int j = m - 2; j >= 0; j--)
+                        z[p0 + j] -= sub[j] * z[p0 + j + 1];
+                }
+            }
+        };
+    }
+
+    @Test
+    void gmres_solves_a_small_system() {
+        int n = 30;
+        Random random = new Random(7);
+        double[] a = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++)
+                a[i * n + j] = (random.nextDouble() - 0.5) / n;
+            a[i * n + i] += 1.0;
+        }
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++)
+            x[i] = random.nextDouble();
+        double[] b = new double[n];
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j < n; j++)
+                b[i] += a[i * n + j] * x[j];
+
+        KrylovSolver gmres = new KrylovSolver(n, 5, 10);
+        int flag = gmres.solve((v, av) -> {
+            double[] u = v.clone();
+            for (int i = 0; i < n; i++) {
+                av[i] = 0;
+                for (int j = 0; j < n; j++)
+                    av[i] += a[i * n + j] * u[j];
+            }
+        }, b, 1.0e-12);
+        assertEquals(0, flag);
+        assertArrayEquals(x, b, 1.0e-10);
+        assertTrue(gmres.getIterations() > 5);   // took a restart
+    }
+
+    @Test
+    void matrix_free_agrees_with_sparse() {
+        int m = 16, n = m * m;
+        FirstOrderDifferentialEquations ode = reactionDiffusion2D(m);
+        double[] sparse = new double[n], free = new double[n], preconditioned = new double[n];
+
+        LSODA lsoda = new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5, fivePoint(m));
+        lsoda.integrate(ode, 0, new double[n], 0.5, sparse);
+        LSODA matrixFree = new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5, null, null);
+        matrixFree.integrate(ode, 0, new double[n], 0.5, free);
+        LSODA withLines = new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5, null, lines(m));
+        withLines.integrate(ode, 0, new double[n], 0.5, preconditioned);
+
+        for (int i = 0; i < n; i++) {
+            assertEquals(sparse[i], free[i], 1.0e-4 * Math.abs(sparse[i]) + 1.0e-6);
+            assertEquals(sparse[i], preconditioned[i], 1.0e-4 * Math.abs(sparse[i]) + 1.0e-6);
+        }
+        assertTrue(free[0] > free[m - 1]);
+        assertTrue(matrixFree.getLinearIterations() > 0);
+        assertTrue(withLines.getLinearIterations() < matrixFree.getLinearIterations());
+    }
+
+    @Test
+    void left_and_right_preconditioners_are_called() {
+        int m = 8, n = m * m;
+        int[] calls = new int[4];
+        Preconditioner lines = lines(m);
+        Preconditioner counting = new Preconditioner() {
+            @Override
+            public int setup(double t, double[] y, double[] f, double hl0) {
+                calls[0]++;
+                return lines.setup(t, y, f, hl0);
+            }
+
+            @Override
+            public void solve(double t, double[] y, double[] f, double hl0, double[] z) {
+                calls[1]++;
+            }
+        };
+        Preconditioner countingLeft = new Preconditioner() {
+            @Override
+            public int setup(double t, double[] y, double[] f, double hl0) {
+                calls[2]++;
+                return 0;
+            }
+
+            @Override
+            public void solve(double t, double[] y, double[] f, double hl0, double[] z) {
+                calls[3]++;
+                lines.solve(t, y, f, hl0, z);
+            }
+        };
+        double[] result = new double[n];
+        LSODA lsoda = new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5, countingLeft, counting);
+        lsoda.integrate(reactionDiffusion2D(m), 0, new double[n], 0.5, result);
+        assertEquals(lsoda.getJacobianEvaluations(), calls[0]);
+        assertEquals(calls[0], calls[2]);
+        assertTrue(calls[1] > lsoda.getLinearIterations());
+        assertTrue(calls[3] > lsoda.getLinearIterations());
+        assertTrue(result[0] > result[m - 1]);
+    }
+
+    @Test
+    void matrix_free_handles_a_large_grid() {
+        // n = 10^4: a dense iteration matrix would need 800 MB
+        int m = 100, n = m * m;
+        double[] result = new double[n];
+        LSODA lsoda = new LSODA(0, 0, 1.0e-6, 1.0e-4, 12, 5, null, lines(m));
+        lsoda.integrate(reactionDiffusion2D(m), 0, new double[n], 0.1, result);
+        for (int i = 0; i < m; i++)
+            assertTrue(result[i * m] > result[i * m + m - 1]);
+        for (double v : result)
+            assertTrue(v > -1.0e-3 && v < 1.0 + 1.0e-3);
+    }
+}
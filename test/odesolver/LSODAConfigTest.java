@@ -0,0 +1,116 @@
+package odesolver;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LSODAConfigTest {
+
+    private static double k1(int member) {
+        return 0.04 * (1 + 0.01 * member);
+    }
+
+    @Test
+    void concurrent_integrations_match_sequential_ones() throws Exception {
+        int members = 64;
+        LSODAConfig config = new LSODAConfig(0, 0, 1.0e-8, 1.0e-6, 12, 5);
+        double[][] sequential = new double[members][3];
+        for (int i = 0; i < members; i++)
+            new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5).integrate(new Robertson(k1(i)), 0, new double[]{1, 0, 0}, 4e5, sequential[i]);
+
+        double[][] concurrent = new double[members][3];
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < members; i++) {
+                int member = i;
+                futures.add(executor.submit(() ->
+                        config.integrate(new Robertson(k1(member)), 0, new double[]{1, 0, 0}, 4e5, concurrent[member])));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+        for (int i = 0; i < members; i++)
+            assertArrayEquals(sequential[i], concurrent[i]);
+    }
+
+    @Test
+    void workspaces_carry_the_configuration() {
+        LSODAConfig config = new LSODAConfig(0, 0, 1.0e-8, 1.0e-6, 12, 5, 1, 1)
+                .withRetention(RetentionPolicy.lastN(4));
+        LSODA workspace = config.newWorkspace();
+        double[] banded = new double[3], full = new double[3];
+        workspace.integrate(new Robertson(0.04), 0, new double[]{1, 0, 0}, 40, banded);
+        new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5, 1, 1).integrate(new Robertson(0.04), 0, new double[]{1, 0, 0}, 40, full);
+        assertArrayEquals(full, banded);
+        assertTrue(workspace.getSolverInUse() instanceof BandLU);
+        assertEquals(4, workspace.getTrajectory().size());
+        assertNotSame(workspace, config.newWorkspace());
+        assertEquals(1.0e-8, config.getAbsoluteTolerance());
+        assertEquals(5, config.getMaxOrderStiff());
+    }
+
+    @Test
+    void pooled_workspaces_take_any_ode_and_keep_no_trajectory() {
+        LSODAConfig config = new LSODAConfig(0, 0, 1.0e-8, 1.0e-6, 12, 5);
+        FirstOrderDifferentialEquations withJacobian = new Robertson.WithMainStateJacobian();
+        double[] pooled = new double[3], single = new double[3];
+        for (FirstOrderDifferentialEquations ode : new FirstOrderDifferentialEquations[]{withJacobian, new Robertson(0.04), withJacobian}) {
+            config.integrate(ode, 0, new double[]{1, 0, 0}, 40, pooled);
+            new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5).integrate(ode, 0, new double[]{1, 0, 0}, 40, single);
+            assertArrayEquals(single, pooled);
+        }
+
+        LSODA lsoda = config.acquire();
+        try {
+            assertEquals(0, lsoda.getTrajectory().size());
+            assertTrue(lsoda.getTrajectory().getOffered() > 0);
+        } finally {
+            config.release(lsoda);
+        }
+    }
+
+    @Test
+    void an_ode_may_integrate_with_the_same_configuration() {
+        LSODAConfig config = new LSODAConfig(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+        // y' = -y z(t), z(t) = integral of 1 over [0, t] computed by a nested integration
+        FirstOrderDifferentialEquations outer = new FirstOrderDifferentialEquations() {
+            @Override
+            public int getDimension() {
+                return 1;
+            }
+
+            @Override
+            public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+                double[] z = new double[1];
+                if (t > 0)
+                    config.integrate(new FirstOrderDifferentialEquations() {
+                        @Override
+                        public int getDimension() {
+                            return 1;
+                        }
+
+                        @Override
+                        public void computeDerivatives(double s, double[] x, double[] xdot) {
+                            xdot[0] = 1;
+                        }
+                    }, 0, new double[1], t, z);
+                ydot[0] = -y[0] * z[0];
+            }
+        };
+        double[] y = new double[1];
+        config.integrate(outer, 0, new double[]{1}, 1, y);
+        assertEquals(Math.exp(-0.5), y[0], 1.0e-6);
+    }
+}
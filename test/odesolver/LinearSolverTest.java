@@ -0,0 +1,179 @@
+package odesolver;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.DecompositionSolver;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LinearSolverTest {
+
+    private FirstOrderDifferentialEquations reactionDiffusion(int n) {
+        return new FirstOrderDifferentialEquations() {
+            @Override
+            public int getDimension() {
+                return n;
+            }
+
+            @Override
+            public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+                for (int i = 0; i < n; i++) {
+                    double left = (i == 0) ? 1.0 : y[i - 1];
+                    double right = (i == n - 1) ? 0.0 : y[i + 1];
+                    ydot[i] = 1.0e3 * (left - 2 * y[i] + right) - 10 * y[i] * y[i];
+                }
+            }
+        };
+    }
+
+    // forwards to another solver, counting the calls of each phase
+    private static class Counting implements LinearSolver {
+        final LinearSolver solver;
+        int setups, norms, factors, solves;
+
+        Counting(LinearSolver solver) {
+            this.solver = solver;
+        }
+
+        @Override
+        public int setup(int n) {
+            setups++;
+            return solver.setup(n);
+        }
+
+        @Override
+        public double norm(double[] a, double[] w) {
+            norms++;
+            return solver.norm(a, w);
+        }
+
+        @Override
+        public int factor(double[] a) {
+            factors++;
+            return solver.factor(a);
+        }
+
+        @Override
+        public void solve(double[] a, double[] b, int boff) {
+            solves++;
+            solver.solve(a, b, boff);
+        }
+    }
+
+    // a dense back end on the LU decomposition of commons-math
+    private static class CommonsMathLU implements LinearSolver {
+        int n;
+        DecompositionSolver lu;
+
+        @Override
+        public int setup(int n) {
+            this.n = n;
+            return n * n;
+        }
+
+        @Override
+        public double norm(double[] a, double[] w) {
+            return SupportingFunctions.fnorm(n, a, n, w, 0);
+        }
+
+        @Override
+        public int factor(double[] a) {
+            RealMatrix p = new Array2DRowRealMatrix(n, n);
+            for (int i = 0; i < n; i++)
+                for (int j = 0; j < n; j++)
+                    p.setEntry(i, j, a[i * n + j]);
+            lu = new LUDecomposition(p).getSolver();
+            return lu.isNonSingular() ? 0 : 1;
+        }
+
+        @Override
+        public void solve(double[] a, double[] b, int boff) {
+            RealVector x = lu.solve(new ArrayRealVector(b, boff, n));
+            for (int i = 0; i < n; i++)
+                b[boff + i] = x.getEntry(i);
+        }
+    }
+
+    @Test
+    void default_solvers_are_used_through_the_interface() {
+        int n = 40;
+        FirstOrderDifferentialEquations ode = reactionDiffusion(n);
+        double[] plain = new double[n], counted = new double[n];
+        double[] band = new double[n], countedBand = new double[n];
+
+        new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5).integrate(ode, 0, new double[n], 1.0, plain);
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+        Counting dense = new Counting(new DenseLU());
+        lsoda.setLinearSolver(dense);
+        lsoda.integrate(ode, 0, new double[n], 1.0, counted);
+        assertArrayEquals(plain, counted);
+        assertEquals(1, dense.setups);
+        assertEquals(lsoda.getJacobianEvaluations(), dense.factors);
+        assertEquals(dense.factors, dense.norms);
+        assertTrue(dense.solves >= dense.factors);
+
+        new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5, 1, 1).integrate(ode, 0, new double[n], 1.0, band);
+        LSODA banded = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5, 1, 1);
+        Counting bandLU = new Counting(new BandLU(1, 1));
+        banded.setLinearSolver(bandLU);
+        banded.integrate(ode, 0, new double[n], 1.0, countedBand);
+        assertArrayEquals(band, countedBand);
+        assertEquals(banded.getJacobianEvaluations(), bandLU.factors);
+    }
+
+    @Test
+    void a_custom_dense_solver_can_be_plugged_in() {
+        int n = 40;
+        FirstOrderDifferentialEquations ode = reactionDiffusion(n);
+        double[] linpack = new double[n], commons = new double[n];
+
+        new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5).integrate(ode, 0, new double[n], 1.0, linpack);
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+        lsoda.setLinearSolver(new CommonsMathLU());
+        lsoda.integrate(ode, 0, new double[n], 1.0, commons);
+        for (int i = 0; i < n; i++)
+            assertEquals(linpack[i], commons[i], 1.0e-6 * Math.abs(linpack[i]) + 1.0e-9);
+    }
+
+    @Test
+    void dense_and_band_solvers_agree() {
+        int n = 6;
+        double[] dense = new double[new DenseLU().setup(n)];
+        BandLU band = new BandLU(1, 2);
+        int lda = 2 * 1 + 2 + 1;
+        double[] abd = new double[band.setup(n)];
+        assertEquals(lda * n, abd.length);
+        for (int i = 0; i < n; i++)
+            for (int j = Math.max(0, i - 1); j <= Math.min(n - 1, i + 2); j++) {
+                double v = (i == j) ? 4.0 : 1.0 / (1 + i + 2 * j);
+                dense[i * n + j] = v;
+                abd[j * lda + 1 + 2 + i - j] = v;
+            }
+        double[] w = {1, 2, 3, 4, 5, 6};
+        DenseLU lu = new DenseLU();
+        lu.setup(n);
+        assertEquals(lu.norm(dense, w), band.norm(abd, w), 1.0e-14);
+
+        assertEquals(0, lu.factor(dense));
+        assertEquals(0, band.factor(abd));
+        double[] x = {1, -2, 3, -4, 5, -6}, y = x.clone();
+        lu.solve(dense, x, 0);
+        band.solve(abd, y, 0);
+        assertArrayEquals(x, y, 1.0e-14);
+    }
+
+    @Test
+    void sparse_solver_checks_the_dimension() {
+        SparsityPattern pattern = SparsityPattern.of(new int[][]{{0, 1}, {1}, {2}});
+        SparseLU lu = new SparseLU(pattern);
+        assertEquals(4, lu.setup(3));
+        assertThrows(IllegalArgumentException.class, () -> lu.setup(4));
+    }
+}
@@ -0,0 +1,166 @@
+package odesolver;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LockstepEnsembleTest {
+
+    // Robertson's problem with the rate constant of the first reaction of each lane in k1
+    private static LockstepSystem robertson(double[] k1) {
+        return new LockstepSystem() {
+            @Override
+            public int getDimension() {
+                return 3;
+            }
+
+            @Override
+            public void computeDerivatives(double[] t, double[] y, double[] ydot, int lanes) {
+                for (int k = 0; k < lanes; k++) {
+                    double y1 = y[k], y2 = y[lanes + k], y3 = y[2 * lanes + k];
+                    double d1 = 1.0e4 * y2 * y3 - k1[k] * y1, d3 = 3.0e7 * y2 * y2;
+                    ydot[k] = d1;
+                    ydot[2 * lanes + k] = d3;
+                    ydot[lanes + k] = -1.0 * (d1 + d3);
+                }
+            }
+        };
+    }
+
+    private static double[] rates(int lanes) {
+        double[] k1 = new double[lanes];
+        for (int k = 0; k < lanes; k++)
+            k1[k] = 0.04 * (1 + 0.5 * k / lanes);
+        return k1;
+    }
+
+    private static double[] start(int lanes) {
+        double[] y0 = new double[3 * lanes];
+        for (int k = 0; k < lanes; k++)
+            y0[k] = 1;
+        return y0;
+    }
+
+    @Test
+    void lanes_agree_with_lsoda() {
+        int lanes = 64;
+        double[] k1 = rates(lanes), tout = new double[lanes];
+        for (int k = 0; k < lanes; k++)
+            tout[k] = 0.4 * Math.pow(10, k % 7);
+        double[] y = start(lanes);
+        LockstepEnsemble ensemble = new LockstepEnsemble(new LSODAConfig(0, 0, 1.0e-8, 1.0e-6, 12, 5), lanes);
+        ensemble.integrate(robertson(k1), 0, y, tout, y);
+
+        double[] single = new double[3];
+        for (int k = 0; k < lanes; k++) {
+            assertEquals(2, ensemble.getStatus(k));
+            LSODA lsoda = new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5);
+            lsoda.integrate(new Robertson(k1[k]), 0, new double[]{1, 0, 0}, tout[k], single);
+            for (int i = 0; i < 3; i++)
+                assertEquals(single[i], y[i * lanes + k], 1.0e-4 * Math.abs(single[i]) + 1.0e-7);
+            assertEquals(lsoda.getMethodUsed(), ensemble.getMethodUsed(k));
+            assertTrue(ensemble.getStepsTaken(k) > 0);
+            assertTrue(ensemble.getEvaluations(k) > ensemble.getStepsTaken(k));
+        }
+        // the stiff lanes formed Jacobians
+        assertEquals(2, ensemble.getMethodUsed(lanes - 1));
+        assertTrue(ensemble.getJacobianEvaluations(lanes - 1) > 0);
+    }
+
+    @Test
+    void oscillators_stay_with_adams() {
+        // y'' = -w^2 y for a different w in each lane
+        int lanes = 16;
+        double[] w = new double[lanes], tout = new double[lanes], y = new double[2 * lanes];
+        for (int k = 0; k < lanes; k++) {
+            w[k] = 1 + 0.1 * k;
+            tout[k] = 10;
+            y[k] = 1;
+        }
+        LockstepSystem oscillators = new LockstepSystem() {
+            @Override
+            public int getDimension() {
+                return 2;
+            }
+
+            @Override
+            public void computeDerivatives(double[] t, double[] x, double[] xdot, int lanes) {
+                for (int k = 0; k < lanes; k++) {
+                    xdot[k] = x[lanes + k];
+                    xdot[lanes + k] = -w[k] * w[k] * x[k];
+                }
+            }
+        };
+        LockstepEnsemble ensemble = new LockstepEnsemble(new LSODAConfig(0, 0, 1.0e-10, 1.0e-10, 12, 5), lanes);
+        ensemble.integrate(oscillators, 0, y, tout, y);
+        for (int k = 0; k < lanes; k++) {
+            assertEquals(2, ensemble.getStatus(k));
+            assertEquals(1, ensemble.getMethodUsed(k));
+            assertEquals(0, ensemble.getJacobianEvaluations(k));
+            assertEquals(Math.cos(w[k] * 10), y[k], 1.0e-7);
+            assertEquals(-w[k] * Math.sin(w[k] * 10), y[lanes + k], 1.0e-7);
+        }
+    }
+
+    @Test
+    void a_failing_lane_does_not_stop_the_others() {
+        int lanes = 8;
+        double[] k1 = rates(lanes), tout = new double[lanes];
+        Arrays.fill(tout, 40);
+        k1[3] = Double.NaN;
+        double[] y0 = start(lanes), y = new double[3 * lanes];
+        LockstepEnsemble ensemble = new LockstepEnsemble(new LSODAConfig(0, 0, 1.0e-8, 1.0e-6, 12, 5), lanes);
+        ensemble.integrate(robertson(k1), 0, y0, tout, y);
+        for (int k = 0; k < lanes; k++) {
+            if (k == 3) {
+                assertTrue(ensemble.getStatus(k) < 0);
+                assertTrue(Double.isNaN(y[k]));
+            } else {
+                assertEquals(2, ensemble.getStatus(k));
+                assertEquals(1.0, y[k] + y[lanes + k] + y[2 * lanes + k], 1.0e-6);
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> new LockstepEnsemble(
+                new LSODAConfig(0, 0, 1.0e-8, 1.0e-6, 12, 5, 1, 1), lanes));
+        assertThrows(IllegalArgumentException.class, () -> ensemble.integrate(robertson(k1), 0, new double[3], tout, y));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void lockstep_throughput() {
+        int members = 8192, lanes = 64;
+        double[] k1 = rates(members), tout = new double[members];
+        Arrays.fill(tout, 40);
+        LSODAConfig config = new LSODAConfig(0, 0, 1.0e-8, 1.0e-6, 12, 5);
+        long scalar = 0, lockstep = 0;
+        double[] result = new double[3 * members];
+        for (int rep = 0; rep < 3; rep++) {
+            long start = System.nanoTime();
+            double[] y0 = new double[3 * members];
+            for (int i = 0; i < members; i++)
+                y0[3 * i] = 1;
+            Ensemble.Statistics statistics = new Ensemble.Statistics(members);
+            new Ensemble(config, new ForkJoinPool(1)).integrate((p, off) -> new Robertson(p[off]), 3, 0, y0,
+                    k1, 1, tout, result, statistics);
+            scalar = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            LockstepEnsemble ensemble = new LockstepEnsemble(config, lanes);
+            double[] k = new double[lanes], y = new double[3 * lanes], t = new double[lanes];
+            Arrays.fill(t, 40);
+            for (int b = 0; b < members; b += lanes) {
+                System.arraycopy(k1, b, k, 0, lanes);
+                Arrays.fill(y, 0);
+                Arrays.fill(y, 0, lanes, 1);
+                ensemble.integrate(robertson(k), 0, y, t, y);
+            }
+            lockstep = System.nanoTime() - start;
+        }
+        System.out.printf("Lockstep ensemble of %d Robertson members, %d lanes: one by one %.1f ms, lockstep %.1f ms\n",
+                members, lanes, scalar / 1e6, lockstep / 1e6);
+    }
+}
@@ -0,0 +1,146 @@
+package odesolver;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MixedPrecisionTest {
+
+    private FirstOrderDifferentialEquations reactionDiffusion(int n) {
+        return new FirstOrderDifferentialEquations() {
+            @Override
+            public int getDimension() {
+                return n;
+            }
+
+            @Override
+            public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+                for (int i = 0; i < n; i++) {
+                    double left = (i == 0) ? 1.0 : y[i - 1];
+                    double right = (i == n - 1) ? 0.0 : y[i + 1];
+                    ydot[i] = 1.0e3 * (left - 2 * y[i] + right) - 10 * y[i] * y[i];
+                }
+            }
+        };
+    }
+
+    @Test
+    void refinement_recovers_double_accuracy() {
+        int n = 200;
+        Random random = new Random(8);
+        double[] p = new double[n * n];
+        for (int i = 0; i < n * n; i++)
+            p[i] = random.nextDouble() - 0.5;
+        for (int i = 0; i < n; i++)
+            p[i * n + i] += 10;
+        double[] x = new double[n], b = new double[n];
+        for (int i = 0; i < n; i++)
+            x[i] = random.nextDouble();
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j < n; j++)
+                b[i] += p[i * n + j] * x[j];
+
+        for (int refinements = 1; refinements <= 2; refinements++) {
+            MixedPrecisionLU lu = new MixedPrecisionLU(refinements);
+            assertEquals(n * n, lu.setup(n));
+            double[] a = p.clone(), y = b.clone();
+            assertEquals(0, lu.factor(a));
+            assertArrayEquals(p, a);  // P is kept for the residuals
+            lu.solve(a, y, 0);
+            assertArrayEquals(x, y, refinements == 1 ? 1.0e-10 : 1.0e-13);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new MixedPrecisionLU(3));
+    }
+
+    @Test
+    void mixed_precision_integration_agrees() {
+        int n = 300;
+        FirstOrderDifferentialEquations ode = reactionDiffusion(n);
+        double[] full = new double[n], mixed = new double[n];
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+        lsoda.integrate(ode, 0, new double[n], 1.0, full);
+        LSODA single = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+        single.setMixedPrecision(true);
+        single.integrate(ode, 0, new double[n], 1.0, mixed);
+
+        for (int i = 0; i < n; i++)
+            assertEquals(full[i], mixed[i], 1.0e-6 * Math.abs(full[i]) + 1.0e-9);
+        assertTrue(single.getSolverInUse() instanceof MixedPrecisionLU);
+    }
+
+    @Test
+    void falls_back_to_double_out_of_float_range() {
+        // df_0/dy_1 = 1e45 is beyond the range of float; y_1 stays 0
+        FirstOrderDifferentialEquations ode = new FirstOrderDifferentialEquations() {
+            @Override
+            public int getDimension() {
+                return 2;
+            }
+
+            @Override
+            public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+                ydot[0] = -y[0] + 1.0e45 * y[1];
+                ydot[1] = -1.0e3 * y[1];
+            }
+        };
+        double[] full = new double[2], mixed = new double[2];
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+        lsoda.integrate(ode, 0, new double[]{1, 0}, 100, full);
+        LSODA single = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+        single.setMixedPrecision(true);
+        single.integrate(ode, 0, new double[]{1, 0}, 100, mixed);
+
+        assertTrue(single.getJacobianEvaluations() > 0);
+        assertTrue(single.getSolverInUse() instanceof DenseLU);
+        // the first single precision matrix was factored again in double
+        assertArrayEquals(full, mixed);
+        assertEquals(lsoda.getStepsTaken(), single.getStepsTaken());
+    }
+
+    @Test
+    void falls_back_to_double_with_a_given_mixed_precision_solver() {
+        // Robertson's problem at tight tolerances, whose corrector stalls under float factors
+        FirstOrderDifferentialEquations ode = new Robertson();
+        double[] mixed = new double[3], given = new double[3];
+        LSODA single = new LSODA(0, 0, 1.0e-12, 1.0e-10, 12, 5);
+        single.setMixedPrecision(true);
+        single.integrate(ode, 0, new double[]{1, 0, 0}, 4.0e10, mixed);
+
+        LSODA lsoda = new LSODA(0, 0, 1.0e-12, 1.0e-10, 12, 5);
+        lsoda.setLinearSolver(new MixedPrecisionLU(1));
+        // a fallback picking the float solver again restarts the corrector forever
+        assertTimeoutPreemptively(Duration.ofSeconds(60),
+                () -> lsoda.integrate(ode, 0, new double[]{1, 0, 0}, 4.0e10, given));
+        assertTrue(lsoda.getSolverInUse() instanceof DenseLU);
+        assertArrayEquals(mixed, given);
+        assertEquals(single.getStepsTaken(), lsoda.getStepsTaken());
+
+        // out of the range of float, the given solver falls back at the first factorization
+        FirstOrderDifferentialEquations wide = new FirstOrderDifferentialEquations() {
+            @Override
+            public int getDimension() {
+                return 2;
+            }
+
+            @Override
+            public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+                ydot[0] = -y[0] + 1.0e45 * y[1];
+                ydot[1] = -1.0e3 * y[1];
+            }
+        };
+        double[] full = new double[2];
+        new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5).integrate(wide, 0, new double[]{1, 0}, 100, full);
+        LSODA fallback = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+        fallback.setLinearSolver(new MixedPrecisionLU(2));
+        fallback.integrate(wide, 0, new double[]{1, 0}, 100, given);
+        assertTrue(fallback.getSolverInUse() instanceof DenseLU);
+        assertArrayEquals(full, Arrays.copyOf(given, 2));
+    }
+}
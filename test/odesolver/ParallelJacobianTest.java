@@ -0,0 +1,78 @@
+package odesolver;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelJacobianTest {
+
+    /*
+     * 1-D reaction-diffusion with a reaction term that is costly to evaluate;
+     * ydot is accumulated into, as some systems do
+     */
+    private FirstOrderDifferentialEquations expensiveReactionDiffusion(int n, int cost) {
+        return new FirstOrderDifferentialEquations() {
+            @Override
+            public int getDimension() {
+                return n;
+            }
+
+            @Override
+            public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+                double d = 1.0e3;
+                for (int i = 0; i < n; i++) {
+                    double left = (i == 0) ? 1.0 : y[i - 1];
+                    double right = (i == n - 1) ? 0.0 : y[i + 1];
+                    ydot[i] += d * (left - 2 * y[i] + right);
+                    double k = 10;
+                    for (int c = 0; c < cost; c++)
+                        k = 10 + 1.0e-3 * Math.sin(k + y[i]);
+                    ydot[i] -= k * y[i] * y[i];
+                }
+            }
+        };
+    }
+
+    @Test
+    void parallel_jacobian_is_bit_identical() {
+        int n = 60;
+        FirstOrderDifferentialEquations ode = expensiveReactionDiffusion(n, 2);
+        double[] sequential = new double[n], parallel = new double[n];
+
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+        lsoda.integrate(ode, 0, new double[n], 1.0, sequential);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            LSODA withPool = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+            withPool.setJacobianPool(pool);
+            withPool.integrate(ode, 0, new double[n], 1.0, parallel);
+
+            assertArrayEquals(sequential, parallel);
+            assertEquals(lsoda.getEvaluations(), withPool.getEvaluations());
+            assertEquals(lsoda.getJacobianEvaluations(), withPool.getJacobianEvaluations());
+            assertEquals(lsoda.getStepsTaken(), withPool.getStepsTaken());
+            assertTrue(withPool.getJacobianEvaluations() > 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void parallel_jacobian_on_the_common_pool() {
+        int n = 200;
+        FirstOrderDifferentialEquations ode = expensiveReactionDiffusion(n, 20);
+        double[] sequential = new double[n], parallel = new double[n];
+        new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5).integrate(ode, 0, new double[n], 1.0, sequential);
+
+        LSODA withPool = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+        withPool.setJacobianPool(ForkJoinPool.commonPool());
+        withPool.integrate(ode, 0, new double[n], 1.0, parallel);
+        assertArrayEquals(sequential, parallel);
+    }
+}
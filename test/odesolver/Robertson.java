@@ -0,0 +1,78 @@
+package odesolver;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.apache.commons.math3.ode.MainStateJacobianProvider;
+
+/**
+ * Robertson's chemical kinetics, the system of Example.java, shared by the
+ * tests: y1' = -k1 y1 + k3 y2 y3, y3' = k2 y2^2, y2' = -(y1' + y3'),
+ * integrated from (1, 0, 0). It turns stiff early on. Public for the tests
+ * of the tools package.
+ */
+public class Robertson implements FirstOrderDifferentialEquations {
+    final double k1, k2, k3;
+
+    /**
+     * the rate constants of Example.java, k1 = 0.04, k2 = 3e7 and k3 = 1e4
+     */
+    public Robertson() {
+        this(0.04);
+    }
+
+    /**
+     * @param k1 rate constant of the first reaction, the others as in Example.java
+     */
+    public Robertson(double k1) {
+        this(k1, 3.0e7, 1.0e4);
+    }
+
+    public Robertson(double k1, double k2, double k3) {
+        this.k1 = k1;
+        this.k2 = k2;
+        this.k3 = k3;
+    }
+
+    @Override
+    public int getDimension() {
+        return 3;
+    }
+
+    @Override
+    public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+        ydot[0] = k3 * y[1] * y[2] - k1 * y[0];
+        ydot[2] = k2 * y[1] * y[1];
+        ydot[1] = -1.0 * (ydot[0] + ydot[2]);
+    }
+
+    /**
+     * the system supplying its Jacobian row by row, as JacobianProvider
+     */
+    public static class WithJacobian extends Robertson implements JacobianProvider {
+        @Override
+        public void computeJacobian(double t, double[] y, double[] yDot, double[] dFdY) throws MaxCountExceededException, DimensionMismatchException {
+            dFdY[0] = -k1;
+            dFdY[1] = k3 * y[2];
+            dFdY[2] = k3 * y[1];
+            dFdY[6] = 0.0;
+            dFdY[7] = 2 * k2 * y[1];
+            dFdY[8] = 0.0;
+            for (int j = 0; j < 3; j++)
+                dFdY[3 + j] = -(dFdY[j] + dFdY[6 + j]);
+        }
+    }
+
+    /**
+     * the system supplying its Jacobian as a MainStateJacobianProvider
+     */
+    public static class WithMainStateJacobian extends Robertson implements MainStateJacobianProvider {
+        @Override
+        public void computeMainStateJacobian(double t, double[] y, double[] yDot, double[][] dFdY) throws MaxCountExceededException, DimensionMismatchException {
+            double[] flat = new double[9];
+            new WithJacobian().computeJacobian(t, y, yDot, flat);
+            for (int i = 0; i < 3; i++)
+                System.arraycopy(flat, 3 * i, dFdY[i], 0, 3);
+        }
+    }
+}
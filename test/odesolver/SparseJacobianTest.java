@@ -0,0 +1,223 @@
+package odesolver;
+
+import odesolver.exception.IllegalInputException;
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SparseJacobianTest {
+
+    /*
+     * 1-D reaction-diffusion: y_i' = D*(y_{i-1} - 2y_i + y_{i+1}) - k*y_i^2
+     */
+    private FirstOrderDifferentialEquations reactionDiffusion(int n) {
+        return new FirstOrderDifferentialEquations() {
+            @Override
+            public int getDimension() {
+                return n;
+            }
+
+            @Override
+            public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+                double d = 1.0e3;
+                for (int i = 0; i < n; i++) {
+                    double left = (i == 0) ? 1.0 : y[i - 1];
+                    double right = (i == n - 1) ? 0.0 : y[i + 1];
+                    ydot[i] = d * (left - 2 * y[i] + right) - 10 * y[i] * y[i];
+                }
+            }
+        };
+    }
+
+    private SparsityPattern tridiagonal(int n) {
+        int[][] deps = new int[n][];
+        for (int i = 0; i < n; i++)
+            deps[i] = new int[]{Math.max(i - 1, 0), i, Math.min(i + 1, n - 1)};
+        return SparsityPattern.of(deps);
+    }
+
+    /*
+     * a chain of reversible reactions A_i <-> A_{i+1} with rates spread over
+     * six orders of magnitude, plus a few long-range couplings to a common
+     * catalyst species 0
+     */
+    private FirstOrderDifferentialEquations kinetics(int n) {
+        double[] k = new double[n];
+        for (int i = 0; i < n; i++)
+            k[i] = Math.pow(10, i % 7 - 3);
+        return new FirstOrderDifferentialEquations() {
+            @Override
+            public int getDimension() {
+                return n;
+            }
+
+            @Override
+            public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+                for (int i = 0; i < n - 1; i++) {
+                    double rate = k[i] * y[i] - 0.5 * k[i] * y[i + 1];
+                    ydot[i] -= rate;
+                    ydot[i + 1] += rate;
+                }
+                for (int i = 10; i < n; i += 10) {
+                    double rate = 1.0e2 * y[0] * y[i];
+                    ydot[i] -= rate;
+                    ydot[i - 1] += rate;
+                }
+            }
+        };
+    }
+
+    private SparsityPattern kineticsPattern(int n) {
+        int[][] deps = new int[n][];
+        for (int i = 0; i < n; i++) {
+            // rows touched by a catalysed reaction also depend on y[0]
+            boolean catalysed = i > 0 && (i % 10 == 0 || (i + 1) % 10 == 0);
+            deps[i] = catalysed
+                    ? new int[]{0, i - 1, i, Math.min(i + 1, n - 1)}
+                    : new int[]{Math.max(i - 1, 0), i, Math.min(i + 1, n - 1)};
+        }
+        return SparsityPattern.of(deps);
+    }
+
+    @Test
+    void sparse_lu_matches_dense_solve() {
+        int n = 60;
+        Random random = new Random(7);
+        double[][] a = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            a[i][i] = 10;
+            for (int k = 0; k < 3; k++)
+                a[i][random.nextInt(n)] += random.nextDouble() - 0.5;
+        }
+        int[] rowStart = new int[n + 1];
+        int[] cols = new int[n * n];
+        int nnz = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++)
+                if (a[i][j] != 0)
+                    cols[nnz++] = j;
+            rowStart[i + 1] = nnz;
+        }
+        SparsityPattern pattern = new SparsityPattern(n, rowStart, cols);
+        double[] values = new double[nnz];
+        for (int i = 0; i < n; i++)
+            for (int p = rowStart[i]; p < rowStart[i + 1]; p++)
+                values[p] = a[i][cols[p]];
+
+        SparseLU lu = new SparseLU(pattern);
+        assertEquals(0, lu.factor(values));
+        double[] b = new double[n + 1];
+        for (int i = 0; i < n; i++)
+            b[i + 1] = i;
+        lu.solve(b, 1);
+        for (int i = 0; i < n; i++) {
+            double ax = 0;
+            for (int j = 0; j < n; j++)
+                ax += a[i][j] * b[j + 1];
+            assertEquals(i, ax, 1e-12);
+        }
+    }
+
+    @Test
+    void ordering_avoids_fill_in() {
+        // arrow matrix: a dense first row and column fill the whole
+        // matrix in the natural order, but not when the hub is eliminated last
+        int n = 50;
+        int[][] deps = new int[n][];
+        deps[0] = new int[n];
+        for (int j = 0; j < n; j++)
+            deps[0][j] = j;
+        for (int i = 1; i < n; i++)
+            deps[i] = new int[]{0, i};
+        SparsityPattern pattern = SparsityPattern.of(deps);
+        assertEquals(3 * n - 2, pattern.getNonZeros());
+        SparseLU lu = new SparseLU(pattern);
+        assertEquals(pattern.getNonZeros(), lu.getFactorNonZeros());
+
+        double[] values = new double[pattern.getNonZeros()];
+        java.util.Arrays.fill(values, 1.0);
+        for (int i = 0; i < n; i++)
+            values[pattern.position(i, i)] = n;
+        assertEquals(0, lu.factor(values));
+        double[] b = new double[n];
+        java.util.Arrays.fill(b, 1.0);
+        lu.solve(b, 0);
+        // the hub sees n-1 spokes, every spoke the hub
+        assertEquals(1.0, n * b[0] + (n - 1) * b[1], 1e-12);
+        assertEquals(1.0, b[0] + n * b[1], 1e-12);
+    }
+
+    @Test
+    void columns_are_grouped_without_shared_rows() {
+        int n = 2000;
+        for (SparsityPattern pattern : new SparsityPattern[]{tridiagonal(n).withDiagonal(), kineticsPattern(n).withDiagonal()}) {
+            int[][] groups = pattern.groupColumns();
+            int[] seen = new int[n];
+            int columns = 0;
+            for (int g = 0; g < groups.length; g++) {
+                for (int j : groups[g]) {
+                    columns++;
+                    for (int q = pattern.colStart[j]; q < pattern.colStart[j + 1]; q++) {
+                        int i = pattern.colRows[q];
+                        assertNotEquals(g + 1, seen[i]);
+                        seen[i] = g + 1;
+                    }
+                }
+            }
+            assertEquals(n, columns);
+            assertTrue(groups.length <= 10);
+        }
+        assertEquals(3, tridiagonal(n).groupColumns().length);
+    }
+
+    @Test
+    void sparse_jacobian_matches_full_jacobian() {
+        int n = 100;
+        FirstOrderDifferentialEquations ode = reactionDiffusion(n);
+        double[] full = new double[n], sparse = new double[n];
+
+        LSODA dense = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5);
+        dense.integrate(ode, 0, new double[n], 1.0, full);
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5, tridiagonal(n));
+        lsoda.integrate(ode, 0, new double[n], 1.0, sparse);
+
+        assertTrue(lsoda.getJacobianEvaluations() > 0);
+        for (int i = 0; i < n; i++)
+            assertEquals(full[i], sparse[i], 1.0e-6);
+    }
+
+    @Test
+    void large_sparse_kinetics() {
+        int n = 2000;
+        FirstOrderDifferentialEquations ode = kinetics(n);
+        double[] y0 = new double[n];
+        y0[0] = 1.0;
+        y0[n / 2] = 1.0;
+        double[] result = new double[n];
+
+        SparsityPattern pattern = kineticsPattern(n);
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-6, 12, 5, pattern);
+        lsoda.integrate(ode, 0, y0, 10.0, result);
+
+        double mass = 0;
+        for (double v : result)
+            mass += v;
+        assertEquals(2.0, mass, 1e-5);
+        assertTrue(lsoda.getJacobianEvaluations() > 0);
+        // a Jacobian costs one evaluation per column group instead of n
+        assertTrue(lsoda.getEvaluations() < n);
+    }
+
+    @Test
+    void sparse_pattern_of_the_wrong_size() {
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-8, 12, 5, tridiagonal(3));
+        IllegalInputException e = assertThrows(IllegalInputException.class, () ->
+                lsoda.integrate(reactionDiffusion(4), 0, new double[4], 1.0, new double[4]));
+        assertEquals("lsoda: illegal jt=7", e.getMessage());
+    }
+}
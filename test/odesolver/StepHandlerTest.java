@@ -0,0 +1,164 @@
+package odesolver;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.exception.OutOfRangeException;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.apache.commons.math3.ode.sampling.FixedStepHandler;
+import org.apache.commons.math3.ode.sampling.StepHandler;
+import org.apache.commons.math3.ode.sampling.StepInterpolator;
+import org.apache.commons.math3.ode.sampling.StepNormalizer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StepHandlerTest {
+
+    // y1' = y2, y2' = -y1: y1 = cos t, y2 = -sin t
+    private final FirstOrderDifferentialEquations oscillator = new FirstOrderDifferentialEquations() {
+        @Override
+        public int getDimension() {
+            return 2;
+        }
+
+        @Override
+        public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+            ydot[0] = y[1];
+            ydot[1] = -y[0];
+        }
+    };
+
+    // records every step and the interpolated state at its midpoint
+    private static class Recorder implements StepHandler {
+        double t0, t;
+        double[] y0;
+        int steps, lasts;
+        double previous = Double.NaN;
+        boolean contiguous = true;
+        final List<StepInterpolator> copies = new ArrayList<>();
+        final List<double[]> midpoints = new ArrayList<>();
+
+        @Override
+        public void init(double t0, double[] y0, double t) {
+            this.t0 = t0;
+            this.y0 = y0.clone();
+            this.t = t;
+        }
+
+        @Override
+        public void handleStep(StepInterpolator interpolator, boolean isLast) {
+            steps++;
+            if (isLast)
+                lasts++;
+            if (!Double.isNaN(previous) && interpolator.getPreviousTime() != previous)
+                contiguous = false;
+            previous = interpolator.getCurrentTime();
+            double mid = 0.5 * (interpolator.getPreviousTime() + interpolator.getCurrentTime());
+            interpolator.setInterpolatedTime(mid);
+            midpoints.add(new double[]{mid, interpolator.getInterpolatedState()[0],
+                    interpolator.getInterpolatedDerivatives()[0]});
+            copies.add(interpolator.copy());
+        }
+    }
+
+    @Test
+    void handlers_see_every_step() {
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-10, 12, 5);
+        Recorder recorder = new Recorder();
+        lsoda.addStepHandler(recorder);
+        assertEquals(1, lsoda.getStepHandlers().size());
+        double[] result = new double[2];
+        lsoda.integrate(oscillator, 0, new double[]{1, 0}, 10, result);
+
+        assertEquals(0, recorder.t0);
+        assertEquals(10, recorder.t);
+        assertArrayEquals(new double[]{1, 0}, recorder.y0);
+        assertEquals(lsoda.getStepsTaken(), recorder.steps);
+        assertEquals(1, recorder.lasts);
+        assertTrue(recorder.contiguous);
+        assertEquals(10, recorder.previous);
+        // the derivative of the order 1 interpolant on the first steps is only O(h) accurate
+        for (double[] m : recorder.midpoints) {
+            assertEquals(Math.cos(m[0]), m[1], 1.0e-7);
+            assertEquals(-Math.sin(m[0]), m[2], 1.0e-5);
+        }
+
+        lsoda.clearStepHandlers();
+        assertTrue(lsoda.getStepHandlers().isEmpty());
+        lsoda.integrate(oscillator, 0, new double[]{1, 0}, 10, result);
+        assertEquals(recorder.midpoints.size(), recorder.steps);
+    }
+
+    @Test
+    void copies_outlive_the_step() {
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-10, 12, 5);
+        Recorder recorder = new Recorder();
+        lsoda.addStepHandler(recorder);
+        lsoda.integrate(oscillator, 0, new double[]{1, 0}, 5, new double[2]);
+
+        for (StepInterpolator copy : recorder.copies) {
+            double t = copy.getPreviousTime() + 0.25 * (copy.getCurrentTime() - copy.getPreviousTime());
+            copy.setInterpolatedTime(t);
+            assertEquals(Math.cos(t), copy.getInterpolatedState()[0], 1.0e-7);
+            assertEquals(-Math.sin(t), copy.getInterpolatedState()[1], 1.0e-7);
+            assertTrue(copy.isForward());
+        }
+        StepInterpolator last = recorder.copies.get(recorder.copies.size() - 1);
+        assertThrows(OutOfRangeException.class, () -> {
+            last.setInterpolatedTime(last.getCurrentTime() + 1);
+            last.getInterpolatedState();
+        });
+        assertThrows(OutOfRangeException.class, () -> last.getInterpolatedSecondaryState(0));
+    }
+
+    @Test
+    void interpolator_serializes() throws Exception {
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-10, 12, 5);
+        Recorder recorder = new Recorder();
+        lsoda.addStepHandler(recorder);
+        lsoda.integrate(oscillator, 0, new double[]{1, 0}, 2, new double[2]);
+        StepInterpolator copy = recorder.copies.get(recorder.copies.size() / 2);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(copy);
+        }
+        StepInterpolator read;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = (StepInterpolator) in.readObject();
+        }
+        assertEquals(copy.getPreviousTime(), read.getPreviousTime());
+        assertEquals(copy.getCurrentTime(), read.getCurrentTime());
+        assertArrayEquals(copy.getInterpolatedState(), read.getInterpolatedState());
+    }
+
+    @Test
+    void fixed_step_output_through_a_normalizer() {
+        LSODA lsoda = new LSODA(0, 0, 1.0e-10, 1.0e-10, 12, 5);
+        List<double[]> samples = new ArrayList<>();
+        lsoda.addStepHandler(new StepNormalizer(0.5, new FixedStepHandler() {
+            @Override
+            public void init(double t0, double[] y0, double t) {
+            }
+
+            @Override
+            public void handleStep(double t, double[] y, double[] yDot, boolean isLast) {
+                samples.add(new double[]{t, y[0]});
+            }
+        }));
+        lsoda.integrate(oscillator, 0, new double[]{1, 0}, 10, new double[2]);
+
+        assertEquals(21, samples.size());
+        for (int i = 0; i < samples.size(); i++) {
+            assertEquals(0.5 * i, samples.get(i)[0], 1.0e-12);
+            assertEquals(Math.cos(0.5 * i), samples.get(i)[1], 1.0e-7);
+        }
+    }
+}
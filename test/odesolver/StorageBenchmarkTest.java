@@ -0,0 +1,98 @@
+package odesolver;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@Tag("benchmark")
+public class StorageBenchmarkTest {
+    private final int[] sizes = {10, 50, 100, 200, 400};
+
+    /*
+     * 1-D reaction-diffusion: y_i' = D*(y_{i-1} - 2y_i + y_{i+1}) - k*y_i^2
+     */
+    private FirstOrderDifferentialEquations reactionDiffusion(int n) {
+        return new FirstOrderDifferentialEquations() {
+            @Override
+            public int getDimension() {
+                return n;
+            }
+
+            @Override
+            public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+                double d = 1.0e3;
+                for (int i = 0; i < n; i++) {
+                    double left = (i == 0) ? 1.0 : y[i - 1];
+                    double right = (i == n - 1) ? 0.0 : y[i + 1];
+                    ydot[i] = d * (left - 2 * y[i] + right) - 10 * y[i] * y[i];
+                }
+            }
+        };
+    }
+
+    @Test
+    void factor_and_solve_with_nested_and_flat_storage() {
+        for (int n : sizes) {
+            double[][] a = new double[n + 1][n + 1];
+            double[][] lu = new double[n + 1][n + 1];
+            double[] flat = new double[n * n];
+            double[] b = new double[n + 1];
+            double[] bf = new double[n];
+            int[] ipvt = new int[n + 1];
+            for (int i = 1; i <= n; i++)
+                for (int j = 1; j <= n; j++)
+                    a[i][j] = (i == j) ? n : 1.0 / (i + j);
+
+            int runs = Math.max(5, 2000000 / (n * n));
+            long nested = 0, contiguous = 0;
+            // first half warms up
+            for (int rep = 0; rep < 2; rep++) {
+                long start = System.nanoTime();
+                for (int r = 0; r < runs; r++) {
+                    for (int i = 1; i <= n; i++)
+                        System.arraycopy(a[i], 0, lu[i], 0, n + 1);
+                    java.util.Arrays.fill(b, 1.0);
+                    Utility.LUDecomposition(lu, n, ipvt);
+                    Utility.solveLinearSys(lu, n, ipvt, b, 1);
+                }
+                nested = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int r = 0; r < runs; r++) {
+                    for (int i = 1; i <= n; i++)
+                        System.arraycopy(a[i], 1, flat, (i - 1) * n, n);
+                    java.util.Arrays.fill(bf, 1.0);
+                    Utility.LUDecomposition(flat, n, n, ipvt);
+                    Utility.solveLinearSys(flat, n, n, ipvt, bf, 0);
+                }
+                contiguous = System.nanoTime() - start;
+            }
+            for (int i = 0; i < n; i++)
+                assertEquals(b[i + 1], bf[i]);
+            System.out.printf("n = %4d: factor and solve %10.2f us (double[][]) %10.2f us (double[])\n",
+                    n, nested / 1000.0 / runs, contiguous / 1000.0 / runs);
+        }
+    }
+
+    @Test
+    void step_throughput_over_n() {
+        for (int n : sizes) {
+            double[] result = new double[n];
+            LSODA lsoda = null;
+            long elapsed = 0;
+            for (int rep = 0; rep < 3; rep++) {
+                lsoda = new LSODA(0, 0, 1.0e-6, 1.0e-6, 12, 5);
+                long start = System.nanoTime();
+                lsoda.integrate(reactionDiffusion(n), 0, new double[n], 1.0, result);
+                elapsed = System.nanoTime() - start;
+            }
+            System.out.printf("n = %4d: %6d steps, %5d Jacobian evals, %10.2f us per step\n",
+                    n, lsoda.getStepsTaken(), lsoda.getJacobianEvaluations(),
+                    elapsed / 1000.0 / lsoda.getStepsTaken());
+        }
+    }
+}
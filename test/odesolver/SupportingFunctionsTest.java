@@ -26,6 +26,23 @@ class SupportingFunctionsTest {
         assertTrue(Math.abs(fnorm(w.length-1, a, w)-(44+5.0/6))<1e-14);
     }
 
+    @Test
+    void calculate_band_matrix_norm(){
+        // the tridiagonal part of the matrix above, in LINPACK band form with ml = mu = 1
+        double[][] a = {{1,2,0,0,0},     // 2
+                {-5,-4,-3,0,0},  // 16
+                {0,4,0,0,0},     // 6
+                {0,0,6,-4,-10},  // 28
+                {0,0,0,-4,3}};   // 5
+        int n = 5, ml = 1, mu = 1, lda = 2*ml+mu+1;
+        double[] band = new double[lda*n];
+        for (int i=0; i<n; i++)
+            for (int j=Math.max(i-ml,0); j<=Math.min(i+mu,n-1); j++)
+                band[j*lda+ml+mu+i-j] = a[i][j];
+        double[] w = {0.1, 0.2, 0.3, 0.2, 0.1};
+        assertTrue(Math.abs(bnorm(n, band, lda, ml, mu, w, 0)-28)<1e-14);
+    }
+
     @Test
     void calculate_error_tolerance(){
         double[] ycur = {0, 5, 7, 9, 11};
@@ -0,0 +1,251 @@
+package odesolver;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrajectoryTest {
+    private final com.sun.management.ThreadMXBean bean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final FirstOrderDifferentialEquations ode = new Robertson();
+
+    // y1' = y2, y2' = -y1
+    private final FirstOrderDifferentialEquations oscillator = new FirstOrderDifferentialEquations() {
+        @Override
+        public int getDimension() {
+            return 2;
+        }
+
+        @Override
+        public void computeDerivatives(double t, double[] y, double[] ydot) throws MaxCountExceededException, DimensionMismatchException {
+            ydot[0] = y[1];
+            ydot[1] = -y[0];
+        }
+    };
+
+    @Test
+    void points_are_stored_row_major() {
+        Trajectory trajectory = new Trajectory();
+        trajectory.clear(2);
+        double[] row = new double[3];
+        for (int i = 0; i < 100; i++) {
+            row[1] = i;
+            row[2] = -i;
+            trajectory.add(0.5 * i, row, 1);
+        }
+        assertEquals(100, trajectory.size());
+        assertEquals(2, trajectory.getDimension());
+        assertEquals(49.5, trajectory.getTime(99));
+        assertEquals(-42, trajectory.getState(42, 1));
+        double[] states = trajectory.getStates();
+        assertEquals(42, states[84]);
+        assertEquals(-42, states[85]);
+        double[] dst = new double[3];
+        trajectory.getState(7, dst, 1);
+        assertArrayEquals(new double[]{0, 7, -7}, dst);
+        assertThrows(IndexOutOfBoundsException.class, () -> trajectory.getTime(100));
+        assertThrows(IndexOutOfBoundsException.class, () -> trajectory.getState(0, 2));
+
+        trajectory.clear(3);
+        assertEquals(0, trajectory.size());
+        assertTrue(trajectory.toTimeList().isEmpty());
+    }
+
+    @Test
+    void boxed_views_match_the_trajectory() {
+        LSODA lsoda = new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5);
+        lsoda.integrate(ode, 0, new double[]{1.0, 0.0, 0.0}, 40, new double[3]);
+        Trajectory trajectory = lsoda.getTrajectory();
+        ArrayList<Double> tvec = lsoda.getTvec();
+        ArrayList<Double[]> yvec = lsoda.getYvec();
+
+        assertEquals(lsoda.getStepsTaken() + 1, trajectory.size());
+        assertEquals(trajectory.size(), tvec.size());
+        assertEquals(trajectory.size(), yvec.size());
+        assertEquals(0.0, tvec.get(0));
+        assertEquals(40.0, tvec.get(tvec.size() - 1));
+        for (int i = 0; i < tvec.size(); i++) {
+            assertEquals(trajectory.getTime(i), tvec.get(i));
+            for (int j = 0; j < 3; j++)
+                assertEquals(trajectory.getState(i, j), yvec.get(i)[j]);
+        }
+    }
+
+    private Trajectory line(RetentionPolicy retention, int points) {
+        Trajectory trajectory = new Trajectory();
+        trajectory.setRetention(retention);
+        trajectory.clear(1);
+        for (int i = 0; i < points; i++)
+            trajectory.add(i, new double[]{2.0 * i}, 0);
+        return trajectory;
+    }
+
+    @Test
+    void last_n_keeps_a_ring() {
+        Trajectory trajectory = line(RetentionPolicy.lastN(5), 3);
+        assertEquals(3, trajectory.size());
+        assertEquals(0, trajectory.getFirst());
+        trajectory = line(RetentionPolicy.lastN(5), 23);
+        assertEquals(5, trajectory.size());
+        assertEquals(23, trajectory.getOffered());
+        assertEquals(5, trajectory.getTimes().length);
+        assertEquals(3, trajectory.getFirst());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(18 + i, trajectory.getTime(i));
+            assertEquals(2.0 * (18 + i), trajectory.getState(i, 0));
+        }
+        assertEquals(java.util.Arrays.asList(18.0, 19.0, 20.0, 21.0, 22.0), trajectory.toTimeList());
+    }
+
+    @Test
+    void every_kth_keeps_the_latest_point() {
+        Trajectory trajectory = line(RetentionPolicy.everyKth(10), 36);
+        assertEquals(java.util.Arrays.asList(0.0, 10.0, 20.0, 30.0, 35.0), trajectory.toTimeList());
+        trajectory = line(RetentionPolicy.everyKth(1), 36);
+        assertEquals(36, trajectory.size());
+    }
+
+    @Test
+    void none_keeps_nothing() {
+        Trajectory trajectory = line(RetentionPolicy.none(), 1000);
+        assertEquals(0, trajectory.size());
+        assertEquals(1000, trajectory.getOffered());
+        assertThrows(IllegalArgumentException.class, () -> RetentionPolicy.lastN(0));
+        assertThrows(IllegalArgumentException.class, () -> RetentionPolicy.tolerance(0, 0));
+    }
+
+    @Test
+    void tolerance_drops_points_on_a_line() {
+        Trajectory trajectory = line(RetentionPolicy.tolerance(1.0e-9, 0), 1000);
+        assertEquals(java.util.Arrays.asList(0.0, 999.0), trajectory.toTimeList());
+
+        LSODA all = new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5);
+        double[] full = new double[3], thinned = new double[3];
+        all.integrate(ode, 0, new double[]{1.0, 0.0, 0.0}, 4e5, full);
+        LSODA lsoda = new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5);
+        lsoda.setRetention(RetentionPolicy.tolerance(1.0e-3, 1.0e-3));
+        lsoda.integrate(ode, 0, new double[]{1.0, 0.0, 0.0}, 4e5, thinned);
+        assertArrayEquals(full, thinned);
+        Trajectory kept = lsoda.getTrajectory();
+        assertTrue(kept.size() < all.getTrajectory().size() / 2);
+        assertEquals(4e5, kept.getTime(kept.size() - 1));
+        assertEquals(thinned[0], kept.getState(kept.size() - 1, 0));
+        // each point kept is one of the points recorded
+        int j = 0;
+        Trajectory every = all.getTrajectory();
+        for (int i = 0; i < kept.size(); i++) {
+            while (every.getTime(j) != kept.getTime(i))
+                j++;
+            assertEquals(every.getState(j, 1), kept.getState(i, 1));
+        }
+    }
+
+    // component j at t of the trajectory interpolated linearly between the points kept
+    private static double interpolate(Trajectory trajectory, double t, int j) {
+        int i = 1;
+        while (i < trajectory.size() - 1 && trajectory.getTime(i) < t)
+            i++;
+        double ta = trajectory.getTime(i - 1), tb = trajectory.getTime(i);
+        double ya = trajectory.getState(i - 1, j), yb = trajectory.getState(i, j);
+        return ya + (yb - ya) * (t - ta) / (tb - ta);
+    }
+
+    @Test
+    void tolerance_bounds_the_interpolation_error() {
+        double atol = 1.0e-3, rtol = 1.0e-2;
+        Trajectory trajectory = new Trajectory();
+        trajectory.setRetention(RetentionPolicy.tolerance(atol, rtol));
+        trajectory.clear(2);
+        int points = 10001;
+        double[] y = new double[2];
+        for (int k = 0; k < points; k++) {
+            double t = k / (points - 1.0);
+            y[0] = t * t;
+            y[1] = Math.cos(20 * t);
+            trajectory.add(t, y, 0);
+        }
+        assertTrue(trajectory.size() > 2 && trajectory.size() < points / 20);
+        assertEquals(1.0, trajectory.getTime(trajectory.size() - 1));
+        for (int k = 0; k < points; k++) {
+            double t = k / (points - 1.0);
+            y[0] = t * t;
+            y[1] = Math.cos(20 * t);
+            for (int j = 0; j < 2; j++)
+                assertEquals(y[j], interpolate(trajectory, t, j), (atol + rtol * Math.abs(y[j])) * (1 + 1.0e-9));
+        }
+
+        // and over the steps of an integration
+        LSODA all = new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5);
+        all.integrate(ode, 0, new double[]{1.0, 0.0, 0.0}, 4e5, new double[3]);
+        LSODA lsoda = new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5);
+        lsoda.setRetention(RetentionPolicy.tolerance(1.0e-4, 1.0e-3));
+        lsoda.integrate(ode, 0, new double[]{1.0, 0.0, 0.0}, 4e5, new double[3]);
+        Trajectory every = all.getTrajectory(), kept = lsoda.getTrajectory();
+        for (int i = 0; i < every.size(); i++)
+            for (int j = 0; j < 3; j++) {
+                double yj = every.getState(i, j);
+                assertEquals(yj, interpolate(kept, every.getTime(i), j), (1.0e-4 + 1.0e-3 * Math.abs(yj)) * (1 + 1.0e-9));
+            }
+    }
+
+    @Test
+    void retention_bounds_memory_of_long_runs() {
+        Assumptions.assumeTrue(bean.isThreadAllocatedMemorySupported());
+        bean.setThreadAllocatedMemoryEnabled(true);
+
+        LSODA lsoda = new LSODA(0, 0, 1.0e-8, 1.0e-8, 12, 5);
+        lsoda.ode = oscillator;
+        lsoda.setRetention(RetentionPolicy.lastN(100));
+        double[] rtol = {0, 1.0e-8}, atol = {0, 1.0e-8};
+        double[] y = {1.0, 0.0};
+        // one step per call with itask = 2; the trajectory runs on over the calls
+        lsoda.lsoda(2, y, 0, 1e9, 1, rtol, atol, 2, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+        for (int k = 0; k < 200; k++)
+            lsoda.lsoda(2, y, 0, 1e9, 1, rtol, atol, 2, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+        Trajectory trajectory = lsoda.getTrajectory();
+        assertEquals(202, trajectory.getOffered());
+        long id = Thread.currentThread().getId();
+        long start = bean.getThreadAllocatedBytes(id);
+        for (int k = 0; k < 5000; k++)
+            lsoda.lsoda(2, y, 0, 1e9, 1, rtol, atol, 2, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+        long allocated = bean.getThreadAllocatedBytes(id) - start;
+        assertEquals(100, trajectory.size());
+        assertEquals(lsoda.tn, trajectory.getTime(99));
+        assertEquals(lsoda.y[1], trajectory.getState(99, 0));
+        assertTrue(trajectory.getTime(0) < trajectory.getTime(99));
+        assertTrue(allocated < 64 * 1024);
+    }
+
+    @Test
+    void recording_does_not_box() {
+        Assumptions.assumeTrue(bean.isThreadAllocatedMemorySupported());
+        bean.setThreadAllocatedMemoryEnabled(true);
+
+        Trajectory trajectory = new Trajectory();
+        double[] y = {1.0, 2.0, 3.0};
+        int points = 100000;
+        for (int rep = 0; rep < 2; rep++) {
+            trajectory.clear(3);
+            for (int i = 0; i < points; i++)
+                trajectory.add(i, y, 0);
+        }
+        trajectory.clear(3);
+        long id = Thread.currentThread().getId();
+        long start = bean.getThreadAllocatedBytes(id);
+        for (int i = 0; i < points; i++)
+            trajectory.add(i, y, 0);
+        long primitive = bean.getThreadAllocatedBytes(id) - start;
+
+        // the arrays are reused after clear
+        assertTrue(primitive < 1024);
+        assertEquals(points, trajectory.size());
+    }
+}
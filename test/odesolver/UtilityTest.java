@@ -112,4 +112,91 @@ class UtilityTest {
         for (int i=1; i<b.length; i++)
             assertTrue(Math.abs(b[i]-analyticalRes[i])<1e-14);
     }
-}
\ No newline at end of file
+
+    @Test
+    void kernels_with_start_positions() {
+        double[] dx = {3.3, 5.5, 7.7, 9.9, 11.11, 13.13, 15.15};
+        double[] dy = {2.2, 4.4, 6.6, 8.8, 12.12, 14.14, 16.16};
+        double[] dx1 = {0, 3.3, 5.5, 7.7, 9.9, 11.11, 13.13, 15.15};
+        double[] dy1 = {0, 2.2, 4.4, 6.6, 8.8, 12.12, 14.14, 16.16};
+        // 0-based storage gives the same results as the 1-based kernels
+        assertEquals(Utility.Dot(7, dx1, 1, dy1, 1), Utility.Dot(7, dx, 0, 1, dy, 0, 1));
+        assertEquals(Utility.Dot(3, dx1, 2, dy1, 2), Utility.Dot(3, dx, 0, 2, dy, 0, 2));
+        assertEquals(Utility.Dot(3, dx1, -2, dy1, -2), Utility.Dot(3, dx, 0, -2, dy, 0, -2));
+        // sub-vectors
+        assertEquals(dx[2]*dy[4]+dx[3]*dy[5], Utility.Dot(2, dx, 2, 1, dy, 4, 1));
+        assertEquals(3, Utility.findMaxMagnitude(3, dx, 2, 1));
+        assertEquals(3, Utility.findMaxMagnitude(3, dx, 1, 2));
+        assertEquals(1, Utility.findMaxMagnitude(3, dy, 6, -1));
+    }
+
+    @Test
+    void solve_linear_system_in_place() {
+        double[][] arr = {{0,0,0,0},{0,1,-1,3,7},{0,10,-1,0,-2},{0,100,2,2,4},{0,5,99,2,9}};
+        int[] ipvt = new int[5];
+        assertEquals(0, Utility.LUDecomposition(arr, 4, ipvt));
+        // 0-based right hand side
+        double[] b = {727.4,-175,740.4,1471.2};
+        Utility.solveLinearSys(arr, 4, ipvt, b, 0);
+        double[] analyticalRes = {3.1, 5.4, 9.2, 100.3};
+
+        for (int i=0; i<b.length; i++)
+            assertTrue(Math.abs(b[i]-analyticalRes[i])<1e-14);
+    }
+
+    @Test
+    void solve_linear_system_with_flat_storage() {
+        // column k of the flat matrix is row k+1 of the 1-based form
+        double[][] arr = {{0,0,0,0},{0,1,-1,3,7},{0,10,-1,0,-2},{0,100,2,2,4},{0,5,99,2,9}};
+        double[] flat = new double[16];
+        for (int k=0; k<4; k++)
+            System.arraycopy(arr[k+1], 1, flat, k*4, 4);
+        int[] ipvt = new int[4];
+        assertEquals(0, Utility.LUDecomposition(flat, 4, 4, ipvt));
+        double[] b = {727.4,-175,740.4,1471.2};
+        Utility.solveLinearSys(flat, 4, 4, ipvt, b, 0);
+
+        ReturningValues res = Utility.LUDecomposition(arr, 4);
+        double[] b1 = {0,727.4,-175,740.4,1471.2};
+        Utility.solveLinearSys(res.a, 4, res.ipvt, b1);
+        for (int i=0; i<4; i++)
+            assertEquals(b1[i+1], b[i]);
+    }
+
+    @Test
+    void solve_band_system_matches_full_solve() {
+        // pentadiagonal matrix with ml = 1, mu = 2; pivoting moves rows across the band
+        int n = 6, ml = 1, mu = 2, lda = 2*ml+mu+1;
+        double[][] a = new double[n][n];
+        for (int i=0; i<n; i++)
+            for (int j=Math.max(i-ml,0); j<=Math.min(i+mu,n-1); j++)
+                a[i][j] = (i == j) ? 0.5 : (i+1)*(j+2) % 7 + 1;
+        double[] band = new double[lda*n];
+        double[] full = new double[n*n];  // column k holds row k of a
+        for (int i=0; i<n; i++)
+            for (int j=0; j<n; j++){
+                full[i*n+j] = a[i][j];
+                if (a[i][j] != 0)
+                    band[j*lda+ml+mu+i-j] = a[i][j];
+            }
+        int[] ipvt = new int[n], ipvtb = new int[n];
+        assertEquals(0, Utility.LUDecomposition(full, n, n, ipvt));
+        assertEquals(0, Utility.bandLUDecomposition(band, lda, n, ml, mu, ipvtb));
+        double[] b = {1,2,3,4,5,6};
+        double[] bb = b.clone();
+        Utility.solveLinearSys(full, n, n, ipvt, b, 0);
+        Utility.solveBandSys(band, lda, n, ml, mu, ipvtb, bb, 0);
+        for (int i=0; i<n; i++){
+            assertEquals(b[i], bb[i], 1e-12);
+            double ax = 0;
+            for (int j=0; j<n; j++)
+                ax += a[i][j]*bb[j];
+            assertEquals(i+1, ax, 1e-12);
+        }
+
+        // zero columns make the band matrix singular; info is the last zero pivot
+        java.util.Arrays.fill(band, 0.0);
+        band[ml+mu] = 1.0;
+        assertEquals(6, Utility.bandLUDecomposition(band, lda, n, ml, mu, ipvtb));
+    }
+}
@@ -0,0 +1,140 @@
+package tools;
+
+import odesolver.LSODA;
+import odesolver.Robertson;
+import odesolver.Trajectory;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncRecorderTest {
+
+    @TempDir
+    Path dir;
+
+    // keeps the rows it is given; the first write waits for release
+    private static class Collecting implements Recorder {
+        final List<double[]> rows = new ArrayList<>();
+        final CountDownLatch entered = new CountDownLatch(1), release;
+        final Thread caller = Thread.currentThread();
+        boolean closed, otherThread = true;
+
+        Collecting(boolean held) {
+            release = new CountDownLatch(held ? 1 : 0);
+        }
+
+        @Override
+        public void write(double t, double[] y, int off) {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            otherThread &= Thread.currentThread() != caller;
+            rows.add(new double[]{t, y[off], y[off + 1]});
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    void block_loses_nothing() throws Exception {
+        Collecting out = new Collecting(false);
+        AsyncRecorder recorder = new AsyncRecorder(out, 2, 8, AsyncRecorder.Backpressure.BLOCK);
+        for (int i = 0; i < 10000; i++)
+            recorder.write(i, new double[]{0, i, -i}, 1);
+        recorder.flush();
+        assertEquals(10000, out.rows.size());
+        recorder.close();
+        assertTrue(out.closed);
+        assertTrue(out.otherThread);
+        assertEquals(0, recorder.getDropped());
+        for (int i = 0; i < 10000; i++)
+            assertArrayEquals(new double[]{i, i, -i}, out.rows.get(i));
+        assertThrows(IllegalStateException.class, () -> recorder.write(0, new double[2], 0));
+    }
+
+    @Test
+    void drop_keeps_the_first_rows_when_the_writer_stalls() throws Exception {
+        Collecting out = new Collecting(true);
+        AsyncRecorder recorder = new AsyncRecorder(out, 2, 8, AsyncRecorder.Backpressure.DROP);
+        recorder.write(0, new double[]{0, 0}, 0);
+        out.entered.await();
+        for (int i = 1; i < 100; i++)
+            recorder.write(i, new double[]{i, i}, 0);
+        assertEquals(92, recorder.getDropped());
+        out.release.countDown();
+        recorder.close();
+        assertEquals(8, out.rows.size());
+        for (int i = 0; i < 8; i++)
+            assertEquals(i, out.rows.get(i)[0]);
+    }
+
+    @Test
+    void sample_keeps_the_latest_row_when_the_writer_stalls() throws Exception {
+        Collecting out = new Collecting(true);
+        AsyncRecorder recorder = new AsyncRecorder(out, 2, 8, AsyncRecorder.Backpressure.SAMPLE);
+        recorder.write(0, new double[]{0, 0}, 0);
+        out.entered.await();
+        for (int i = 1; i < 100; i++)
+            recorder.write(i, new double[]{i, i}, 0);
+        assertEquals(92, recorder.getDropped());
+        out.release.countDown();
+        recorder.close();
+        assertEquals(8, out.rows.size());
+        for (int i = 0; i < 7; i++)
+            assertEquals(i, out.rows.get(i)[0]);
+        assertArrayEquals(new double[]{99, 99, 99}, out.rows.get(7));
+    }
+
+    @Test
+    void failures_of_the_writer_surface_on_close() {
+        Recorder failing = new Recorder() {
+            @Override
+            public void write(double t, double[] y, int off) {
+                throw new UncheckedIOException(new IOException("disk full"));
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        AsyncRecorder recorder = new AsyncRecorder(failing, 1, 4, AsyncRecorder.Backpressure.BLOCK);
+        for (int i = 0; i < 100; i++)
+            recorder.write(i, new double[]{i}, 0);
+        assertThrows(UncheckedIOException.class, recorder::close);
+    }
+
+    @Test
+    void lsoda_records_through_the_ring() throws IOException {
+        FirstOrderDifferentialEquations ode = new Robertson();
+        Path file = dir.resolve("robertson.bin");
+        LSODA lsoda = new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5);
+        try (AsyncRecorder recorder = new AsyncRecorder(new BinaryWriter(file, 3), 3, 64, AsyncRecorder.Backpressure.BLOCK)) {
+            lsoda.setRecorder(recorder);
+            lsoda.integrate(ode, 0, new double[]{1.0, 0.0, 0.0}, 4e5, new double[3]);
+        }
+        Trajectory trajectory = lsoda.getTrajectory();
+        try (BinaryReader reader = new BinaryReader(file)) {
+            assertEquals(trajectory.size(), reader.getRows());
+            double[] read = new double[4];
+            for (int i = 0; reader.next(read); i++) {
+                assertEquals(trajectory.getTime(i), read[0]);
+                assertEquals(trajectory.getState(i, 2), read[3]);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package tools;
+
+import odesolver.LSODA;
+import odesolver.Robertson;
+import odesolver.Trajectory;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryTrajectoryTest {
+
+    @TempDir
+    Path dir;
+
+    private static double[] row(int i) {
+        return new double[]{0, Math.sin(i), 1.0 / (i + 1), -i * 1.0e-300};
+    }
+
+    private void writeRows(Recorder recorder, int rows) throws IOException {
+        try (Recorder r = recorder) {
+            for (int i = 0; i < rows; i++)
+                r.write(0.5 * i, row(i), 1);
+        }
+    }
+
+    private void checkRows(Path file, int rows) throws IOException {
+        try (BinaryReader reader = new BinaryReader(file)) {
+            assertEquals(3, reader.getDimension());
+            assertArrayEquals(new String[]{"t", "y_1", "y_2", "y_3"}, reader.getNames());
+            assertEquals(rows, reader.getRows());
+            double[] read = new double[4];
+            for (int i = 0; i < rows; i++) {
+                assertTrue(reader.next(read));
+                double[] expected = row(i);
+                expected[0] = 0.5 * i;
+                assertArrayEquals(expected, read);
+            }
+            assertFalse(reader.next(read));
+        }
+    }
+
+    @Test
+    void rows_survive_the_round_trip() throws IOException {
+        // several blocks of the channel writer, and two regions of the mapped one
+        Path channel = dir.resolve("channel.bin"), mapped = dir.resolve("mapped.bin");
+        int rows = 300000;
+        writeRows(new BinaryWriter(channel, 3), rows);
+        writeRows(new MappedBinaryWriter(mapped, 3), rows);
+        checkRows(channel, rows);
+        checkRows(mapped, rows);
+        assertArrayEquals(Files.readAllBytes(channel), Files.readAllBytes(mapped));
+    }
+
+    @Test
+    void header_and_doubles_are_little_endian() throws IOException {
+        Path file = dir.resolve("header.bin");
+        try (BinaryWriter writer = new BinaryWriter(file, 1, new String[]{"time", "concentration"})) {
+            writer.write(2.0, new double[]{3.0}, 0);
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[8];
+        bytes.get(magic);
+        assertEquals("LSODABIN", new String(magic, java.nio.charset.StandardCharsets.US_ASCII));
+        assertEquals(1, bytes.getInt());
+        assertEquals(1, bytes.getInt());
+        assertEquals(4, bytes.getInt());
+        // 16 + 4 + 4 + 4 + 13 = 41 bytes, padded to 48
+        assertEquals(64, bytes.capacity());
+        assertEquals(2.0, bytes.getDouble(48));
+        assertEquals(3.0, bytes.getDouble(56));
+        try (BinaryReader reader = new BinaryReader(file)) {
+            assertArrayEquals(new String[]{"time", "concentration"}, reader.getNames());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new BinaryWriter(dir.resolve("bad.bin"), 2, new String[]{"t"}));
+        Files.write(dir.resolve("text.bin"), "t,y_1\n1.0,2.0".getBytes());
+        assertThrows(IOException.class, () -> new BinaryReader(dir.resolve("text.bin")));
+    }
+
+    @Test
+    void conversion_gives_the_csv_of_data() throws IOException {
+        int rows = 1000;
+        writeRows(new Data(dir.toString(), "data.csv", 3), rows);
+        writeRows(new BinaryWriter(dir.resolve("data.bin"), 3), rows);
+        BinaryReader.toCsv(dir.resolve("data.bin"), dir.resolve("converted.csv"));
+        assertEquals(new String(Files.readAllBytes(dir.resolve("data.csv"))),
+                new String(Files.readAllBytes(dir.resolve("converted.csv"))));
+    }
+
+    @Test
+    void lsoda_records_to_a_binary_file() throws IOException {
+        FirstOrderDifferentialEquations ode = new Robertson();
+        Path file = dir.resolve("robertson.bin");
+        LSODA lsoda = new LSODA(0, 0, 1.0e-8, 1.0e-6, 12, 5);
+        try (BinaryWriter writer = new BinaryWriter(file, 3)) {
+            lsoda.setRecorder(writer);
+            lsoda.integrate(ode, 0, new double[]{1.0, 0.0, 0.0}, 4e5, new double[3]);
+        }
+        Trajectory trajectory = lsoda.getTrajectory();
+        try (BinaryReader reader = new BinaryReader(file)) {
+            assertEquals(trajectory.size(), reader.getRows());
+            double[] read = new double[4];
+            for (int i = 0; reader.next(read); i++) {
+                assertEquals(trajectory.getTime(i), read[0]);
+                for (int j = 0; j < 3; j++)
+                    assertEquals(trajectory.getState(i, j), read[j + 1]);
+            }
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void binary_output_is_faster_than_csv() throws IOException {
+        int rows = 200000;
+        long csv = 0, binary = 0, mapped = 0;
+        for (int rep = 0; rep < 2; rep++) {
+            long start = System.nanoTime();
+            writeRows(new Data(dir.toString(), "timing.csv", 3), rows);
+            csv = System.nanoTime() - start;
+            start = System.nanoTime();
+            writeRows(new BinaryWriter(dir.resolve("timing.bin"), 3), rows);
+            binary = System.nanoTime() - start;
+            start = System.nanoTime();
+            writeRows(new MappedBinaryWriter(dir.resolve("timing.map"), 3), rows);
+            mapped = System.nanoTime() - start;
+        }
+        System.out.printf("Trajectory output of %d rows: CSV %.1f ms, binary %.1f ms, mapped %.1f ms\n",
+                rows, csv / 1e6, binary / 1e6, mapped / 1e6);
+        assertTrue(Files.size(dir.resolve("timing.bin")) < Files.size(dir.resolve("timing.csv")));
+    }
+}